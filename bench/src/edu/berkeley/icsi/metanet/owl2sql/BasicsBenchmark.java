@@ -0,0 +1,81 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Escaping of SQL string literals by Basics.format() and the extraction of
+ * table and row names from entity IRIs by the Basics.get*Name() methods,
+ * which run for every row that is built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BasicsBenchmark {
+	String plainText;
+	String escapedText;
+	OWLClass owlClass;
+	OWLObjectProperty objProp;
+	OWLDataProperty dataProp;
+	OWLNamedIndividual individual;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException {
+		BenchmarkOntology fixture = new BenchmarkOntology(1, 1);
+
+		plainText = "A metaphor in which the source domain is a journey";
+		escapedText = "The \"journey\" isn't\\a\nmetaphor\r\u001a\0";
+		owlClass = fixture.classes.get(0);
+		objProp = fixture.objProps.get(0);
+		dataProp = fixture.dataProps.get(0);
+		individual = fixture.individuals.get(0);
+	}
+
+	@Benchmark
+	public String formatPlain() {
+		return Basics.format(plainText);
+	}
+
+	@Benchmark
+	public String formatEscaped() {
+		return Basics.format(escapedText);
+	}
+
+	@Benchmark
+	public String className() {
+		return Basics.getClassName(owlClass);
+	}
+
+	@Benchmark
+	public String objPropName() {
+		return Basics.getObjPropName(objProp);
+	}
+
+	@Benchmark
+	public String dataPropName() {
+		return Basics.getDataPropName(dataProp);
+	}
+
+	@Benchmark
+	public String indName() {
+		return Basics.getIndName(individual);
+	}
+}
@@ -0,0 +1,88 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * A synthetic ontology used as the fixture of the benchmarks: a tree of
+ * classes in which every class has the given number of subclasses, and a
+ * tree of object properties and of data properties shaped the same way.
+ * The entities are numbered breadth first, so entity 0 is the root and the
+ * last entity is a leaf at the greatest depth.
+ */
+public class BenchmarkOntology {
+	static final String NS = "http://example.org/owl2sql/bench#";
+
+	OWLOntology ont;
+	Set<OWLOntology> ontClosure;
+	OWLDataFactory factory;
+	ArrayList<OWLClass> classes;
+	ArrayList<OWLObjectProperty> objProps;
+	ArrayList<OWLDataProperty> dataProps;
+	ArrayList<OWLNamedIndividual> individuals;
+
+	/**
+	 * Generates the ontology
+	 * @param numEntities - the number of classes, and of object and data
+	 * properties
+	 * @param branching - the number of children of every inner entity
+	 * @throws OWLOntologyCreationException
+	 */
+	BenchmarkOntology(int numEntities, int branching)
+			throws OWLOntologyCreationException {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		HashSet<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+		int parent;
+
+		factory = manager.getOWLDataFactory();
+		ont = manager.createOntology(IRI.create(NS));
+		classes = new ArrayList<OWLClass>();
+		objProps = new ArrayList<OWLObjectProperty>();
+		dataProps = new ArrayList<OWLDataProperty>();
+		individuals = new ArrayList<OWLNamedIndividual>();
+		for (int i = 0; i < numEntities; i++) {
+			classes.add(factory.getOWLClass(IRI.create(NS + "Class" + i)));
+			objProps.add(factory.getOWLObjectProperty(
+					IRI.create(NS + "objProp" + i)));
+			dataProps.add(factory.getOWLDataProperty(
+					IRI.create(NS + "dataProp" + i)));
+			individuals.add(factory.getOWLNamedIndividual(
+					IRI.create(NS + "individual" + i)));
+			axioms.add(factory.getOWLDeclarationAxiom(classes.get(i)));
+			axioms.add(factory.getOWLClassAssertionAxiom(classes.get(i),
+					individuals.get(i)));
+			if (i > 0) {
+				parent = (i - 1) / branching;
+				axioms.add(factory.getOWLSubClassOfAxiom(classes.get(i),
+						classes.get(parent)));
+				axioms.add(factory.getOWLSubObjectPropertyOfAxiom(
+						objProps.get(i), objProps.get(parent)));
+				axioms.add(factory.getOWLSubDataPropertyOfAxiom(
+						dataProps.get(i), dataProps.get(parent)));
+			}
+		}
+		manager.addAxioms(ont, axioms);
+		ontClosure = ont.getImportsClosure();
+	}
+
+	OWLClass getRoot() {
+		return classes.get(0);
+	}
+
+	OWLClass getLeaf() {
+		return classes.get(classes.size() - 1);
+	}
+}
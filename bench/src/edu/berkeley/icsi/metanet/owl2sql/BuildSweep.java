@@ -0,0 +1,266 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * End-to-end build benchmark: for each size of a sweep, generates an
+ * ontology with the OntologyGenerator and builds it with the full Shell
+ * pipeline, by default into SQL dump files (see DumpWriter), so no server
+ * is needed. Builds with a -dialect among the Shell arguments go to a
+ * database file of that dialect instead, i.e. an embedded H2 database with
+ * -shell "-dialect h2", which has not been measured yet. Every build runs
+ * in its own JVM, so the peak heaps of the builds don't affect each other,
+ * and writes its metrics (see BuildMetrics). The wall time, rows, rows per
+ * second and peak heap of every phase of every build are then printed as a
+ * table and written to sweep.csv in the work directory.
+ *
+ * Every build must also stay within a rejection budget, a fraction of the
+ * generated property assertions; the sweep fails at the first build that
+ * rejects more entries, since its timings would no longer be those of the
+ * generated rows.
+ */
+public class BuildSweep {
+	private static final String DEFAULT_SIZES = "1000,10000,100000";
+	private static final String DEFAULT_SHELL_ARGS = "";
+	private static final String DEFAULT_MAX_REJECTIONS = "0.01";
+
+	/**
+	 * A phase as written by BuildMetrics.writeReport()
+	 */
+	private static final Pattern PHASE = Pattern.compile(
+			"\\{\"name\": \"(\\w+)\", \"ms\": (\\d+), \"rows\": (\\d+), " +
+			"\"heapUsedBytes\": \\d+, \"peakHeapBytes\": (\\d+)\\}");
+	private static final Pattern BUILD_ERRORS = Pattern.compile(
+			"\"buildErrors\": (\\d+)");
+
+	private File workDir;
+	private String[] jvmArgs;
+	private String[] shellArgs;
+	private PrintWriter csv;
+	private double maxRejections;
+
+	/**
+	 * Initializes the sweep
+	 * @param workDir - the directory the ontologies, databases, metrics and
+	 * results are written to
+	 * @param jvmArgs - the arguments of the JVMs the builds run in
+	 * @param shellArgs - the Shell arguments of every build
+	 * @param maxRejections - the most entries a build may reject, as a
+	 * fraction of the generated property assertions
+	 */
+	BuildSweep(File workDir, String[] jvmArgs, String[] shellArgs,
+			double maxRejections) {
+		this.workDir = workDir;
+		this.jvmArgs = jvmArgs;
+		this.shellArgs = shellArgs;
+		this.maxRejections = maxRejections;
+	}
+
+	/**
+	 * Generates and builds the ontology of the given size and reports the
+	 * metrics of the build
+	 * @param generator - the generator, set up with every option but the
+	 * number of individuals
+	 * @param numIndividuals - the number of individuals, i.e. the size
+	 * @throws Exception if the ontology can't be generated or built, or the
+	 * build rejects more entries than the budget allows
+	 */
+	protected void run(OntologyGenerator generator, int numIndividuals)
+			throws Exception {
+		File owlFile = new File(workDir, "ontology-" + numIndividuals +
+				".owl");
+		File metricsFile = new File(workDir, "metrics-" + numIndividuals +
+				".json");
+		File logFile = new File(workDir, "build-" + numIndividuals + ".log");
+		List<String> command = new ArrayList<String>();
+		long startTimeMS, numRejections, budget;
+		int exitCode;
+
+		generator.numIndividuals = numIndividuals;
+		System.out.println("Generating " + owlFile.getName());
+		generator.generate(owlFile);
+
+		command.add(new File(new File(System.getProperty("java.home"),
+				"bin"), "java").getPath());
+		command.addAll(Arrays.asList(jvmArgs));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Shell.class.getName());
+		command.addAll(Arrays.asList(shellArgs));
+		if (Arrays.asList(shellArgs).contains("-dialect")) {
+			command.add("-db");
+			command.add(new File(workDir, "db-" + numIndividuals)
+					.getAbsolutePath());
+		} else {
+			command.add("-dump");
+			command.add(new File(workDir, "dump-" + numIndividuals)
+					.getAbsolutePath());
+		}
+		command.add("-metrics");
+		command.add(metricsFile.getAbsolutePath());
+		command.add(owlFile.getAbsolutePath());
+
+		System.out.println("Building " + owlFile.getName());
+		metricsFile.delete();
+		startTimeMS = System.currentTimeMillis();
+		exitCode = new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(logFile).start().waitFor();
+		if (exitCode != 0 || !metricsFile.exists()) {
+			throw new IOException("Build of " + owlFile.getName() +
+					" failed with exit code " + exitCode + ", see " + logFile);
+		}
+		numRejections = report(numIndividuals,
+				System.currentTimeMillis() - startTimeMS, metricsFile);
+		budget = (long) (maxRejections * numIndividuals *
+				generator.numAssertions);
+		if (numRejections > budget) {
+			throw new IOException("Build of " + owlFile.getName() +
+					" rejected " + numRejections + " entries, over the " +
+					"budget of " + budget + ", see " + logFile);
+		}
+	}
+
+	/**
+	 * Prints the phases in the given metrics file and adds them to the CSV
+	 * file
+	 * @return the number of entries the build rejected
+	 */
+	private long report(int numIndividuals, long wallMS, File metricsFile)
+			throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(metricsFile), "UTF-8"));
+		String line;
+		Matcher m;
+		long ms, numRows, peakHeapMB, numRejections = -1;
+
+		System.out.println(String.format("%d individuals, %d ms wall time " +
+				"including JVM start", numIndividuals, wallMS));
+		System.out.println(String.format("  %-18s %10s %10s %12s %10s",
+				"phase", "ms", "rows", "rows/s", "peak MB"));
+		try {
+			while ((line = in.readLine()) != null) {
+				m = BUILD_ERRORS.matcher(line);
+				if (m.find()) {
+					numRejections = Long.parseLong(m.group(1));
+					continue;
+				}
+				m = PHASE.matcher(line);
+				if (!m.find()) {
+					continue;
+				}
+				ms = Long.parseLong(m.group(2));
+				numRows = Long.parseLong(m.group(3));
+				peakHeapMB = Long.parseLong(m.group(4)) / (1024 * 1024);
+				System.out.println(String.format(
+						"  %-18s %10d %10d %12d %10d", m.group(1), ms, numRows,
+						numRows * 1000 / Math.max(1, ms), peakHeapMB));
+				csv.println(numIndividuals + "," + m.group(1) + "," + ms +
+						"," + numRows + "," + numRows * 1000 / Math.max(1, ms) +
+						"," + peakHeapMB);
+			}
+		} finally {
+			in.close();
+		}
+		csv.flush();
+		if (numRejections < 0) {
+			throw new IOException("No build errors in " + metricsFile);
+		}
+		System.out.println("  " + numRejections + " rejected entries");
+		return numRejections;
+	}
+
+	public static void main(String args[]) {
+		Options options = OntologyGenerator.getOptions();
+		OntologyGenerator generator = new OntologyGenerator();
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = null;
+		BuildSweep sweep;
+		File workDir;
+		String[] sizes;
+		double maxRejections = 0;
+
+		options.addOption("sizes", true, "comma-separated numbers of " +
+				"individuals to build (default " + DEFAULT_SIZES + ")");
+		options.addOption("jvm", true, "arguments of the build JVMs, " +
+				"i.e. \"-Xmx4g\"");
+		options.addOption("shell", true, "arguments of every build " +
+				"(default none, which writes dump files; i.e. \"-dialect " +
+				"h2\" builds into an embedded database)");
+		options.addOption("maxrejections", true, "most entries a build " +
+				"may reject, as a fraction of the property assertions " +
+				"(default " + DEFAULT_MAX_REJECTIONS + ")");
+		try {
+			cmd = parser.parse(options, args);
+		} catch (ParseException ex) {
+			System.err.println("Error: Invalid command-line arguments");
+			System.exit(1);
+		}
+		if (cmd.getArgList().size() != 1) {
+			new HelpFormatter().printHelp("BuildSweep [options] <work dir>",
+					options);
+			System.exit(1);
+		}
+		try {
+			generator.configure(cmd);
+			maxRejections = Double.parseDouble(cmd.getOptionValue(
+					"maxrejections", DEFAULT_MAX_REJECTIONS));
+		} catch (NumberFormatException ex) {
+			System.err.println("Error: Generator options must be numbers");
+			System.exit(1);
+		}
+
+		workDir = new File((String) cmd.getArgList().get(0));
+		if (!workDir.isDirectory() && !workDir.mkdirs()) {
+			System.err.println("Error: Could not create " + workDir);
+			System.exit(1);
+		}
+		sweep = new BuildSweep(workDir,
+				split(cmd.getOptionValue("jvm", "")),
+				split(cmd.getOptionValue("shell", DEFAULT_SHELL_ARGS)),
+				maxRejections);
+		sizes = cmd.getOptionValue("sizes", DEFAULT_SIZES).split(",");
+		try {
+			sweep.csv = new PrintWriter(new File(workDir, "sweep.csv"),
+					"UTF-8");
+			sweep.csv.println("individuals,phase,ms,rows,rowsPerSecond," +
+					"peakHeapMB");
+			for (String size : sizes) {
+				sweep.run(generator, Integer.parseInt(size.trim()));
+			}
+		} catch (NumberFormatException ex) {
+			System.err.println("Error: Sizes must be integers");
+			System.exit(1);
+		} catch (Exception ex) {
+			System.err.println("Error: " + ex.getMessage());
+			System.exit(1);
+		} finally {
+			if (sweep.csv != null) {
+				sweep.csv.close();
+			}
+		}
+		System.out.println("Wrote results to " +
+				new File(workDir, "sweep.csv").getAbsolutePath());
+	}
+
+	private static String[] split(String args) {
+		args = args.trim();
+		return args.isEmpty() ? new String[0] : args.split("\\s+");
+	}
+}
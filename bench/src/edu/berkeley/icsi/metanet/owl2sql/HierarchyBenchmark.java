@@ -0,0 +1,111 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Closure queries over the class and property hierarchies: the recursive
+ * walks of Utilities against the lookups in a HierarchyIndex, and the cost
+ * of building the index itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HierarchyBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	int numEntities;
+
+	@Param({"4"})
+	int branching;
+
+	BenchmarkOntology fixture;
+	HierarchyIndex<OWLClass> classIndex;
+	HierarchyIndex<OWLObjectProperty> objPropIndex;
+	HierarchyIndex<OWLDataProperty> dataPropIndex;
+	OWLClass root, leaf;
+	OWLObjectProperty leafObjProp;
+	OWLDataProperty leafDataProp;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException {
+		fixture = new BenchmarkOntology(numEntities, branching);
+		classIndex = buildClassIndex();
+		objPropIndex = HierarchyIndex.forObjectProperties(
+				new HashSet<OWLObjectProperty>(fixture.objProps),
+				fixture.ontClosure);
+		dataPropIndex = HierarchyIndex.forDataProperties(
+				new HashSet<OWLDataProperty>(fixture.dataProps),
+				fixture.ontClosure);
+		root = fixture.getRoot();
+		leaf = fixture.getLeaf();
+		leafObjProp = fixture.objProps.get(numEntities - 1);
+		leafDataProp = fixture.dataProps.get(numEntities - 1);
+	}
+
+	@Benchmark
+	public HierarchyIndex<OWLClass> buildClassIndex() {
+		return HierarchyIndex.forClasses(
+				new HashSet<OWLClass>(fixture.classes), fixture.ontClosure);
+	}
+
+	@Benchmark
+	public HashSet<OWLClass> recursiveSubClasses() {
+		return Utilities.getSubClasses(root, fixture.ontClosure);
+	}
+
+	@Benchmark
+	public List<OWLClass> indexedSubClasses() {
+		return classIndex.getDescendants(root);
+	}
+
+	@Benchmark
+	public HashSet<OWLClass> recursiveSuperClasses() {
+		return Utilities.getSuperClasses(leaf, fixture.ontClosure);
+	}
+
+	@Benchmark
+	public List<OWLClass> indexedSuperClasses() {
+		return classIndex.getAncestors(leaf);
+	}
+
+	@Benchmark
+	public HashSet<OWLObjectProperty> recursiveSuperObjProps() {
+		return Utilities.getSuperProps(leafObjProp, fixture.ontClosure);
+	}
+
+	@Benchmark
+	public List<OWLObjectProperty> indexedSuperObjProps() {
+		return objPropIndex.getAncestors(leafObjProp);
+	}
+
+	@Benchmark
+	public HashSet<OWLDataProperty> recursiveSuperDataProps() {
+		return Utilities.getSuperProps(leafDataProp, fixture.ontClosure);
+	}
+
+	@Benchmark
+	public List<OWLDataProperty> indexedSuperDataProps() {
+		return dataPropIndex.getAncestors(leafDataProp);
+	}
+}
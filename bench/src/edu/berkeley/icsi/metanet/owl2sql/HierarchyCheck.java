@@ -0,0 +1,228 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Checks the class hierarchy index and the ClassClosure rows against a
+ * small hand-made hierarchy with known closures and depths. The hierarchy
+ * is a single ontology without imports and has a diamond (D is a subclass
+ * of both B and C), a cycle (F and G are subclasses of each other) and a
+ * class without superclasses:
+ *
+ *	A <- B, C <- D <- E <- F <-> G <- H, and Z
+ *
+ * Prints every mismatch and exits with status 1 if there is any.
+ */
+public class HierarchyCheck {
+	static final String NS = "http://example.org/owl2sql/check#";
+
+	/**
+	 * Direct superclasses of every class, as "class superclass..."
+	 */
+	private static final String[] HIERARCHY = {
+		"A", "B A", "C A", "D B C", "E D", "F E G", "G F", "H G", "Z"
+	};
+
+	/**
+	 * Every ClassClosure row of the hierarchy, as "ancestor descendant
+	 * depth"
+	 */
+	private static final String[] CLOSURE = {
+		"A A 0",
+		"B B 0", "A B 1",
+		"C C 0", "A C 1",
+		"D D 0", "B D 1", "C D 1", "A D 2",
+		"E E 0", "D E 1", "B E 2", "C E 2", "A E 3",
+		"F F 0", "E F 1", "G F 1", "D F 2", "B F 3", "C F 3", "A F 4",
+		"G G 0", "F G 1", "E G 2", "D G 3", "B G 4", "C G 4", "A G 5",
+		"H H 0", "G H 1", "F H 2", "E H 3", "D H 4", "B H 5", "C H 5",
+		"A H 6",
+		"Z Z 0"
+	};
+
+	private List<String> mismatches = new ArrayList<String>();
+
+	/**
+	 * Keeps the rows written to the ClassClosure table
+	 */
+	private static class ClosureRows extends RowWriter {
+		Set<String> rows = new TreeSet<String>();
+
+		@Override
+		protected void write(String tableName, String[] fields,
+				Object... values) {
+			if (tableName.equals("ClassClosure")) {
+				rows.add(values[0] + " " + values[1] + " " + values[2]);
+			}
+		}
+
+		@Override
+		protected void flush() {
+		}
+	}
+
+	/**
+	 * Creates the hierarchy as a single ontology
+	 * @throws Exception if the ontology can't be created
+	 */
+	private static OWLOntology createOntology() throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLDataFactory factory = manager.getOWLDataFactory();
+		OWLOntology ont = manager.createOntology(IRI.create(
+				NS.substring(0, NS.length() - 1)));
+		String[] names;
+		OWLClass owlClass;
+
+		for (String entry : HIERARCHY) {
+			names = entry.split(" ");
+			owlClass = getClass(factory, names[0]);
+			manager.addAxiom(ont, factory.getOWLDeclarationAxiom(owlClass));
+			for (int i = 1; i < names.length; i++) {
+				manager.addAxiom(ont, factory.getOWLSubClassOfAxiom(owlClass,
+						getClass(factory, names[i])));
+			}
+		}
+		return ont;
+	}
+
+	private static OWLClass getClass(OWLDataFactory factory, String name) {
+		return factory.getOWLClass(IRI.create(NS + name));
+	}
+
+	/**
+	 * Checks the ancestors, descendants and ancestor depths of every class
+	 * in the index against the expected closure
+	 */
+	private void checkIndex(OWLOntology ont) {
+		HierarchyIndex<OWLClass> index = HierarchyIndex.forClasses(
+				ont.getClassesInSignature(true),
+				ont.getImportsClosure());
+		HashMap<String, Set<String>> ancestors =
+				new HashMap<String, Set<String>>();
+		HashMap<String, Set<String>> descendants =
+				new HashMap<String, Set<String>>();
+		Set<String> depths = new TreeSet<String>();
+		String[] row;
+		int[] ancestorIds = new int[index.size()];
+		int[] ancestorDepths = new int[index.size()];
+		int numAncestors;
+		OWLClass owlClass;
+
+		for (String entry : CLOSURE) {
+			row = entry.split(" ");
+			add(ancestors, row[1], row[0]);
+			add(descendants, row[0], row[1]);
+		}
+		Arrays.fill(ancestorDepths, -1);
+		for (int id = 0; id < index.size(); id++) {
+			owlClass = index.getEntity(id);
+			compare("ancestors of " + name(owlClass),
+					ancestors.get(name(owlClass)),
+					names(index.getAncestors(owlClass)));
+			compare("descendants of " + name(owlClass),
+					descendants.get(name(owlClass)),
+					names(index.getDescendants(owlClass)));
+			numAncestors = index.getAncestorDepths(id, ancestorIds,
+					ancestorDepths);
+			for (int i = 0; i < numAncestors; i++) {
+				depths.add(name(index.getEntity(ancestorIds[i])) + " " +
+						name(owlClass) + " " +
+						ancestorDepths[ancestorIds[i]]);
+				ancestorDepths[ancestorIds[i]] = -1;
+			}
+		}
+		compare("ancestor depths of the index",
+				new TreeSet<String>(Arrays.asList(CLOSURE)), depths);
+	}
+
+	/**
+	 * Checks the rows the TableBuilder writes to ClassClosure against the
+	 * expected closure
+	 * @throws Exception if the rows can't be written
+	 */
+	private void checkClassClosure(OWLOntology ont) throws Exception {
+		ClosureRows rows = new ClosureRows();
+		TableBuilder builder = new TableBuilder(ont, null, rows);
+
+		builder.handleClassSchema();
+		compare("ClassClosure rows",
+				new TreeSet<String>(Arrays.asList(CLOSURE)), rows.rows);
+	}
+
+	private static void add(HashMap<String, Set<String>> sets, String key,
+			String value) {
+		Set<String> set = sets.get(key);
+		if (set == null) {
+			set = new TreeSet<String>();
+			sets.put(key, set);
+		}
+		set.add(value);
+	}
+
+	private static String name(OWLClass owlClass) {
+		return owlClass.getIRI().getFragment();
+	}
+
+	private static Set<String> names(List<OWLClass> owlClasses) {
+		Set<String> names = new TreeSet<String>();
+		for (OWLClass owlClass : owlClasses) {
+			names.add(name(owlClass));
+		}
+		return names;
+	}
+
+	/**
+	 * Records a mismatch if the actual set differs from the expected one
+	 */
+	private void compare(String what, Set<String> expected,
+			Set<String> actual) {
+		Set<String> missing = new TreeSet<String>(expected);
+		Set<String> extra = new HashSet<String>(actual);
+
+		missing.removeAll(actual);
+		extra.removeAll(expected);
+		if (!missing.isEmpty() || !extra.isEmpty()) {
+			mismatches.add(what + ": missing " + missing + ", unexpected " +
+					new TreeSet<String>(extra));
+		}
+	}
+
+	public static void main(String args[]) {
+		HierarchyCheck check = new HierarchyCheck();
+		OWLOntology ont;
+
+		try {
+			ont = createOntology();
+			check.checkIndex(ont);
+			check.checkClassClosure(ont);
+		} catch (Exception ex) {
+			System.err.println("Error: Could not run the check. " +
+					ex.getMessage());
+			System.exit(1);
+			return;
+		}
+		for (String mismatch : check.mismatches) {
+			System.err.println("Mismatch: " + mismatch);
+		}
+		if (!check.mismatches.isEmpty()) {
+			System.err.println("Error: " + check.mismatches.size() +
+					" mismatches in the class hierarchy");
+			System.exit(1);
+		}
+		System.out.println("Class hierarchy and ClassClosure depths match " +
+				"for " + HIERARCHY.length + " classes");
+	}
+}
@@ -0,0 +1,541 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.RDFXMLOntologyFormat;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+/**
+ * Generates seeded random ontologies shaped like the ontologies of a
+ * metaphor repository: a forest of classes of the given depth and average
+ * fan-out under a few top-level classes such as Metaphor and Frame, with
+ * some classes having a second parent; object and data properties in a
+ * shallow hierarchy, of which a given fraction has a domain (and, for
+ * object properties, a range) that is a class or a union of two classes;
+ * and individuals spread over the classes with a number of property
+ * assertions each. Assertions only use properties whose domain includes
+ * the individual and, but for a small fraction, values within the
+ * property's range, which are picked from the individuals of the classes
+ * in the range. The build rejects only that fraction of the object
+ * property assertions. The same options and seed always generate the same
+ * file.
+ */
+public class OntologyGenerator {
+	static final String NS = "http://example.org/owl2sql/generated#";
+	static final String[] TOP_CLASSES = {
+		"Metaphor", "Frame", "Schema", "Role", "MetaphorFamily",
+		"FrameFamily", "CulturalSchema", "Lexeme"
+	};
+
+	/**
+	 * Fraction of classes with a second parent, and of properties that are
+	 * sub-properties of another property
+	 */
+	private static final double SECOND_PARENT_RATE = 0.05;
+	private static final double SUB_PROPERTY_RATE = 0.2;
+
+	/**
+	 * Fraction of object property values that are chosen regardless of the
+	 * range, which the build reports as errors
+	 */
+	private static final double OUT_OF_RANGE_RATE = 0.01;
+
+	int numClasses = 1000;
+	int depth = 6;
+	int fanout = 4;
+	int numObjProps = 50;
+	int numDataProps = 50;
+	double domainRate = 0.5;
+	int numIndividuals = 10000;
+	int numAssertions = 4;
+	long seed = 1;
+
+	private Random random;
+	private OWLDataFactory factory;
+	private HashSet<OWLAxiom> axioms;
+	private ArrayList<OWLClass> classes;
+	private ArrayList<List<Integer>> parents;
+	private ArrayList<OWLObjectProperty> objProps;
+	private ArrayList<OWLDataProperty> dataProps;
+	private ArrayList<HashSet<Integer>> objPropDomains, objPropRanges;
+	private ArrayList<HashSet<Integer>> dataPropDomains;
+	private ArrayList<List<Integer>> objPropsOfClass, dataPropsOfClass;
+	private ArrayList<List<Integer>> individualsOfClass;
+	private int[][] rangeClassIds, rangeEnds;
+
+	/**
+	 * Generates the ontology with the current settings and saves it as
+	 * RDF/XML
+	 * @param file - the file the ontology is written to
+	 * @throws Exception if the ontology can't be created or saved
+	 */
+	protected void generate(File file) throws Exception {
+		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+		OWLOntology ont = manager.createOntology(IRI.create(
+				NS.substring(0, NS.length() - 1)));
+
+		random = new Random(seed);
+		factory = manager.getOWLDataFactory();
+		axioms = new HashSet<OWLAxiom>();
+		generateClasses();
+		generateProperties();
+		generateIndividuals();
+		manager.addAxioms(ont, axioms);
+		manager.saveOntology(ont, new RDFXMLOntologyFormat(),
+				IRI.create(file.getAbsoluteFile()));
+	}
+
+	/**
+	 * Generates the class forest breadth first. Every class above the given
+	 * depth gets between 1 and 2 * fanout - 1 children until there are
+	 * enough classes; if the forest is full before that, more children are
+	 * added to the classes above the given depth.
+	 */
+	private void generateClasses() {
+		ArrayList<Integer> depths = new ArrayList<Integer>();
+		ArrayList<Integer> queue = new ArrayList<Integer>();
+		int numTop = Math.min(TOP_CLASSES.length, numClasses);
+		int parent, numChildren, secondParent;
+		int next = 0;
+
+		classes = new ArrayList<OWLClass>();
+		parents = new ArrayList<List<Integer>>();
+		for (int i = 0; i < numTop; i++) {
+			addClass(TOP_CLASSES[i], -1);
+			depths.add(1);
+			queue.add(i);
+		}
+		while (classes.size() < numClasses) {
+			if (next == queue.size()) {
+				/* The forest is full at this depth; widen it */
+				queue.clear();
+				for (int i = 0; i < classes.size(); i++) {
+					if (depths.get(i) < depth) {
+						queue.add(i);
+					}
+				}
+				next = 0;
+			}
+			parent = queue.get(next++);
+			if (depths.get(parent) >= depth) {
+				continue;
+			}
+			numChildren = 1 + random.nextInt(2 * fanout - 1);
+			for (int i = 0; i < numChildren && classes.size() < numClasses;
+					i++) {
+				addClass(TOP_CLASSES[classes.size() % numTop] +
+						classes.size(), parent);
+				depths.add(depths.get(parent) + 1);
+				queue.add(classes.size() - 1);
+			}
+		}
+
+		/*
+		 * Classes are numbered breadth first, so a class created earlier
+		 * can't be a descendant and the second parent never makes a cycle.
+		 */
+		for (int i = numTop; i < classes.size(); i++) {
+			if (random.nextDouble() < SECOND_PARENT_RATE) {
+				secondParent = random.nextInt(i);
+				if (!parents.get(i).contains(secondParent)) {
+					parents.get(i).add(secondParent);
+					axioms.add(factory.getOWLSubClassOfAxiom(classes.get(i),
+							classes.get(secondParent)));
+				}
+			}
+		}
+	}
+
+	private void addClass(String name, int parent) {
+		OWLClass owlClass = factory.getOWLClass(IRI.create(NS + name));
+		ArrayList<Integer> classParents = new ArrayList<Integer>();
+
+		classes.add(owlClass);
+		axioms.add(factory.getOWLDeclarationAxiom(owlClass));
+		axioms.add(factory.getOWLAnnotationAssertionAxiom(owlClass.getIRI(),
+				factory.getOWLAnnotation(factory.getRDFSLabel(),
+				factory.getOWLLiteral(name))));
+		if (parent >= 0) {
+			classParents.add(parent);
+			axioms.add(factory.getOWLSubClassOfAxiom(owlClass,
+					classes.get(parent)));
+		}
+		parents.add(classParents);
+	}
+
+	private void generateProperties() {
+		OWLObjectProperty objProp;
+		OWLDataProperty dataProp;
+		HashSet<Integer> domain, range;
+		int superProp;
+
+		objProps = new ArrayList<OWLObjectProperty>();
+		objPropDomains = new ArrayList<HashSet<Integer>>();
+		objPropRanges = new ArrayList<HashSet<Integer>>();
+		for (int i = 0; i < numObjProps; i++) {
+			objProp = factory.getOWLObjectProperty(IRI.create(NS + "has" +
+					TOP_CLASSES[i % TOP_CLASSES.length] + i));
+			axioms.add(factory.getOWLDeclarationAxiom(objProp));
+			superProp = -1;
+			if (i > 0 && random.nextDouble() < SUB_PROPERTY_RATE) {
+				superProp = random.nextInt(i);
+				axioms.add(factory.getOWLSubObjectPropertyOfAxiom(objProp,
+						objProps.get(superProp)));
+			}
+			domain = null;
+			range = null;
+			if (random.nextDouble() < domainRate) {
+				domain = pickClasses();
+				range = pickClasses();
+				axioms.add(factory.getOWLObjectPropertyDomainAxiom(objProp,
+						toExpression(domain)));
+				axioms.add(factory.getOWLObjectPropertyRangeAxiom(objProp,
+						toExpression(range)));
+			}
+			objProps.add(objProp);
+			if (superProp >= 0) {
+				domain = inherit(domain, objPropDomains.get(superProp));
+				range = inherit(range, objPropRanges.get(superProp));
+			}
+			objPropDomains.add(domain);
+			objPropRanges.add(range);
+		}
+
+		dataProps = new ArrayList<OWLDataProperty>();
+		dataPropDomains = new ArrayList<HashSet<Integer>>();
+		for (int i = 0; i < numDataProps; i++) {
+			dataProp = factory.getOWLDataProperty(IRI.create(NS +
+					(i % 2 == 0 ? "name" : "definition") + i));
+			axioms.add(factory.getOWLDeclarationAxiom(dataProp));
+			superProp = -1;
+			if (i > 0 && random.nextDouble() < SUB_PROPERTY_RATE) {
+				superProp = random.nextInt(i);
+				axioms.add(factory.getOWLSubDataPropertyOfAxiom(dataProp,
+						dataProps.get(superProp)));
+			}
+			domain = null;
+			if (random.nextDouble() < domainRate) {
+				domain = pickClasses();
+				axioms.add(factory.getOWLDataPropertyDomainAxiom(dataProp,
+						toExpression(domain)));
+				axioms.add(factory.getOWLDataPropertyRangeAxiom(dataProp,
+						factory.getOWLDatatype(
+						OWL2Datatype.XSD_STRING.getIRI())));
+			}
+			dataProps.add(dataProp);
+			if (superProp >= 0) {
+				domain = inherit(domain, dataPropDomains.get(superProp));
+			}
+			dataPropDomains.add(domain);
+		}
+	}
+
+	/**
+	 * Returns the effective domain or range of a sub-property, which the
+	 * build takes to be the union of the declared domains or ranges of the
+	 * property and its super-properties. Null is the global domain or range.
+	 */
+	private HashSet<Integer> inherit(HashSet<Integer> declared,
+			HashSet<Integer> ofSuperProp) {
+		HashSet<Integer> classIds;
+		if (declared == null || ofSuperProp == null) {
+			return declared == null ? ofSuperProp : declared;
+		}
+		classIds = new HashSet<Integer>(declared);
+		classIds.addAll(ofSuperProp);
+		return classIds;
+	}
+
+	/**
+	 * Returns one class, or two for a union, for a domain or range. Classes
+	 * near the top are picked more often, as in hand-made ontologies.
+	 */
+	private HashSet<Integer> pickClasses() {
+		HashSet<Integer> picked = new HashSet<Integer>();
+		int numPicked = random.nextDouble() < 0.2 ? 2 : 1;
+		while (picked.size() < Math.min(numPicked, classes.size())) {
+			picked.add((int) (classes.size() * Math.pow(random.nextDouble(),
+					3)));
+		}
+		return picked;
+	}
+
+	private OWLClassExpression toExpression(HashSet<Integer> classIds) {
+		HashSet<OWLClass> operands = new HashSet<OWLClass>();
+		for (int id : classIds) {
+			operands.add(classes.get(id));
+		}
+		if (operands.size() == 1) {
+			return operands.iterator().next();
+		}
+		return factory.getOWLObjectUnionOf(operands);
+	}
+
+	/**
+	 * Checks if the given class is one of the given classes or, if
+	 * subClasses is set, one of their descendants. A null set is the global
+	 * domain or range.
+	 */
+	private boolean isIn(int classId, HashSet<Integer> classIds,
+			boolean subClasses) {
+		if (classIds == null || classIds.contains(classId)) {
+			return true;
+		} else if (!subClasses) {
+			return false;
+		}
+		for (int parent : parents.get(classId)) {
+			if (isIn(parent, classIds, true)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void generateIndividuals() {
+		ArrayList<OWLNamedIndividual> individuals =
+				new ArrayList<OWLNamedIndividual>();
+		ArrayList<Integer> classOf = new ArrayList<Integer>();
+		List<Integer> candidates;
+		OWLNamedIndividual individual;
+		int classId, prop;
+
+		int value;
+
+		objPropsOfClass = new ArrayList<List<Integer>>();
+		dataPropsOfClass = new ArrayList<List<Integer>>();
+		individualsOfClass = new ArrayList<List<Integer>>();
+		for (int i = 0; i < classes.size(); i++) {
+			objPropsOfClass.add(null);
+			dataPropsOfClass.add(null);
+			individualsOfClass.add(new ArrayList<Integer>());
+		}
+		rangeClassIds = new int[objProps.size()][];
+		rangeEnds = new int[objProps.size()][];
+		for (int i = 0; i < numIndividuals; i++) {
+			classId = random.nextInt(classes.size());
+			individual = factory.getOWLNamedIndividual(IRI.create(NS +
+					classes.get(classId).getIRI().getFragment() + "_" + i));
+			individuals.add(individual);
+			classOf.add(classId);
+			individualsOfClass.get(classId).add(i);
+			axioms.add(factory.getOWLClassAssertionAxiom(classes.get(classId),
+					individual));
+		}
+
+		for (int i = 0; i < numIndividuals; i++) {
+			classId = classOf.get(i);
+			for (int j = 0; j < numAssertions; j++) {
+				if (random.nextBoolean()) {
+					candidates = getProperties(classId, objPropDomains,
+							true, objPropsOfClass);
+					if (candidates.isEmpty()) {
+						continue;
+					}
+					prop = candidates.get(random.nextInt(candidates.size()));
+					value = pickValue(prop);
+					if (value < 0) {
+						continue;
+					}
+					axioms.add(factory.getOWLObjectPropertyAssertionAxiom(
+							objProps.get(prop), individuals.get(i),
+							individuals.get(value)));
+				} else {
+					candidates = getProperties(classId, dataPropDomains,
+							false, dataPropsOfClass);
+					if (candidates.isEmpty()) {
+						continue;
+					}
+					prop = candidates.get(random.nextInt(candidates.size()));
+					axioms.add(factory.getOWLDataPropertyAssertionAxiom(
+							dataProps.get(prop), individuals.get(i),
+							"Value " + random.nextInt(numIndividuals) +
+							" of " + dataProps.get(prop).getIRI()
+							.getFragment()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the properties whose domain includes the given class
+	 * @param classId - the class
+	 * @param domains - the domain of each property
+	 * @param subClasses - whether a domain includes the subclasses of its
+	 * classes. The build expands the domains of object properties but not
+	 * those of data properties.
+	 * @param cache - the properties of each class found so far
+	 */
+	private List<Integer> getProperties(int classId,
+			List<HashSet<Integer>> domains, boolean subClasses,
+			List<List<Integer>> cache) {
+		List<Integer> props = cache.get(classId);
+		if (props == null) {
+			props = new ArrayList<Integer>();
+			for (int p = 0; p < domains.size(); p++) {
+				if (isIn(classId, domains.get(p), subClasses)) {
+					props.add(p);
+				}
+			}
+			cache.set(classId, props);
+		}
+		return props;
+	}
+
+	/**
+	 * Returns an individual in the range of the given object property, or
+	 * -1 if there is none. A small fraction of the values are picked
+	 * regardless of the range.
+	 */
+	private int pickValue(int prop) {
+		int[] classIds, ends;
+		int pick, i;
+
+		if (random.nextDouble() < OUT_OF_RANGE_RATE) {
+			return random.nextInt(numIndividuals);
+		}
+		if (rangeClassIds[prop] == null) {
+			findRangeClasses(prop);
+		}
+		classIds = rangeClassIds[prop];
+		ends = rangeEnds[prop];
+		if (classIds.length == 0) {
+			return -1;
+		}
+
+		/* Every individual in the range is equally likely */
+		pick = random.nextInt(ends[ends.length - 1]);
+		i = Arrays.binarySearch(ends, pick + 1);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return individualsOfClass.get(classIds[i]).get(
+				i == 0 ? pick : pick - ends[i - 1]);
+	}
+
+	/**
+	 * Finds the classes in the range of the given object property that have
+	 * individuals, and the running total of their numbers of individuals
+	 */
+	private void findRangeClasses(int prop) {
+		int[] classIds = new int[classes.size()];
+		int[] ends = new int[classes.size()];
+		int numRangeClasses = 0, total = 0;
+
+		for (int c = 0; c < classes.size(); c++) {
+			if (!individualsOfClass.get(c).isEmpty() &&
+					isIn(c, objPropRanges.get(prop), true)) {
+				total += individualsOfClass.get(c).size();
+				classIds[numRangeClasses] = c;
+				ends[numRangeClasses++] = total;
+			}
+		}
+		rangeClassIds[prop] = Arrays.copyOf(classIds, numRangeClasses);
+		rangeEnds[prop] = Arrays.copyOf(ends, numRangeClasses);
+	}
+
+	static Options getOptions() {
+		Options options = new Options();
+		options.addOption("seed", true, "random seed (default 1)");
+		options.addOption("classes", true, "number of classes (default 1000)");
+		options.addOption("depth", true, "depth of the class hierarchy " +
+				"(default 6)");
+		options.addOption("fanout", true, "average number of subclasses of " +
+				"a class (default 4)");
+		options.addOption("objprops", true, "number of object properties " +
+				"(default 50)");
+		options.addOption("dataprops", true, "number of data properties " +
+				"(default 50)");
+		options.addOption("domains", true, "fraction of properties with a " +
+				"domain and range, from 0 to 1 (default 0.5)");
+		options.addOption("individuals", true, "number of individuals " +
+				"(default 10000)");
+		options.addOption("assertions", true, "number of property " +
+				"assertions per individual (default 4)");
+		return options;
+	}
+
+	/**
+	 * Applies the generator options of the given command line
+	 * @throws NumberFormatException if an option is not a number
+	 */
+	protected void configure(CommandLine cmd) {
+		seed = Long.parseLong(cmd.getOptionValue("seed", "" + seed));
+		numClasses = Integer.parseInt(cmd.getOptionValue("classes",
+				"" + numClasses));
+		depth = Integer.parseInt(cmd.getOptionValue("depth", "" + depth));
+		fanout = Integer.parseInt(cmd.getOptionValue("fanout", "" + fanout));
+		numObjProps = Integer.parseInt(cmd.getOptionValue("objprops",
+				"" + numObjProps));
+		numDataProps = Integer.parseInt(cmd.getOptionValue("dataprops",
+				"" + numDataProps));
+		domainRate = Double.parseDouble(cmd.getOptionValue("domains",
+				"" + domainRate));
+		numIndividuals = Integer.parseInt(cmd.getOptionValue("individuals",
+				"" + numIndividuals));
+		numAssertions = Integer.parseInt(cmd.getOptionValue("assertions",
+				"" + numAssertions));
+		numClasses = Math.max(1, numClasses);
+		depth = Math.max(1, depth);
+		fanout = Math.max(1, fanout);
+		numIndividuals = Math.max(1, numIndividuals);
+	}
+
+	public static void main(String args[]) {
+		Options options = getOptions();
+		OntologyGenerator generator = new OntologyGenerator();
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = null;
+		File file;
+
+		try {
+			cmd = parser.parse(options, args);
+		} catch (ParseException ex) {
+			System.err.println("Error: Invalid command-line arguments");
+			System.exit(1);
+		}
+		if (cmd.getArgList().size() != 1) {
+			new HelpFormatter().printHelp("OntologyGenerator [options] " +
+					"<output .owl file>", options);
+			System.exit(1);
+		}
+		try {
+			generator.configure(cmd);
+		} catch (NumberFormatException ex) {
+			System.err.println("Error: Generator options must be numbers");
+			System.exit(1);
+		}
+		file = new File((String) cmd.getArgList().get(0));
+		try {
+			generator.generate(file);
+		} catch (Exception ex) {
+			System.err.println("Error: Could not generate ontology. " +
+					ex.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Wrote " + generator.numClasses + " classes and " +
+				generator.numIndividuals + " individuals to " +
+				file.getAbsolutePath());
+	}
+}
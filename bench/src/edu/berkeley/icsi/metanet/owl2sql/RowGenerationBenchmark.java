@@ -0,0 +1,92 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Generation of the SQL of a row: the single-row INSERT built by
+ * Utilities.getInsertString() against the header and value tuple of the
+ * multi-row INSERTs and the prepared INSERT of the batch writer, and the
+ * extraction of the classes of a union expression, i.e. a property domain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowGenerationBenchmark {
+
+	@Param({"2", "8", "32"})
+	int numFields;
+
+	String tableName;
+	String[] fields;
+	Object[] values;
+	LinkedHashMap<String, String> fieldValueMap;
+	OWLClassExpression union;
+
+	@Setup
+	public void setUp() throws OWLOntologyCreationException {
+		BenchmarkOntology fixture = new BenchmarkOntology(numFields, 4);
+		HashSet<OWLClass> operands = new HashSet<OWLClass>(fixture.classes);
+
+		tableName = "BenchmarkTable";
+		fields = new String[numFields];
+		values = new Object[numFields];
+		fieldValueMap = new LinkedHashMap<String, String>();
+		for (int i = 0; i < numFields; i++) {
+			fields[i] = "field" + i;
+			values[i] = i % 4 == 3 ? Boolean.TRUE : "value_" + i;
+			fieldValueMap.put(fields[i], values[i].toString());
+		}
+		union = fixture.factory.getOWLObjectUnionOf(operands);
+	}
+
+	@Benchmark
+	public String insertString() {
+		return Utilities.getInsertString(tableName, fieldValueMap);
+	}
+
+	@Benchmark
+	public String multiRowInsert() {
+		return Utilities.getMultiRowInsertHeader(tableName, fields) +
+				Utilities.getValuesTuple(values);
+	}
+
+	@Benchmark
+	public String valuesTuple() {
+		return Utilities.getValuesTuple(values);
+	}
+
+	@Benchmark
+	public String preparedInsertString() {
+		return BatchRowWriter.getPreparedInsertString(tableName, fields);
+	}
+
+	@Benchmark
+	public long rowBytes() {
+		return Utilities.getRowBytes(values);
+	}
+
+	@Benchmark
+	public HashSet<OWLClass> extractClasses() {
+		return Utilities.extractClasses(union);
+	}
+}
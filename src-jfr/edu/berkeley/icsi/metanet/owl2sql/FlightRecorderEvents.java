@@ -0,0 +1,141 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder events of a build, see BuildEvents. Requires
+ * Java 11 and is compiled by the compile-jfr target. The events are only
+ * committed while a recording that enables them is running, i.e. with
+ * -XX:StartFlightRecording or jcmd JFR.start, and show up under owl2sql in
+ * JDK Mission Control.
+ */
+public class FlightRecorderEvents extends BuildEvents {
+
+	/**
+	 * Number of characters of a statement that are recorded
+	 */
+	private static final int MAX_SQL_LENGTH = 1024;
+
+	@Name("owl2sql.Phase")
+	@Label("Build Phase")
+	@Category("owl2sql")
+	@Description("A phase of the TableBuilder")
+	static class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+	}
+
+	@Name("owl2sql.Batch")
+	@Label("Batch")
+	@Category("owl2sql")
+	@Description("A batch of rows sent to a table")
+	static class BatchEvent extends Event {
+		@Label("Table")
+		String table;
+
+		@Label("Rows")
+		long rows;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("owl2sql.SlowStatement")
+	@Label("Slow Statement")
+	@Category("owl2sql")
+	@Description("A statement that took longer than the slow statement " +
+			"threshold")
+	static class SlowStatementEvent extends Event {
+		@Label("Table")
+		String table;
+
+		@Label("SQL")
+		String sql;
+	}
+
+	/**
+	 * The events of a running statement. The slow statement event is begun
+	 * with the batch event, since whether it is committed is only known at
+	 * the end.
+	 */
+	private static class RunningStatement {
+		BatchEvent batch = new BatchEvent();
+		SlowStatementEvent slow = new SlowStatementEvent();
+		long startTime;
+	}
+
+	public FlightRecorderEvents() {
+	}
+
+	@Override
+	protected boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	protected Object beginPhase(String phase) {
+		PhaseEvent event = new PhaseEvent();
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	@Override
+	protected void endPhase(Object event) {
+		if (event != null) {
+			((PhaseEvent) event).commit();
+		}
+	}
+
+	@Override
+	protected Object beginStatement() {
+		RunningStatement statement = new RunningStatement();
+		statement.batch.begin();
+		statement.slow.begin();
+		statement.startTime = System.nanoTime();
+		return statement;
+	}
+
+	@Override
+	protected void endBatch(Object event, String tableName, String sql,
+			long numRows, long numBytes) {
+		RunningStatement statement = (RunningStatement) event;
+		BatchEvent batch = statement.batch;
+
+		batch.end();
+		if (batch.shouldCommit()) {
+			batch.table = tableName;
+			batch.rows = numRows;
+			batch.bytes = numBytes;
+			batch.commit();
+		}
+		commitIfSlow(statement, tableName, sql);
+	}
+
+	@Override
+	protected void endStatement(Object event, String sql) {
+		commitIfSlow((RunningStatement) event, null, sql);
+	}
+
+	private void commitIfSlow(RunningStatement statement, String tableName,
+			String sql) {
+		SlowStatementEvent slow = statement.slow;
+
+		if (System.nanoTime() - statement.startTime < slowStatementNanos) {
+			return;
+		}
+		slow.end();
+		if (slow.shouldCommit()) {
+			slow.table = tableName;
+			slow.sql = sql.length() > MAX_SQL_LENGTH ?
+					sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+			slow.commit();
+		}
+	}
+}
@@ -14,7 +14,11 @@ public class Basics {
 	public static final String OBJ_PROP_PREFIX = "";
 	public static final String DATA_PROP_PREFIX = "";
 	public static final String DEFAULT_SQL_DATATYPE = "VARCHAR(333) BINARY";
+	public static final String SURROGATE_KEY_DATATYPE = "INT";
+	public static final String SURROGATE_TABLE_PREFIX = "Id";
 	public static final String DB_NAME = "owl2sql";
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int CHECKPOINT_INTERVAL = 50000;
 	public static final String[] REQ_PRIV_SET = {
 		"CREATE", "DROP", "INSERT"
 	};
@@ -37,14 +41,27 @@ public class Basics {
 	
 	/**
 	 * Takes the given string and returns it in a SQL-acceptable format (i.e.
-	 * with regular expressions)
+	 * with quotes, backslashes, and control characters escaped) for use 
+	 * inside a quoted string literal
 	 */
 	public static String format(String str) {
-		String out;
+		StringBuilder out = new StringBuilder(str.length() + 16);
+		char c;
 		
-		out = str.replace("'", "\\'");
-		str = str.replace("\"", "\\\"");
-		return out;
+		for (int i = 0; i < str.length(); i++) {
+			c = str.charAt(i);
+			switch (c) {
+			case '\\': out.append("\\\\"); break;
+			case '\'': out.append("\\'"); break;
+			case '"': out.append("\\\""); break;
+			case '\0': out.append("\\0"); break;
+			case '\n': out.append("\\n"); break;
+			case '\r': out.append("\\r"); break;
+			case '\u001a': out.append("\\Z"); break;
+			default: out.append(c);
+			}
+		}
+		return out.toString();
 	}
 	
 	/**
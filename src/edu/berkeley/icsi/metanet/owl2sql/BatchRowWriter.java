@@ -0,0 +1,130 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes rows through one cached PreparedStatement per target table, 
+ * sending them to the server in JDBC batches. Combined with the batch 
+ * driver profile in Connector, Connector/J rewrites each batch into a 
+ * multi-row INSERT, so a batch costs a single round trip.
+ */
+public class BatchRowWriter extends RowWriter {
+	private Connection con;
+	private int batchSize;
+	private LinkedHashMap<String, PreparedStatement> statements;
+	private LinkedHashMap<String, String> insertStrings;
+	private LinkedHashMap<String, Integer> pending;
+	private LinkedHashMap<String, Long> pendingBytes;
+	
+	/**
+	 * Initializes the BatchRowWriter
+	 * @param con - the connection the rows are written through
+	 * @param batchSize - the number of rows buffered per table before the
+	 * buffered rows are sent to the server
+	 */
+	BatchRowWriter(Connection con, int batchSize) {
+		this.con = con;
+		this.batchSize = batchSize < 1 ? 1 : batchSize;
+		statements = new LinkedHashMap<String, PreparedStatement>();
+		insertStrings = new LinkedHashMap<String, String>();
+		pending = new LinkedHashMap<String, Integer>();
+		pendingBytes = new LinkedHashMap<String, Long>();
+	}
+	
+	/**
+	 * Returns a parameterized INSERT statement for the given table and fields
+	 */
+	static String getPreparedInsertString(String tableName, String[] fields) {
+		StringBuilder sql = new StringBuilder();
+		sql.append("INSERT INTO ").append(tableName).append(" (");
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(fields[i]);
+		}
+		sql.append(") VALUES (");
+		for (int i = 0; i < fields.length; i++) {
+			sql.append(i > 0 ? ", ?" : "?");
+		}
+		return sql.append(")").toString();
+	}
+	
+	@Override
+	protected void write(String tableName, String[] fields, Object... values) 
+			throws SQLException {
+		PreparedStatement ps = statements.get(tableName);
+		String sql;
+		int numPending;
+		
+		if (ps == null) {
+			sql = getPreparedInsertString(tableName, fields);
+			ps = con.prepareStatement(sql);
+			statements.put(tableName, ps);
+			insertStrings.put(tableName, sql);
+			pending.put(tableName, 0);
+			pendingBytes.put(tableName, 0L);
+		}
+		for (int i = 0; i < values.length; i++) {
+			ps.setObject(i + 1, values[i]);
+		}
+		ps.addBatch();
+		numPending = pending.get(tableName) + 1;
+		pending.put(tableName, numPending);
+		if (events.isEnabled()) {
+			pendingBytes.put(tableName, pendingBytes.get(tableName) + 
+					Utilities.getRowBytes(values));
+		}
+		
+		/*
+		 * A full batch may reference rows still pending in other tables, so
+		 * every table is flushed, in the order the tables were first written.
+		 */
+		if (numPending >= batchSize) {
+			flush();
+		}
+	}
+	
+	@Override
+	protected void flush() throws SQLException {
+		String tableName;
+		long startTime;
+		Object event;
+		for (Map.Entry<String, PreparedStatement> entry : 
+				statements.entrySet()) {
+			tableName = entry.getKey();
+			if (pending.get(tableName) > 0) {
+				event = events.beginStatement();
+				startTime = System.nanoTime();
+				entry.getValue().executeBatch();
+				if (metrics != null) {
+					metrics.recordExecute(tableName, 
+							System.nanoTime() - startTime);
+				}
+				events.endBatch(event, tableName, insertStrings.get(tableName),
+						pending.get(tableName), pendingBytes.get(tableName));
+				pending.put(tableName, 0);
+				pendingBytes.put(tableName, 0L);
+			}
+		}
+	}
+	
+	@Override
+	protected void close() throws SQLException {
+		try {
+			flush();
+		} finally {
+			for (PreparedStatement ps : statements.values()) {
+				ps.close();
+			}
+			statements.clear();
+			insertStrings.clear();
+			pending.clear();
+			pendingBytes.clear();
+		}
+	}
+}
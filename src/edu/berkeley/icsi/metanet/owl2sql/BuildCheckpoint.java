@@ -0,0 +1,182 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Progress of a build, recorded in the BuildCheckpoint table of the
+ * database being built: the completed phases and the number of rows
+ * committed to each table. Every entry carries a hash of the ontology file
+ * and of the options that shape the rows, so a build is only resumed from
+ * a checkpoint of the same input.
+ */
+public class BuildCheckpoint {
+	static final String TABLE_NAME = "BuildCheckpoint";
+	private static final String PHASE = "phase";
+	private static final String TABLE = "table";
+
+	private Statement stmt;
+	private String hash;
+	private HashSet<String> completedPhases;
+	private HashMap<String, Long> tableCounts;
+
+	/**
+	 * Initializes an empty checkpoint
+	 * @param stmt - the statement of the build connection
+	 * @param hash - the hash of the build input, see getHash()
+	 */
+	BuildCheckpoint(Statement stmt, String hash) {
+		this.stmt = stmt;
+		this.hash = hash;
+		completedPhases = new HashSet<String>();
+		tableCounts = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Returns a hex SHA-256 hash of the given file and build options
+	 * @param file - the ontology file
+	 * @param options - a description of the options that change the rows
+	 * that are built, or their order
+	 * @throws IOException if the file can't be read
+	 */
+	static String getHash(File file, String options) throws IOException {
+		MessageDigest digest;
+		InputStream in = new FileInputStream(file);
+		byte[] buf = new byte[65536];
+		StringBuilder hex = new StringBuilder();
+		int len;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+			while ((len = in.read(buf)) > 0) {
+				digest.update(buf, 0, len);
+			}
+			digest.update(options.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException("SHA-256 is not available", ex);
+		} finally {
+			in.close();
+		}
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Creates the checkpoint table in the current database
+	 * @throws SQLException
+	 */
+	protected void create() throws SQLException {
+		stmt.execute("CREATE TABLE " + TABLE_NAME + " (" +
+				"kind VARCHAR(16) NOT NULL, " +
+				"name VARCHAR(128) NOT NULL, " +
+				"numRows BIGINT NOT NULL DEFAULT 0, " +
+				"ontologyHash CHAR(64) NOT NULL, " +
+				"PRIMARY KEY (kind, name)) ENGINE=InnoDB");
+	}
+
+	/**
+	 * Switches to the given database and loads its checkpoint
+	 * @param dbName - the database of the interrupted build
+	 * @return true if the database has a checkpoint for the same input,
+	 * false if there is nothing to resume
+	 */
+	protected boolean load(String dbName) {
+		ResultSet rs;
+
+		try {
+			stmt.execute("use " + dbName);
+			rs = stmt.executeQuery("SELECT kind, name, numRows, " +
+					"ontologyHash FROM " + TABLE_NAME);
+			while (rs.next()) {
+				if (!hash.equals(rs.getString(4))) {
+					System.out.println("Checkpoint of " + dbName + " is for " +
+							"a different ontology or options. Rebuilding.");
+					rs.close();
+					completedPhases.clear();
+					tableCounts.clear();
+					return false;
+				} else if (PHASE.equals(rs.getString(1))) {
+					completedPhases.add(rs.getString(2));
+				} else {
+					tableCounts.put(rs.getString(2), rs.getLong(3));
+				}
+			}
+			rs.close();
+		} catch (SQLException ex) {
+			System.out.println("No checkpoint found in " + dbName +
+					". Rebuilding.");
+			return false;
+		}
+		if (completedPhases.isEmpty()) {
+			return false;
+		}
+		System.out.println("Resuming build of " + dbName + " after " +
+				completedPhases.size() + " completed phases");
+		return true;
+	}
+
+	/**
+	 * Checks if the given phase was completed by an earlier run
+	 */
+	public boolean isCompleted(String phase) {
+		return completedPhases.contains(phase);
+	}
+
+	/**
+	 * Returns the number of rows committed to the given table by an earlier
+	 * run
+	 */
+	public long getCount(String tableName) {
+		Long count = tableCounts.get(tableName);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Records the given row counts and, if given, the completed phase, and
+	 * commits them together with the rows written so far
+	 * @param phase - the phase that was completed, or null
+	 * @param counts - the number of rows written to each table so far
+	 * @throws SQLException
+	 */
+	protected void save(String phase, Map<String, Long> counts)
+			throws SQLException {
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			if (!entry.getValue().equals(tableCounts.get(entry.getKey()))) {
+				saveEntry(TABLE, entry.getKey(), entry.getValue());
+				tableCounts.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (phase != null) {
+			saveEntry(PHASE, phase, 0);
+			completedPhases.add(phase);
+		}
+		stmt.getConnection().commit();
+	}
+
+	private void saveEntry(String kind, String name, long count)
+			throws SQLException {
+		stmt.execute("REPLACE INTO " + TABLE_NAME + " (kind, name, " +
+				"numRows, ontologyHash) VALUES ('" + kind + "', '" +
+				Basics.format(name) + "', " + count + ", '" + hash + "')");
+	}
+
+	/**
+	 * Drops the checkpoint table once the build is complete
+	 * @throws SQLException
+	 */
+	protected void drop() throws SQLException {
+		stmt.execute("DROP TABLE IF EXISTS " + TABLE_NAME);
+	}
+}
@@ -0,0 +1,111 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+/**
+ * Marks the work of a build for Java Flight Recorder: the phases of the
+ * TableBuilder, every batch of rows sent to the database, and every
+ * statement that takes longer than a threshold. The events themselves are
+ * defined by FlightRecorderEvents, which is compiled separately for Java 11
+ * (see the compile-jfr target) and loaded by name, so the rest of the tool
+ * still builds and runs on Java 7. Without it, or on a JVM without JFR,
+ * every method does nothing.
+ *
+ * An event is begun before the work it marks and ended with the details of
+ * that work once it's done. The objects returned by the begin methods are
+ * only to be passed to the matching end method.
+ */
+public class BuildEvents {
+	private static final String IMPL_CLASS =
+			"edu.berkeley.icsi.metanet.owl2sql.FlightRecorderEvents";
+
+	/**
+	 * Statements shorter than this are not recorded as slow by default
+	 */
+	public static final long DEFAULT_SLOW_STATEMENT_MS = 1000;
+
+	private static final BuildEvents instance = load();
+
+	protected volatile long slowStatementNanos =
+			DEFAULT_SLOW_STATEMENT_MS * 1000000;
+
+	/**
+	 * Returns the events of this JVM
+	 */
+	static BuildEvents get() {
+		return instance;
+	}
+
+	private static BuildEvents load() {
+		try {
+			return (BuildEvents) Class.forName(IMPL_CLASS).getConstructor()
+					.newInstance();
+		} catch (ClassNotFoundException ex) {
+			/* Built without the compile-jfr target */
+		} catch (LinkageError ex) {
+			/* Running on a JVM older than Java 11 */
+		} catch (ReflectiveOperationException ex) {
+			System.err.println("Error: Could not load flight recorder " +
+					"events. " + ex.getMessage());
+		}
+		return new BuildEvents();
+	}
+
+	/**
+	 * Checks if the events are recorded, so that work only needed for them
+	 * can be skipped otherwise
+	 */
+	protected boolean isEnabled() {
+		return false;
+	}
+
+	/**
+	 * Sets the duration from which a statement is recorded as slow
+	 * @param ms - the threshold in milliseconds
+	 */
+	protected void setSlowStatementThreshold(long ms) {
+		slowStatementNanos = ms * 1000000;
+	}
+
+	/**
+	 * Begins the event of a phase of the build
+	 * @param phase - the name of the phase
+	 */
+	protected Object beginPhase(String phase) {
+		return null;
+	}
+
+	/**
+	 * Ends the event of a phase of the build
+	 * @param event - the object returned by beginPhase, or null
+	 */
+	protected void endPhase(Object event) {
+	}
+
+	/**
+	 * Begins the event of a statement or batch
+	 */
+	protected Object beginStatement() {
+		return null;
+	}
+
+	/**
+	 * Ends the event of a batch of rows sent to a table and, if it took
+	 * longer than the threshold, records it as a slow statement
+	 * @param event - the object returned by beginStatement
+	 * @param tableName - the table the rows were sent to
+	 * @param sql - the statement of the batch. Long statements are cut.
+	 * @param numRows - the number of rows in the batch
+	 * @param numBytes - the size of the rows' values
+	 */
+	protected void endBatch(Object event, String tableName, String sql,
+			long numRows, long numBytes) {
+	}
+
+	/**
+	 * Ends the event of a statement and records it if it took longer than
+	 * the threshold
+	 * @param event - the object returned by beginStatement
+	 * @param sql - the statement. Long statements are cut.
+	 */
+	protected void endStatement(Object event, String sql) {
+	}
+}
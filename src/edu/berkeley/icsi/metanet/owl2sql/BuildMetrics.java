@@ -0,0 +1,331 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of a build: the duration, rows written and peak
+ * heap of every phase and the heap in use at its end, and per table the
+ * rows and bytes written, the time spent executing its statements and the
+ * latency of its batches. The counters can be updated from any thread. The
+ * metrics are exposed as an MBean while the build runs and written to a
+ * JSON report at the end.
+ */
+public class BuildMetrics implements BuildMetricsMBean {
+	static final String OBJECT_NAME =
+			"edu.berkeley.icsi.metanet.owl2sql:type=BuildMetrics";
+
+	private long startTimeMS;
+	private volatile String currentPhase;
+	private volatile long phaseStartMS;
+	private long phaseStartRows;
+	private List<Phase> phases;
+	private ConcurrentMap<String, TableMetrics> tables;
+	private LatencyHistogram batchLatency;
+	private volatile int numBuildErrors;
+	private ObjectName objectName;
+
+	/**
+	 * A completed phase
+	 */
+	private static class Phase {
+		String name;
+		long durationMS;
+		long numRows;
+		long heapUsedBytes;
+		long peakHeapBytes;
+	}
+
+	/**
+	 * The metrics of one table
+	 */
+	private static class TableMetrics {
+		AtomicLong numRows = new AtomicLong();
+		AtomicLong numBytes = new AtomicLong();
+		AtomicLong executeNanos = new AtomicLong();
+		LatencyHistogram batchLatency = new LatencyHistogram();
+	}
+
+	/**
+	 * Initializes the metrics and starts their clock
+	 */
+	BuildMetrics() {
+		startTimeMS = System.currentTimeMillis();
+		phases = new ArrayList<Phase>();
+		tables = new ConcurrentHashMap<String, TableMetrics>();
+		batchLatency = new LatencyHistogram();
+	}
+
+	/**
+	 * Ends the running phase, if any, and starts the given phase
+	 * @param name - the name of the phase
+	 */
+	protected synchronized void startPhase(String name) {
+		endPhase();
+		for (MemoryPoolMXBean pool : 
+				ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		phaseStartRows = getRowsWritten();
+		phaseStartMS = System.currentTimeMillis();
+		currentPhase = name;
+	}
+
+	/**
+	 * Ends the running phase, if any, and records its duration, the rows
+	 * written during it, the heap in use at its end and its peak heap. The
+	 * peak heap is the sum of the peaks of the heap memory pools, which may
+	 * have been reached at different times, so it's an upper bound.
+	 */
+	protected synchronized void endPhase() {
+		Phase phase;
+		if (currentPhase == null) {
+			return;
+		}
+		phase = new Phase();
+		phase.name = currentPhase;
+		phase.durationMS = System.currentTimeMillis() - phaseStartMS;
+		phase.numRows = getRowsWritten() - phaseStartRows;
+		phase.heapUsedBytes = getHeapUsedBytes();
+		for (MemoryPoolMXBean pool : 
+				ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				phase.peakHeapBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		phases.add(phase);
+		currentPhase = null;
+	}
+
+	private TableMetrics getTable(String tableName) {
+		TableMetrics table = tables.get(tableName);
+		if (table == null) {
+			tables.putIfAbsent(tableName, new TableMetrics());
+			table = tables.get(tableName);
+		}
+		return table;
+	}
+
+	/**
+	 * Counts a row written to the given table
+	 * @param tableName - the table
+	 * @param numBytes - the size of the row's values
+	 */
+	protected void recordRow(String tableName, long numBytes) {
+		TableMetrics table = getTable(tableName);
+		table.numRows.incrementAndGet();
+		table.numBytes.addAndGet(numBytes);
+	}
+
+	/**
+	 * Records the time spent executing a batch of statements on the given
+	 * table
+	 * @param tableName - the table
+	 * @param nanos - the execute time, in nanoseconds
+	 */
+	protected void recordExecute(String tableName, long nanos) {
+		TableMetrics table = getTable(tableName);
+		table.executeNanos.addAndGet(nanos);
+		table.batchLatency.record(nanos / 1000);
+		batchLatency.record(nanos / 1000);
+	}
+
+	/**
+	 * Sets the number of entries skipped due to building errors
+	 */
+	protected void setBuildErrors(int numBuildErrors) {
+		this.numBuildErrors = numBuildErrors;
+	}
+
+	/**
+	 * Registers the metrics as an MBean with the platform MBean server
+	 * @throws JMException if the MBean can't be registered
+	 */
+	protected void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		objectName = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(this, objectName);
+	}
+
+	/**
+	 * Unregisters the MBean, if registered
+	 */
+	protected void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					objectName);
+		} catch (JMException ex) {
+			// already unregistered
+		}
+		objectName = null;
+	}
+
+	@Override
+	public String getCurrentPhase() {
+		return currentPhase;
+	}
+
+	@Override
+	public long getCurrentPhaseMS() {
+		return currentPhase == null ? 0 :
+				System.currentTimeMillis() - phaseStartMS;
+	}
+
+	@Override
+	public long getElapsedMS() {
+		return System.currentTimeMillis() - startTimeMS;
+	}
+
+	@Override
+	public long getRowsWritten() {
+		long numRows = 0;
+		for (TableMetrics table : tables.values()) {
+			numRows += table.numRows.get();
+		}
+		return numRows;
+	}
+
+	@Override
+	public long getBytesWritten() {
+		long numBytes = 0;
+		for (TableMetrics table : tables.values()) {
+			numBytes += table.numBytes.get();
+		}
+		return numBytes;
+	}
+
+	@Override
+	public long getHeapUsedBytes() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+				.getUsed();
+	}
+
+	@Override
+	public long getBatchLatencyP50US() {
+		return batchLatency.getPercentile(50);
+	}
+
+	@Override
+	public long getBatchLatencyP99US() {
+		return batchLatency.getPercentile(99);
+	}
+
+	@Override
+	public String[] getTableSummaries() {
+		ArrayList<String> summaries = new ArrayList<String>();
+		for (Map.Entry<String, TableMetrics> entry : tables.entrySet()) {
+			summaries.add(entry.getKey() + ": " +
+					entry.getValue().numRows.get() + " rows, " +
+					entry.getValue().numBytes.get() + " bytes, " +
+					entry.getValue().executeNanos.get() / 1000000 +
+					" ms executing");
+		}
+		return summaries.toArray(new String[summaries.size()]);
+	}
+
+	/**
+	 * Ends the running phase and writes the metrics as JSON to the given
+	 * file
+	 * @throws IOException if the file can't be written
+	 */
+	protected synchronized void writeReport(File file) throws IOException {
+		Writer out;
+		Phase phase;
+		TableMetrics table;
+		ArrayList<String> tableNames;
+
+		endPhase();
+		tableNames = new ArrayList<String>(tables.keySet());
+		Collections.sort(tableNames);
+		out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"));
+		try {
+			out.write("{\n");
+			out.write("  \"version\": " + quote(Basics.VERSION) + ",\n");
+			out.write("  \"totalMS\": " + getElapsedMS() + ",\n");
+			out.write("  \"buildErrors\": " + numBuildErrors + ",\n");
+			out.write("  \"rowsWritten\": " + getRowsWritten() + ",\n");
+			out.write("  \"bytesWritten\": " + getBytesWritten() + ",\n");
+			out.write("  \"batchLatencyUS\": " +
+					getLatencyJSON(batchLatency) + ",\n");
+			out.write("  \"phases\": [");
+			for (int i = 0; i < phases.size(); i++) {
+				phase = phases.get(i);
+				out.write((i > 0 ? "," : "") + "\n    {\"name\": " +
+						quote(phase.name) + ", \"ms\": " + phase.durationMS +
+						", \"rows\": " + phase.numRows + 
+						", \"heapUsedBytes\": " + phase.heapUsedBytes + 
+						", \"peakHeapBytes\": " + phase.peakHeapBytes + "}");
+			}
+			out.write("\n  ],\n");
+			out.write("  \"tables\": [");
+			for (int i = 0; i < tableNames.size(); i++) {
+				table = tables.get(tableNames.get(i));
+				out.write((i > 0 ? "," : "") + "\n    {\"name\": " +
+						quote(tableNames.get(i)) + ", \"rows\": " +
+						table.numRows.get() + ", \"bytes\": " +
+						table.numBytes.get() + ", \"executeMS\": " +
+						table.executeNanos.get() / 1000000 +
+						", \"batchLatencyUS\": " +
+						getLatencyJSON(table.batchLatency) + "}");
+			}
+			out.write("\n  ]\n");
+			out.write("}\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String getLatencyJSON(LatencyHistogram histogram) {
+		return "{\"count\": " + histogram.getCount() +
+				", \"p50\": " + histogram.getPercentile(50) +
+				", \"p90\": " + histogram.getPercentile(90) +
+				", \"p99\": " + histogram.getPercentile(99) +
+				", \"max\": " + histogram.getMax() + "}";
+	}
+
+	/**
+	 * Returns the given string as a JSON string literal
+	 */
+	static String quote(String str) {
+		StringBuilder out = new StringBuilder("\"");
+		char c;
+		for (int i = 0; i < str.length(); i++) {
+			c = str.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < 0x20) {
+				out.append(String.format("\\u%04x", (int) c));
+			} else {
+				out.append(c);
+			}
+		}
+		return out.append('"').toString();
+	}
+}
@@ -0,0 +1,54 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+/**
+ * The build metrics exposed through JMX while a build runs
+ */
+public interface BuildMetricsMBean {
+
+	/**
+	 * Returns the name of the running phase, or null between phases
+	 */
+	public String getCurrentPhase();
+
+	/**
+	 * Returns the time spent in the running phase, in milliseconds
+	 */
+	public long getCurrentPhaseMS();
+
+	/**
+	 * Returns the time since the metrics were started, in milliseconds
+	 */
+	public long getElapsedMS();
+
+	/**
+	 * Returns the number of rows written to all tables
+	 */
+	public long getRowsWritten();
+
+	/**
+	 * Returns the number of bytes of values written to all tables
+	 */
+	public long getBytesWritten();
+
+	/**
+	 * Returns the heap memory in use, in bytes
+	 */
+	public long getHeapUsedBytes();
+
+	/**
+	 * Returns the median latency of the batches sent to the database, in
+	 * microseconds
+	 */
+	public long getBatchLatencyP50US();
+
+	/**
+	 * Returns the 99th percentile latency of the batches sent to the
+	 * database, in microseconds
+	 */
+	public long getBatchLatencyP99US();
+
+	/**
+	 * Returns one line per table with its rows, bytes and execute time
+	 */
+	public String[] getTableSummaries();
+}
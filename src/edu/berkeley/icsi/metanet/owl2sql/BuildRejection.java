@@ -0,0 +1,71 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+/**
+ * An entry of the ontology that could not be inserted into the database,
+ * i.e. a single build error. Rejections are reported to a RejectionSink,
+ * which counts them by category and may write them to the error log and
+ * to the BuildRejection table.
+ */
+public class BuildRejection {
+
+	/**
+	 * Why an entry was rejected
+	 */
+	enum Category {
+		/** An individual has no class */
+		NO_CLASS,
+		/** An individual has more than one class */
+		MULTIPLE_CLASSES,
+		/** The class of an individual is anonymous */
+		ANONYMOUS_CLASS,
+		/** The class of an individual is not in the ontology */
+		UNKNOWN_CLASS,
+		/** A property expression is anonymous */
+		ANONYMOUS_PROPERTY,
+		/** The target of an object property assertion is anonymous */
+		ANONYMOUS_INDIVIDUAL,
+		/** The target of an object property assertion has no single class */
+		UNTYPED_RANGE,
+		/** An individual is not in the domain of a property it has */
+		DOMAIN,
+		/** The target of an object property assertion is not in its range */
+		RANGE
+	}
+
+	final Category category;
+	final String table;
+	final String entity;
+	final String property;
+	final String reason;
+
+	/**
+	 * Initializes the rejection
+	 * @param category - why the entry was rejected
+	 * @param table - the table the entry could not be inserted into
+	 * @param entity - the name of the rejected individual or property
+	 * @param property - the name of the property of the rejected assertion,
+	 * or null
+	 * @param reason - the message describing the rejection
+	 */
+	BuildRejection(Category category, String table, String entity,
+			String property, String reason) {
+		this.category = category;
+		this.table = table;
+		this.entity = entity;
+		this.property = property;
+		this.reason = reason;
+	}
+
+	/**
+	 * Returns the rejection as a single line of JSON, without the line
+	 * break
+	 */
+	String toJSON() {
+		return "{\"category\": " + BuildMetrics.quote(category.name()) +
+				", \"table\": " + BuildMetrics.quote(table) +
+				", \"entity\": " + BuildMetrics.quote(entity) +
+				", \"property\": " + (property == null ? "null" :
+					BuildMetrics.quote(property)) +
+				", \"reason\": " + BuildMetrics.quote(reason) + "}";
+	}
+}
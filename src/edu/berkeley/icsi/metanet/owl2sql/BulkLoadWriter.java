@@ -0,0 +1,237 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+
+/**
+ * Writes the rows of each table to a tab-separated staging file and, once
+ * all rows have been written, loads every file into its table with 
+ * LOAD DATA LOCAL INFILE. The staging files are deleted afterwards.
+ *
+ * LOAD DATA LOCAL implies IGNORE: rows with duplicate keys or bad values
+ * are only reported as warnings and skipped. A load that skips a row or 
+ * raises a warning therefore fails the build, and foreign keys are left to
+ * be verified once the rows are loaded.
+ */
+public class BulkLoadWriter extends RowWriter {
+	private Connection con;
+	private File stagingDir;
+	private LinkedHashMap<String, StagingFile> stagingFiles;
+	
+	/**
+	 * The staging file of one table
+	 */
+	static class StagingFile {
+		String[] fields;
+		File file;
+		BufferedWriter out;
+		long numRows = 0;
+	}
+	
+	/**
+	 * Initializes the BulkLoadWriter
+	 * @param con - the connection the staging files are loaded through
+	 * @throws IOException if the staging directory cannot be created
+	 */
+	BulkLoadWriter(Connection con) throws IOException {
+		this.con = con;
+		stagingDir = Files.createTempDirectory("owl2sql").toFile();
+		stagingFiles = new LinkedHashMap<String, StagingFile>();
+	}
+	
+	/**
+	 * Appends the given value to the given line in the format expected by
+	 * LOAD DATA's default field and line terminators and escape character
+	 */
+	static void appendField(StringBuilder line, Object value) {
+		String str;
+		char c;
+		
+		if (value == null) {
+			line.append("\\N");
+			return;
+		} else if (value instanceof Boolean) {
+			line.append(((Boolean) value) ? '1' : '0');
+			return;
+		}
+		str = value.toString();
+		for (int i = 0; i < str.length(); i++) {
+			c = str.charAt(i);
+			switch (c) {
+			case '\\': line.append("\\\\"); break;
+			case '\t': line.append("\\t"); break;
+			case '\n': line.append("\\n"); break;
+			case '\r': line.append("\\r"); break;
+			case '\0': line.append("\\0"); break;
+			default: line.append(c);
+			}
+		}
+	}
+	
+	@Override
+	protected void write(String tableName, String[] fields, Object... values)
+			throws SQLException {
+		StagingFile staging = stagingFiles.get(tableName);
+		StringBuilder line = new StringBuilder();
+		
+		try {
+			if (staging == null) {
+				staging = new StagingFile();
+				staging.fields = fields;
+				staging.file = new File(stagingDir, tableName + ".tsv");
+				staging.out = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(staging.file), "UTF-8"));
+				stagingFiles.put(tableName, staging);
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					line.append('\t');
+				}
+				appendField(line, values[i]);
+			}
+			line.append('\n');
+			staging.out.write(line.toString());
+			staging.numRows++;
+		} catch (IOException ex) {
+			throw new SQLException("Could not write staging file for " +
+					tableName + ": " + ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Flushes the staging files to disk. Rows are only loaded into the 
+	 * database when the writer is closed.
+	 */
+	@Override
+	protected void flush() throws SQLException {
+		for (String tableName : stagingFiles.keySet()) {
+			try {
+				stagingFiles.get(tableName).out.flush();
+			} catch (IOException ex) {
+				throw new SQLException("Could not write staging file for " +
+						tableName + ": " + ex.getMessage(), ex);
+			}
+		}
+	}
+	
+	/**
+	 * Foreign keys are not checked by LOAD DATA LOCAL, whose violations are
+	 * only warnings
+	 */
+	@Override
+	protected boolean checksForeignKeys() {
+		return false;
+	}
+	
+	/**
+	 * Loads every staging file into its table, in the order the tables were
+	 * first written, and deletes the staging files
+	 */
+	@Override
+	protected void close() throws SQLException {
+		Statement stmt = null;
+		StagingFile staging;
+		long startTime;
+		Object event;
+		
+		try {
+			for (String tableName : stagingFiles.keySet()) {
+				staging = stagingFiles.get(tableName);
+				try {
+					staging.out.close();
+				} catch (IOException ex) {
+					throw new SQLException("Could not write staging file for " +
+							tableName + ": " + ex.getMessage(), ex);
+				}
+			}
+			stmt = con.createStatement();
+			for (String tableName : stagingFiles.keySet()) {
+				staging = stagingFiles.get(tableName);
+				event = events.beginStatement();
+				startTime = System.nanoTime();
+				load(stmt, tableName, staging);
+				if (metrics != null) {
+					metrics.recordExecute(tableName, 
+							System.nanoTime() - startTime);
+				}
+				events.endBatch(event, tableName, "LOAD " + 
+						staging.file.getName() + " INTO " + tableName, 
+						staging.numRows, staging.file.length());
+			}
+		} finally {
+			if (stmt != null) {
+				stmt.close();
+			}
+			for (StagingFile s : stagingFiles.values()) {
+				try {
+					s.out.close();
+				} catch (IOException ex) {
+					// already reported above
+				}
+				s.file.delete();
+			}
+			stagingFiles.clear();
+			stagingDir.delete();
+		}
+	}
+	
+	/**
+	 * Loads a single staging file into its table and reports the number of
+	 * rows loaded
+	 * @throws SQLException if the load fails, skips a row or raises a 
+	 * warning
+	 */
+	protected void load(Statement stmt, String tableName, StagingFile staging) 
+			throws SQLException {
+		StringBuilder sql = new StringBuilder();
+		int numLoaded;
+		long numWarnings;
+		SQLWarning warning;
+		ResultSet rs;
+		
+		/* The staging files are UTF-8, which utf8 (utf8mb3) would truncate */
+		sql.append("LOAD DATA LOCAL INFILE '")
+				.append(Basics.format(staging.file.getAbsolutePath()))
+				.append("' INTO TABLE ").append(tableName)
+				.append(" CHARACTER SET utf8mb4 (");
+		for (int i = 0; i < staging.fields.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(staging.fields[i]);
+		}
+		sql.append(")");
+		
+		stmt.clearWarnings();
+		numLoaded = stmt.executeUpdate(sql.toString());
+		warning = stmt.getWarnings();
+		
+		/* The driver only gets max_error_count warnings; count them all */
+		rs = stmt.executeQuery("SHOW COUNT(*) WARNINGS");
+		try {
+			rs.next();
+			numWarnings = rs.getLong(1);
+		} finally {
+			rs.close();
+		}
+		System.out.println("Loaded " + numLoaded + " of " + staging.numRows + 
+				" rows into " + tableName + " with " + numWarnings + 
+				" warnings");
+		if (numLoaded != staging.numRows || numWarnings > 0) {
+			throw new SQLException("Loaded " + numLoaded + " of " + 
+					staging.numRows + " rows into " + tableName + " with " + 
+					numWarnings + " warnings" + (warning == null ? "" : 
+					", the first being: " + warning.getMessage()));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * Counts the rows written to each table and records the counts in a 
+ * BuildCheckpoint every Basics.CHECKPOINT_INTERVAL rows and at the end of
+ * every phase. When a build is resumed, the rows an earlier run already 
+ * committed are written again in the same order, and are skipped. Rows of
+ * tables that aren't written in a stable order are never skipped; the
+ * caller empties those tables before resuming.
+ */
+public class CheckpointRowWriter extends RowWriter {
+	private RowWriter out;
+	private BuildCheckpoint checkpoint;
+	private LinkedHashMap<String, Long> counts;
+	private HashMap<String, Long> skipCounts;
+	private HashSet<String> unorderedTables;
+	private int numSinceCheckpoint;
+	
+	/**
+	 * Initializes the CheckpointRowWriter
+	 * @param out - the writer the rows are passed on to. Its rows must be
+	 * sent through the connection of the checkpoint.
+	 * @param checkpoint - the checkpoint of the build
+	 */
+	CheckpointRowWriter(RowWriter out, BuildCheckpoint checkpoint) {
+		this.out = out;
+		this.checkpoint = checkpoint;
+		counts = new LinkedHashMap<String, Long>();
+		skipCounts = new HashMap<String, Long>();
+		unorderedTables = new HashSet<String>();
+		numSinceCheckpoint = 0;
+	}
+	
+	/**
+	 * Writes every row of the given table, even when resuming, since its
+	 * rows aren't written in the same order by every run
+	 */
+	protected void addUnorderedTable(String tableName) {
+		unorderedTables.add(tableName);
+	}
+	
+	@Override
+	protected void write(String tableName, String[] fields, Object... values) 
+			throws SQLException {
+		Long count = counts.get(tableName);
+		Long skipCount = skipCounts.get(tableName);
+		
+		if (count == null) {
+			count = 0L;
+			skipCount = unorderedTables.contains(tableName) ? 0 : 
+					checkpoint.getCount(tableName);
+			skipCounts.put(tableName, skipCount);
+		}
+		counts.put(tableName, count + 1);
+		if (count < skipCount) {
+			/* Already committed by an earlier run */
+			return;
+		}
+		out.write(tableName, fields, values);
+		if (++numSinceCheckpoint >= Basics.CHECKPOINT_INTERVAL) {
+			checkpoint(null);
+		}
+	}
+	
+	/**
+	 * Sends every buffered row to the server and commits them together 
+	 * with the row counts
+	 * @param phase - the phase that was completed, or null
+	 * @throws SQLException
+	 */
+	protected void checkpoint(String phase) throws SQLException {
+		out.flush();
+		checkpoint.save(phase, counts);
+		numSinceCheckpoint = 0;
+	}
+	
+	@Override
+	protected void setMetrics(BuildMetrics metrics) {
+		super.setMetrics(metrics);
+		out.setMetrics(metrics);
+	}
+	
+	@Override
+	protected void flush() throws SQLException {
+		out.flush();
+	}
+	
+	@Override
+	protected boolean checksForeignKeys() {
+		return out.checksForeignKeys();
+	}
+	
+	@Override
+	protected void close() throws SQLException {
+		out.close();
+	}
+}
@@ -8,18 +8,32 @@ import org.apache.commons.cli.CommandLine;
 public class CmdLineShell extends Shell {
 	String dbName;
 
-	public CmdLineShell(CommandLine cmd) {
+	public CmdLineShell(CommandLine cmd, Dialect dialect) {
 		super();
 		String portStr;
 		
+		this.dialect = dialect;
 		server = cmd.getOptionValue("server");
 		username = cmd.getOptionValue("u");
 		pw = cmd.getOptionValue("p");
 		dbName = cmd.getOptionValue("db");
 		portStr = cmd.getOptionValue("port");
 		
+		if (dbName == null) {
+			System.out.println("No database name specified. Defaulting " +
+					"to Metaphors.");
+			dbName = "Metaphors";
+		}
+		
+		if (dialect.isEmbedded()) {
+			/* The database is a local file */
+			username = "";
+			pw = "";
+			return;
+		}
+		
 		if (server == null) {
-			System.out.println("No MySQL server specified. Defaulting to " +
+			System.out.println("No server specified. Defaulting to " +
 					"localhost.");
 			server = "localhost";
 		} else if (server.length() == 0 || server.contains("/") || 
@@ -30,9 +44,9 @@ public class CmdLineShell extends Shell {
 		}
 		
 		if (portStr == null) {
-			System.out.println("No MySQL port number specified. Defaulting" +
-					" to 3306.");
-			port = 3306;
+			port = dialect.getDefaultPort();
+			System.out.println("No port number specified. Defaulting to " + 
+					port + ".");
 		} else {
 			try {
 				port = Integer.parseInt(portStr);
@@ -43,30 +57,25 @@ public class CmdLineShell extends Shell {
 		}
 		
 		if (username == null) {
-			System.out.println("No MySQL username specified. Defaulting to" +
+			System.out.println("No username specified. Defaulting to" +
 					" blank username.");
 			username = "";
 		}
 		
 		if (pw == null) {
-			System.out.println("No MySQL password specified. Defaulting to " +
+			System.out.println("No password specified. Defaulting to " +
 					"no password.");
 			pw = "";
 		}
 		
-		if (dbName == null) {
-			System.out.println("No MySQL database name specified. Defaulting " +
-					"to Metaphors.");
-			dbName = "Metaphors";
-		}
-		
 	}
 
 	@Override
 	Connection establishConnection() {
 		Connection con = null;
 		try {
-			con = Connector.getConnection(server, port, username, pw);
+			con = Connector.getConnection(dialect, server, port, username, 
+					pw, dbName);
 			con.setAutoCommit(false);
 		} catch (SQLException ex) {
 			System.err.println("Error: Unable to establish connection");
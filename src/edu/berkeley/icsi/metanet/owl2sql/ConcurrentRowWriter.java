@@ -0,0 +1,299 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads rows through several connections at once. Every connection is
+ * drained by its own loader thread, fed through a bounded queue, and every
+ * table is assigned to one loader the first time it is written, in turn.
+ * A full queue blocks the caller until the loader catches up.
+ *
+ * Since the connections do not see each other's uncommitted rows, foreign
+ * key checks are turned off on them; the foreign keys are verified with
+ * set-based queries once the rows are committed. If any loader fails, every
+ * loader rolls back. Otherwise the loaders commit one after another, which
+ * is not atomic: if a commit fails, the loaders before it have committed
+ * already, and the database is left partially loaded. That failure names
+ * the committed tables and can't be resumed; the database must be rebuilt,
+ * which -shadow makes safe.
+ */
+public class ConcurrentRowWriter extends RowWriter {
+	private static final long OFFER_TIMEOUT_MS = 100;
+	private static final Row FLUSH = new Row(null, null, null);
+	private static final Row END = new Row(null, null, null);
+
+	private ArrayList<Loader> loaders;
+	private HashMap<String, Loader> tableLoaders;
+	private ExecutorService executor;
+	private boolean closed, committed;
+
+	/**
+	 * A single queued row
+	 */
+	private static class Row {
+		final String tableName;
+		final String[] fields;
+		final Object[] values;
+
+		Row(String tableName, String[] fields, Object[] values) {
+			this.tableName = tableName;
+			this.fields = fields;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * Drains one queue into one connection
+	 */
+	private static class Loader implements Callable<Void> {
+		final Connection con;
+		final BlockingQueue<Row> queue;
+		final BatchRowWriter out;
+		volatile Throwable failure;
+
+		Loader(Connection con, int batchSize, int capacity) {
+			this.con = con;
+			queue = new ArrayBlockingQueue<Row>(capacity);
+			out = new BatchRowWriter(con, batchSize);
+		}
+
+		@Override
+		public Void call() throws Exception {
+			Row row;
+			try {
+				while ((row = queue.take()) != END) {
+					if (row == FLUSH) {
+						out.flush();
+					} else {
+						out.write(row.tableName, row.fields, row.values);
+					}
+				}
+				out.close();
+			} catch (Throwable t) {
+				failure = t;
+				/* Unblock a caller waiting on the full queue */
+				queue.clear();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Initializes the ConcurrentRowWriter and starts one loader per
+	 * connection. The connections must have auto-commit disabled and use the
+	 * target database; they are closed by close().
+	 * @param connections - the connections the rows are loaded through
+	 * @param batchSize - the number of rows each loader buffers per table
+	 * before sending them to the server
+	 * @throws SQLException if foreign key checks can't be turned off
+	 */
+	ConcurrentRowWriter(List<Connection> connections, int batchSize)
+			throws SQLException {
+		Statement stmt;
+
+		loaders = new ArrayList<Loader>();
+		tableLoaders = new HashMap<String, Loader>();
+		for (Connection con : connections) {
+			stmt = con.createStatement();
+			try {
+				stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+			} finally {
+				stmt.close();
+			}
+			loaders.add(new Loader(con, batchSize,
+					Math.max(1, batchSize) * 2));
+		}
+		executor = Executors.newFixedThreadPool(loaders.size());
+		for (Loader loader : loaders) {
+			executor.submit(loader);
+		}
+	}
+
+	/**
+	 * Throws the failure of the first loader that failed, if any
+	 */
+	private void checkLoaders() throws SQLException {
+		for (Loader loader : loaders) {
+			if (loader.failure instanceof SQLException) {
+				throw (SQLException) loader.failure;
+			} else if (loader.failure != null) {
+				throw new SQLException("Loader failed: " + loader.failure,
+						loader.failure);
+			}
+		}
+	}
+
+	/**
+	 * Queues the given row, waiting while the loader's queue is full
+	 */
+	private void enqueue(Loader loader, Row row) throws SQLException {
+		try {
+			while (!loader.queue.offer(row, OFFER_TIMEOUT_MS,
+					TimeUnit.MILLISECONDS)) {
+				checkLoaders();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while queueing rows", ex);
+		}
+	}
+
+	@Override
+	protected void write(String tableName, String[] fields, Object... values)
+			throws SQLException {
+		Loader loader = tableLoaders.get(tableName);
+
+		checkLoaders();
+		if (loader == null) {
+			loader = loaders.get(tableLoaders.size() % loaders.size());
+			tableLoaders.put(tableName, loader);
+		}
+		enqueue(loader, new Row(tableName, fields, values));
+	}
+
+	/**
+	 * Asks every loader to send the rows it has buffered so far
+	 */
+	@Override
+	protected void flush() throws SQLException {
+		checkLoaders();
+		for (Loader loader : loaders) {
+			enqueue(loader, FLUSH);
+		}
+	}
+
+	/**
+	 * Has every loader record its execute times in the given metrics
+	 */
+	@Override
+	protected void setMetrics(BuildMetrics metrics) {
+		super.setMetrics(metrics);
+		for (Loader loader : loaders) {
+			loader.out.setMetrics(metrics);
+		}
+	}
+	
+	/**
+	 * Foreign keys are not checked by the loaders
+	 */
+	@Override
+	protected boolean checksForeignKeys() {
+		return false;
+	}
+
+	/**
+	 * Returns whether any loader has committed its rows, in which case a
+	 * failure of the build leaves the database partially loaded
+	 */
+	public boolean hasCommitted() {
+		return committed;
+	}
+
+	/**
+	 * Returns the failure of a commit that followed the commits of the
+	 * given loaders, naming the tables they committed
+	 */
+	private SQLException getPartialCommitFailure(List<Loader> committed, 
+			SQLException cause) {
+		List<String> tableNames = new ArrayList<String>();
+		
+		for (Map.Entry<String, Loader> entry : tableLoaders.entrySet()) {
+			if (committed.contains(entry.getValue())) {
+				tableNames.add(entry.getKey());
+			}
+		}
+		return new SQLException("Commit failed after the rows of " + 
+				tableNames + " were committed: " + cause.getMessage() + 
+				". The database is partially loaded and can't be resumed; " +
+				"it must be rebuilt.", cause);
+	}
+
+	/**
+	 * Waits for every loader to finish, then commits the connections one 
+	 * after another if every loader succeeded and rolls all of them back 
+	 * otherwise. If a commit fails, the remaining connections are rolled 
+	 * back, but the ones before it stay committed. The connections are 
+	 * closed either way.
+	 * @throws SQLException if any loader failed, or if a commit failed, in 
+	 * which case the message names the tables that were committed
+	 */
+	@Override
+	protected void close() throws SQLException {
+		SQLException failure = null;
+		ArrayList<Loader> committed = new ArrayList<Loader>();
+
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			for (Loader loader : loaders) {
+				enqueue(loader, END);
+			}
+		} catch (SQLException ex) {
+			/* Interrupt the loaders that are still waiting for rows */
+			failure = ex;
+			executor.shutdownNow();
+		}
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(OFFER_TIMEOUT_MS,
+					TimeUnit.MILLISECONDS)) {
+				/* Keep waiting for the loaders to drain their queues */
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+		}
+		if (failure == null) {
+			try {
+				checkLoaders();
+			} catch (SQLException ex) {
+				failure = ex;
+			}
+		}
+
+		/*
+		 * A failure in any loader rolls back every loader. Otherwise the 
+		 * loaders commit in turn, and a failed commit rolls back the rest.
+		 */
+		for (Loader loader : loaders) {
+			try {
+				if (failure == null) {
+					loader.con.commit();
+					committed.add(loader);
+					this.committed = true;
+				} else {
+					loader.con.rollback();
+				}
+			} catch (SQLException ex) {
+				if (failure == null) {
+					failure = committed.isEmpty() ? ex : 
+							getPartialCommitFailure(committed, ex);
+				}
+			}
+		}
+		for (Loader loader : loaders) {
+			try {
+				loader.con.close();
+			} catch (SQLException ex) {
+				/* Nothing more can be done for this connection */
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -5,7 +5,10 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
 
 public class Connector {
 	
@@ -28,10 +31,102 @@ public class Connector {
 	protected static Connection getConnection(String server, int port, 
 			String username, String pw) throws SQLException {
 		Connection con = DriverManager.getConnection("jdbc:mysql://" + server +
-				":" + port, username, pw);		
+				":" + port, getDriverProfile(username, pw));		
 		return con;
 	}
 	
+	/**
+	 * Gets a connection to the given server, or to the given database file
+	 * if the dialect is embedded
+	 * @param dialect - the dialect of the database
+	 * @param server - Name of the server (i.e. localhost)
+	 * @param port - Port of the server
+	 * @param username - Username
+	 * @param pw - Password
+	 * @param dbName - the database name, only used by embedded dialects
+	 * @throws SQLException
+	 */
+	protected static Connection getConnection(Dialect dialect, String server,
+			int port, String username, String pw, String dbName) 
+			throws SQLException {
+		return DriverManager.getConnection(dialect.getURL(server, port, 
+				dialect.isEmbedded() ? dbName : null), 
+				dialect.getDriverProfile(username, pw));
+	}
+	
+	/**
+	 * Opens the given number of connections to the given database for
+	 * concurrent loading. Auto-commit is disabled on every connection.
+	 * @param server - Name of a MySQL server (i.e. localhost)
+	 * @param port - Port of the MySQL server
+	 * @param username - Username
+	 * @param pw - Password
+	 * @param dbName - the database the connections use
+	 * @param numConnections - the number of connections to open
+	 * @return the open connections
+	 * @throws SQLException if any connection can't be opened, in which case
+	 * the connections opened so far are closed
+	 */
+	protected static List<Connection> getConnections(String server, int port,
+			String username, String pw, String dbName, int numConnections) 
+			throws SQLException {
+		ArrayList<Connection> cons = new ArrayList<Connection>();
+		Connection con;
+		try {
+			for (int i = 0; i < numConnections; i++) {
+				con = getConnection(server, port, username, pw);
+				cons.add(con);
+				con.setAutoCommit(false);
+				con.setCatalog(dbName);
+			}
+		} catch (SQLException ex) {
+			for (Connection opened : cons) {
+				opened.close();
+			}
+			throw ex;
+		}
+		return cons;
+	}
+	
+	/**
+	 * Returns the Connector/J connection properties used for building. 
+	 * Batch rewriting turns each JDBC batch into multi-row INSERTs, 
+	 * client-side prepared statements avoid a server round trip per prepare,
+	 * and local infiles are allowed for bulk loading.
+	 * @param username - Username
+	 * @param pw - Password
+	 * @return the connection properties, including the user credentials
+	 */
+	protected static Properties getDriverProfile(String username, String pw) {
+		Properties props = new Properties();
+		props.setProperty("user", username);
+		props.setProperty("password", pw);
+		props.setProperty("rewriteBatchedStatements", "true");
+		props.setProperty("useServerPrepStmts", "false");
+		props.setProperty("cachePrepStmts", "true");
+		props.setProperty("allowLoadLocalInfile", "true");
+		return props;
+	}
+	
+	/**
+	 * Returns the largest packet, in bytes, that the server accepts from the 
+	 * given connection
+	 * @param con - an open connection to a MySQL server
+	 * @return the value of the server's max_allowed_packet variable
+	 * @throws SQLException
+	 */
+	protected static long getMaxAllowedPacket(Connection con) 
+			throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet");
+			rs.next();
+			return rs.getLong(1);
+		} finally {
+			stmt.close();
+		}
+	}
+	
 	protected static boolean adequatePermissions(Connection con) 
 			throws SQLException {
 		boolean contains;
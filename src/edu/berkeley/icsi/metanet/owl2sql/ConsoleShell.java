@@ -6,8 +6,10 @@ import java.sql.SQLException;
 
 public class ConsoleShell extends Shell {
 	Console console;
+	String dbName;
 	
-	protected ConsoleShell() {
+	protected ConsoleShell(Dialect dialect) {
+		this.dialect = dialect;
 		console = System.console();
 		if (console == null) {
 			System.err.println("Error: If server info is not included as " +
@@ -19,25 +21,35 @@ public class ConsoleShell extends Shell {
 	
 	@Override
 	String getDBName() {
-		String dbName;
-		while (true) {
+		while (dbName == null) {
 			dbName = console.readLine("Choose database name (will overwrite " +
 					"any existing database with the same name): ");
-			if (Basics.isValidDBName(dbName)) {
-				return dbName;
-			} else {
+			if (!Basics.isValidDBName(dbName)) {
 				System.err.println("Error: Invalid database name. Must " +
 						"contain only alphanumeric characters, underscores, " +
 						"and string symbols ($)");
+				dbName = null;
 			}
 		}
+		return dbName;
 	}
 
 	@Override
 	Connection establishConnection() {
 		Connection con;
+		if (dialect.isEmbedded()) {
+			try {
+				con = Connector.getConnection(dialect, null, 0, "", "", 
+						getDBName());
+				con.setAutoCommit(false);
+				return con;
+			} catch (SQLException ex) {
+				System.err.println("Error: Unable to open database file");
+				System.exit(1);
+			}
+		}
 		while (true) {
-			server = console.readLine("Enter MySQL server name: ");
+			server = console.readLine("Enter server name: ");
 			if (server.length() == 0 || server.contains("/") || 
 					server.contains(":")) {
 				System.err.println("Error: Invalid server name. No \":\" " +
@@ -46,8 +58,9 @@ public class ConsoleShell extends Shell {
 			}
 			while (true) {
 				try {
-					port = Integer.parseInt(console.readLine("Enter MySQL " +
-							"server port number (default 3306): "));
+					port = Integer.parseInt(console.readLine("Enter " +
+							"server port number (default " + 
+							dialect.getDefaultPort() + "): "));
 					break;
 				} catch (NumberFormatException ex) {
 					System.err.println("Error: Port number must be an integer");
@@ -56,7 +69,8 @@ public class ConsoleShell extends Shell {
 			username = console.readLine("Enter username: ");
 			pw = String.valueOf(console.readPassword("Enter password: "));
 			try {
-				con = Connector.getConnection(server, port, username, pw);
+				con = Connector.getConnection(dialect, server, port, 
+						username, pw, null);
 				con.setAutoCommit(false);
 				return con;
 			} catch (SQLException ex) {
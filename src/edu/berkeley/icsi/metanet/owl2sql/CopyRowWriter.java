@@ -0,0 +1,106 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Stages the rows of each table like the BulkLoadWriter and loads every 
+ * staging file into its table with PostgreSQL's COPY ... FROM STDIN. The
+ * staging files are in the COPY text format already, which is the same as
+ * LOAD DATA's default format. The driver's CopyManager is looked up by 
+ * reflection, so the PostgreSQL driver is only needed at run time.
+ */
+public class CopyRowWriter extends BulkLoadWriter {
+	
+	/**
+	 * Initializes the CopyRowWriter
+	 * @param con - a connection to a PostgreSQL server that the staging 
+	 * files are copied through
+	 * @throws IOException if the staging directory cannot be created
+	 */
+	CopyRowWriter(Connection con) throws IOException {
+		super(con);
+	}
+	
+	/**
+	 * COPY fails on the first row that violates a key or foreign key
+	 */
+	@Override
+	protected boolean checksForeignKeys() {
+		return true;
+	}
+	
+	@Override
+	protected void load(Statement stmt, String tableName, StagingFile staging)
+			throws SQLException {
+		StringBuilder sql = new StringBuilder();
+		Reader in;
+		long numLoaded;
+		
+		sql.append("COPY ").append(tableName).append(" (");
+		for (int i = 0; i < staging.fields.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(staging.fields[i]);
+		}
+		sql.append(") FROM STDIN");
+		
+		try {
+			in = new InputStreamReader(new FileInputStream(staging.file), 
+					"UTF-8");
+		} catch (IOException ex) {
+			throw new SQLException("Could not read staging file for " +
+					tableName + ": " + ex.getMessage(), ex);
+		}
+		try {
+			numLoaded = copyIn(stmt.getConnection(), sql.toString(), in);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException ex) {
+				// nothing left to read
+			}
+		}
+		System.out.println("Copied " + numLoaded + " of " + staging.numRows + 
+				" rows into " + tableName);
+	}
+	
+	/**
+	 * Runs the given COPY ... FROM STDIN statement with the CopyManager of
+	 * the given connection
+	 * @return the number of rows copied
+	 * @throws SQLException if the copy fails or the connection is not a 
+	 * PostgreSQL connection
+	 */
+	private static long copyIn(Connection con, String sql, Reader in) 
+			throws SQLException {
+		Class<?> pgConnection;
+		Object copyManager;
+		
+		try {
+			pgConnection = Class.forName("org.postgresql.PGConnection");
+			copyManager = pgConnection.getMethod("getCopyAPI").invoke(
+					con.unwrap(pgConnection));
+			return (Long) copyManager.getClass().getMethod("copyIn", 
+					String.class, Reader.class).invoke(copyManager, sql, in);
+		} catch (ClassNotFoundException ex) {
+			throw new SQLException("PostgreSQL driver not found", ex);
+		} catch (InvocationTargetException ex) {
+			if (ex.getCause() instanceof SQLException) {
+				throw (SQLException) ex.getCause();
+			}
+			throw new SQLException("COPY failed: " + 
+					ex.getCause().getMessage(), ex.getCause());
+		} catch (ReflectiveOperationException ex) {
+			throw new SQLException("Unsupported PostgreSQL driver: " + 
+					ex.getMessage(), ex);
+		}
+	}
+}
@@ -1,9 +1,16 @@
 package edu.berkeley.icsi.metanet.owl2sql;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class DatabaseHandler {
+	static final String SHADOW_SUFFIX = "__building";
+	static final String PREVIOUS_SUFFIX = "__prev";
 	
 	/**Drops the previous database if necessary and creates a new database
 	 * 
@@ -22,4 +29,190 @@ public class DatabaseHandler {
 		System.out.println("Empty database " + dbName + " created");
 		stmt.execute("use " + dbName);
 	}
+	
+	/**
+	 * Switches to an existing database without changing it
+	 * @throws SQLException if the database does not exist
+	 */
+	protected static void open(Statement stmt, String dbName) 
+			throws SQLException {
+		stmt.execute("use " + dbName);
+		System.out.println("Existing database " + dbName + " opened");
+	}
+	
+	/**
+	 * Returns the names of the tables or views of the given database
+	 * @param stmt - the statement the query is run on
+	 * @param dbName - the database
+	 * @param tableType - "BASE TABLE" or "VIEW"
+	 * @throws SQLException
+	 */
+	private static List<String> getTables(Statement stmt, String dbName, 
+			String tableType) throws SQLException {
+		ArrayList<String> tables = new ArrayList<String>();
+		ResultSet rs = stmt.executeQuery("SELECT TABLE_NAME FROM " +
+				"information_schema.TABLES WHERE TABLE_SCHEMA = '" + 
+				Basics.format(dbName) + "' AND TABLE_TYPE = '" + tableType + 
+				"'");
+		while (rs.next()) {
+			tables.add(rs.getString(1));
+		}
+		rs.close();
+		return tables;
+	}
+	
+	/**
+	 * Returns the definitions of the views of the given database by name.
+	 * The tables of the definitions are qualified with the database name.
+	 * @throws SQLException
+	 */
+	private static Map<String, String> getViewDefinitions(Statement stmt, 
+			String dbName) throws SQLException {
+		LinkedHashMap<String, String> views = 
+				new LinkedHashMap<String, String>();
+		ResultSet rs = stmt.executeQuery("SELECT TABLE_NAME, " +
+				"VIEW_DEFINITION FROM information_schema.VIEWS WHERE " +
+				"TABLE_SCHEMA = '" + Basics.format(dbName) + "'");
+		while (rs.next()) {
+			views.put(rs.getString(1), rs.getString(2));
+		}
+		rs.close();
+		return views;
+	}
+	
+	/**
+	 * Returns the name of the view created by the given CREATE VIEW 
+	 * statement
+	 */
+	private static String getViewName(String view) {
+		return view.split(" ")[2];
+	}
+	
+	/**
+	 * Replaces the tables of the given database with the tables built in its
+	 * shadow database (dbName + SHADOW_SUFFIX). The previous tables are kept
+	 * in dbName + PREVIOUS_SUFFIX for rollback, replacing whatever was kept 
+	 * there before, and the previous views are recreated there over them.
+	 * 
+	 * The new views are created and queried in the shadow database first, so
+	 * a view that doesn't fit the new tables fails the swap before the live
+	 * database is touched. The tables are then moved with a single RENAME 
+	 * TABLE statement, which also moves the previous views that share a name
+	 * with a new table out of the way, so readers of those names see either
+	 * the previous or the new table. 
+	 * 
+	 * Views can't be moved between databases, so the new views are only 
+	 * created in the database after the RENAME TABLE. Until then, a view 
+	 * that already existed refers to the new tables under its old 
+	 * definition, and a view that didn't exist is missing: on the first 
+	 * swap into a -intkeys build, the string-keyed names are missing until 
+	 * their views are created. If creating a view fails anyway in that 
+	 * window, the new tables are live with some of the previous views.
+	 * @param stmt - the statement the swap is run on
+	 * @param dbName - the name of the live database
+	 * @param views - the CREATE VIEW statements of the new schema
+	 * @throws SQLException if the swap fails. The live database is 
+	 * unchanged if the views or the RENAME TABLE statement fail.
+	 */
+	protected static void swap(Statement stmt, String dbName, 
+			List<String> views) throws SQLException {
+		String shadowName = dbName + SHADOW_SUFFIX;
+		String prevName = dbName + PREVIOUS_SUFFIX;
+		List<String> newTables, oldTables, movedViews;
+		List<String> newViews = new ArrayList<String>();
+		Map<String, String> oldViews;
+		StringBuilder rename = new StringBuilder("RENAME TABLE ");
+		
+		newTables = getTables(stmt, shadowName, "BASE TABLE");
+		if (newTables.isEmpty()) {
+			throw new SQLException("Shadow database " + shadowName + 
+					" has no tables");
+		}
+		
+		/*
+		 * Validate the new views against the new tables
+		 */
+		stmt.execute("use " + shadowName);
+		for (String view : views) {
+			stmt.execute(view.replaceFirst("^CREATE VIEW", 
+					"CREATE OR REPLACE VIEW"));
+			stmt.executeQuery("SELECT * FROM " + getViewName(view) + 
+					" LIMIT 0").close();
+		}
+		
+		stmt.execute("CREATE DATABASE IF NOT EXISTS " + dbName);
+		oldTables = getTables(stmt, dbName, "BASE TABLE");
+		oldViews = getViewDefinitions(stmt, dbName);
+		stmt.execute("DROP DATABASE IF EXISTS " + prevName);
+		stmt.execute("CREATE DATABASE " + prevName);
+		
+		/*
+		 * A table can't be renamed over a view of the same name, so those
+		 * views are renamed aside in the same statement. Views can only be 
+		 * renamed within their database.
+		 */
+		movedViews = new ArrayList<String>();
+		for (String oldView : oldViews.keySet()) {
+			if (newTables.contains(oldView)) {
+				movedViews.add(oldView);
+				rename.append(dbName).append('.').append(oldView)
+						.append(" TO ").append(dbName).append('.')
+						.append(oldView).append(PREVIOUS_SUFFIX).append(", ");
+			}
+		}
+		for (String table : oldTables) {
+			rename.append(dbName).append('.').append(table).append(" TO ");
+			rename.append(prevName).append('.').append(table).append(", ");
+		}
+		for (String table : newTables) {
+			rename.append(shadowName).append('.').append(table).append(" TO ");
+			rename.append(dbName).append('.').append(table).append(", ");
+		}
+		rename.setLength(rename.length() - 2);
+		stmt.execute(rename.toString());
+		System.out.println("Swapped " + shadowName + " into " + dbName + 
+				"; previous tables kept in " + prevName);
+		
+		stmt.execute("use " + dbName);
+		for (String view : views) {
+			stmt.execute(view.replaceFirst("^CREATE VIEW", 
+					"CREATE OR REPLACE VIEW"));
+			newViews.add(getViewName(view));
+		}
+		for (String movedView : movedViews) {
+			stmt.execute("DROP VIEW IF EXISTS " + movedView + 
+					PREVIOUS_SUFFIX);
+		}
+		for (String oldView : oldViews.keySet()) {
+			if (!newTables.contains(oldView) && !newViews.contains(oldView)) {
+				stmt.execute("DROP VIEW IF EXISTS " + oldView);
+			}
+		}
+		stmt.execute("DROP DATABASE " + shadowName);
+		recreateViews(stmt, dbName, prevName, oldViews);
+	}
+	
+	/**
+	 * Recreates the given views of the live database in the database of the
+	 * previous tables, over those tables. A view that can't be recreated is
+	 * reported and skipped, since the swap itself is done.
+	 * @param views - the definitions of the views by name
+	 */
+	private static void recreateViews(Statement stmt, String dbName, 
+			String prevName, Map<String, String> views) {
+		String definition;
+		
+		for (Map.Entry<String, String> view : views.entrySet()) {
+			definition = view.getValue().replace("`" + dbName + "`.", 
+					"`" + prevName + "`.");
+			try {
+				stmt.execute("CREATE VIEW " + prevName + "." + view.getKey() + 
+						" AS " + definition);
+			} catch (SQLException ex) {
+				System.out.println("Could not recreate view " + 
+						view.getKey() + " in " + prevName + ": " + 
+						ex.getMessage());
+			}
+		}
+	}
 }
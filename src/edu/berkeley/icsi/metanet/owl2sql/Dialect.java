@@ -0,0 +1,116 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * The parts of building a database that differ between database systems:
+ * the JDBC connection URL and properties, the column types of the schema,
+ * the privilege check, how the target database is prepared and how rows 
+ * are bulk loaded. The rest of the SQL the TableBuilder generates is 
+ * standard and shared by every dialect.
+ */
+public abstract class Dialect {
+	
+	/**
+	 * Returns the dialect of the given name, or null if there is none
+	 * @param name - "mysql", "postgresql", "h2" or "sqlite"
+	 */
+	static Dialect forName(String name) {
+		if (name.equalsIgnoreCase("mysql")) {
+			return new MySQLDialect();
+		} else if (name.equalsIgnoreCase("postgresql")) {
+			return new PostgreSQLDialect();
+		} else if (name.equalsIgnoreCase("h2")) {
+			return new H2Dialect();
+		} else if (name.equalsIgnoreCase("sqlite")) {
+			return new SQLiteDialect();
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the name the dialect is selected by
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Returns whether the database is an embedded file that needs no 
+	 * server or login. The database name is then the path of the file.
+	 */
+	protected boolean isEmbedded() {
+		return false;
+	}
+	
+	/**
+	 * Returns the port the server listens on by default
+	 */
+	protected int getDefaultPort() {
+		return 0;
+	}
+	
+	/**
+	 * Returns the JDBC URL of the given server or database
+	 * @param server - the server name, ignored by embedded dialects
+	 * @param port - the server port, ignored by embedded dialects
+	 * @param dbName - the database, or null for the server itself
+	 */
+	protected abstract String getURL(String server, int port, String dbName);
+	
+	/**
+	 * Returns the connection properties used for building
+	 * @param username - Username
+	 * @param pw - Password
+	 * @return the connection properties, including the user credentials
+	 */
+	protected Properties getDriverProfile(String username, String pw) {
+		Properties props = new Properties();
+		props.setProperty("user", username);
+		props.setProperty("password", pw);
+		return props;
+	}
+	
+	/**
+	 * Returns the type of the string columns, which must compare strings 
+	 * case-sensitively
+	 */
+	protected abstract String getTextType();
+	
+	/**
+	 * Returns the column definition of a BIGINT id the database generates
+	 */
+	protected abstract String getAutoIncrementType();
+	
+	/**
+	 * Checks if the user of the given connection may create the database
+	 * @throws SQLException
+	 */
+	protected boolean adequatePermissions(Connection con) 
+			throws SQLException {
+		return true;
+	}
+	
+	/**
+	 * Drops the previous database if necessary, creates an empty one and 
+	 * makes it the current database of the statement's connection
+	 * @throws SQLException if the database can't be created
+	 */
+	protected abstract void prepare(Statement stmt, String dbName) 
+			throws SQLException;
+	
+	/**
+	 * Returns the writer that loads rows with the database's bulk-load 
+	 * primitive. Embedded databases load JDBC batches in process, so they
+	 * use a BatchRowWriter.
+	 * @param con - the connection the rows are loaded through
+	 * @param batchSize - the number of rows per batch, if batched
+	 * @throws IOException if staging files can't be created
+	 */
+	protected RowWriter getBulkWriter(Connection con, int batchSize) 
+			throws IOException {
+		return new BatchRowWriter(con, batchSize);
+	}
+}
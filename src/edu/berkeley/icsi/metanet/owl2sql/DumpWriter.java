@@ -0,0 +1,262 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the database to a directory of SQL files instead of a server: the
+ * DDL goes to schema.sql, and the rows of each table go to a file named
+ * after the table as multi-row INSERT statements, optionally gzipped. The
+ * table files turn foreign key checks off, so they can be loaded in any
+ * order once the schema is loaded.
+ *
+ * The statements of each table are encoded, compressed and written to the
+ * table's file channel on a thread pool, so the tables are written in
+ * parallel while the rows are still being extracted. The statements of one
+ * table are always written in order.
+ */
+public class DumpWriter extends RowWriter {
+	static final String SCHEMA_FILE = "schema.sql";
+
+	/**
+	 * Size of the INSERT statements in the dump, as in mysqldump's default
+	 * net_buffer_length
+	 */
+	private static final int STATEMENT_BYTES = 1024 * 1024;
+
+	/**
+	 * Number of statements per thread that may wait to be written before
+	 * the extraction is held back
+	 */
+	private static final int PENDING_PER_THREAD = 4;
+
+	private static final int GZIP_BUFFER_BYTES = 65536;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File dir;
+	private boolean gzip;
+	private ExecutorService executor;
+	private Semaphore pending;
+	private LinkedHashMap<String, TableFile> tables;
+	private Writer schema;
+	private volatile IOException failure;
+
+	/**
+	 * The file of one table and the statements waiting to be written to it.
+	 * At most one thread drains the queue of a table at a time.
+	 */
+	private class TableFile implements MultiRowInsertWriter.Sink, Runnable {
+		private String tableName;
+		private MultiRowInsertWriter inserts;
+		private ConcurrentLinkedQueue<String> queue;
+		private AtomicBoolean scheduled;
+		private OutputStream out;
+
+		TableFile(String tableName) throws IOException {
+			File file = new File(dir, tableName +
+					(gzip ? ".sql.gz" : ".sql"));
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+
+			this.tableName = tableName;
+			out = Channels.newOutputStream(channel);
+			if (gzip) {
+				out = new GZIPOutputStream(out, GZIP_BUFFER_BYTES);
+			}
+			queue = new ConcurrentLinkedQueue<String>();
+			scheduled = new AtomicBoolean(false);
+			inserts = new MultiRowInsertWriter(this, STATEMENT_BYTES);
+		}
+
+		/**
+		 * Queues the given statement and schedules the table to be written,
+		 * unless a thread is writing it already
+		 */
+		@Override
+		public void execute(String sql) throws SQLException {
+			checkFailure();
+			try {
+				pending.acquire();
+			} catch (InterruptedException ex) {
+				throw new SQLException("Interrupted while writing " +
+						"the dump", ex);
+			}
+			queue.add(sql);
+			if (scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		/**
+		 * Writes the queued statements until the queue is empty. The time
+		 * spent encoding, compressing and writing them is recorded as the
+		 * table's execute time.
+		 */
+		@Override
+		public void run() {
+			String sql;
+			long startTime;
+			do {
+				while ((sql = queue.poll()) != null) {
+					try {
+						if (failure == null) {
+							startTime = System.nanoTime();
+							out.write((sql + ";\n").getBytes(UTF8));
+							if (metrics != null) {
+								metrics.recordExecute(tableName,
+										System.nanoTime() - startTime);
+							}
+						}
+					} catch (IOException ex) {
+						failure = ex;
+					} finally {
+						pending.release();
+					}
+				}
+				scheduled.set(false);
+
+				/* A statement may have been queued after the last poll */
+			} while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+		}
+	}
+
+	/**
+	 * Initializes the DumpWriter and creates the schema file
+	 * @param dir - the directory the files are written to. It is created
+	 * if it doesn't exist.
+	 * @param gzip - whether the table files are gzipped
+	 * @param numThreads - the number of threads the files are written on,
+	 * at least 1
+	 * @throws IOException if the directory or schema file can't be created
+	 */
+	DumpWriter(File dir, boolean gzip, int numThreads) throws IOException {
+		this.dir = dir;
+		this.gzip = gzip;
+		numThreads = Math.max(1, numThreads);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create directory " + dir);
+		}
+		schema = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(dir, SCHEMA_FILE)), UTF8));
+		executor = Executors.newFixedThreadPool(numThreads);
+		pending = new Semaphore(numThreads * PENDING_PER_THREAD);
+		tables = new LinkedHashMap<String, TableFile>();
+	}
+
+	/**
+	 * Returns the sink the DDL is written to
+	 */
+	protected MultiRowInsertWriter.Sink getSchemaSink() {
+		return new MultiRowInsertWriter.TextSink(schema);
+	}
+
+	@Override
+	protected void write(String tableName, String[] fields, Object... values)
+			throws SQLException {
+		TableFile table = tables.get(tableName);
+
+		if (table == null) {
+			try {
+				table = new TableFile(tableName);
+			} catch (IOException ex) {
+				throw new SQLException("Could not create dump file for " +
+						tableName + ": " + ex.getMessage(), ex);
+			}
+			tables.put(tableName, table);
+			table.execute("SET FOREIGN_KEY_CHECKS = 0");
+			table.execute("SET UNIQUE_CHECKS = 0");
+			table.execute("START TRANSACTION");
+		}
+		table.inserts.write(tableName, fields, values);
+	}
+
+	/**
+	 * Queues the pending statement of every table to be written
+	 */
+	@Override
+	protected void flush() throws SQLException {
+		for (TableFile table : tables.values()) {
+			table.inserts.flush();
+		}
+	}
+
+	/**
+	 * There is no server to check foreign keys against
+	 */
+	@Override
+	protected boolean checksForeignKeys() {
+		return false;
+	}
+
+	/**
+	 * Writes the remaining statements, waits for every table file to be
+	 * written and closes the files
+	 * @throws SQLException if any file could not be written
+	 */
+	@Override
+	protected void close() throws SQLException {
+		try {
+			for (TableFile table : tables.values()) {
+				table.inserts.flush();
+				table.execute("COMMIT");
+				table.execute("SET UNIQUE_CHECKS = 1");
+				table.execute("SET FOREIGN_KEY_CHECKS = 1");
+			}
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+					/* Still writing */
+				}
+			} catch (InterruptedException ex) {
+				executor.shutdownNow();
+				throw new SQLException("Interrupted while writing the dump",
+						ex);
+			} finally {
+				closeFiles();
+			}
+		}
+		checkFailure();
+	}
+
+	private void closeFiles() {
+		try {
+			schema.close();
+		} catch (IOException ex) {
+			failure = ex;
+		}
+		for (TableFile table : tables.values()) {
+			try {
+				table.out.close();
+			} catch (IOException ex) {
+				failure = ex;
+			}
+		}
+	}
+
+	private void checkFailure() throws SQLException {
+		if (failure != null) {
+			throw new SQLException("Could not write dump to " + dir + ": " +
+					failure.getMessage(), failure);
+		}
+	}
+}
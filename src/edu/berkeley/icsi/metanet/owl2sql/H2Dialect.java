@@ -0,0 +1,45 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Dialect for embedded H2 database files. The database name is the path 
+ * of the file, without H2's .mv.db extension. The H2 driver is only needed
+ * at run time.
+ */
+public class H2Dialect extends Dialect {
+
+	@Override
+	public String getName() {
+		return "h2";
+	}
+	
+	@Override
+	protected boolean isEmbedded() {
+		return true;
+	}
+
+	@Override
+	protected String getURL(String server, int port, String dbName) {
+		return "jdbc:h2:" + new File(dbName).getAbsolutePath();
+	}
+
+	@Override
+	protected String getTextType() {
+		return "VARCHAR(333)";
+	}
+
+	@Override
+	protected String getAutoIncrementType() {
+		return "BIGINT GENERATED BY DEFAULT AS IDENTITY";
+	}
+
+	@Override
+	protected void prepare(Statement stmt, String dbName) 
+			throws SQLException {
+		stmt.execute("DROP ALL OBJECTS");
+		System.out.println("Emptied database file " + dbName);
+	}
+}
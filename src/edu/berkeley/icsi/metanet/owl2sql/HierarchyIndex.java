@@ -0,0 +1,377 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLDataPropertyExpression;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * Precomputed transitive closure of a named class or property hierarchy.
+ * Every entity gets a dense integer id. Cycles (i.e. equivalent classes
+ * modeled as mutual subclasses) are collapsed into strongly connected 
+ * components, and the ancestors and descendants of each component are 
+ * stored as bitsets over the entity ids, so closure queries never walk the
+ * ontology again. All closures include the entity itself.
+ * @param <E> the type of entity in the hierarchy
+ */
+public class HierarchyIndex<E> {
+	private ArrayList<E> entities;
+	private HashMap<E, Integer> ids;
+	private ArrayList<int[]> parents;
+	private int[] component;
+	private BitSet[] ancestors, descendants;
+	
+	/**
+	 * Initializes an empty index. Entities and edges are added with 
+	 * addEntity() and addParent(), and the closure is computed by close().
+	 */
+	HierarchyIndex() {
+		entities = new ArrayList<E>();
+		ids = new HashMap<E, Integer>();
+		parents = new ArrayList<int[]>();
+	}
+	
+	/**
+	 * Builds the index of the named class hierarchy
+	 * @param owlClasses - the classes to index. Named super-classes outside
+	 * this set are indexed as well.
+	 * @param ontClosure - the ontologies the subclass axioms are read from
+	 */
+	public static HierarchyIndex<OWLClass> forClasses(
+			Set<OWLClass> owlClasses, Set<OWLOntology> ontClosure) {
+		HierarchyIndex<OWLClass> index = new HierarchyIndex<OWLClass>();
+		OWLClass owlClass;
+		
+		for (OWLClass c : owlClasses) {
+			index.addEntity(c);
+		}
+		for (int i = 0; i < index.size(); i++) {
+			owlClass = index.getEntity(i);
+			for (OWLClassExpression superClassEx : 
+					owlClass.getSuperClasses(ontClosure)) {
+				if (!superClassEx.isAnonymous()) {
+					index.addParent(owlClass, superClassEx.asOWLClass());
+				}
+			}
+		}
+		index.close();
+		return index;
+	}
+	
+	/**
+	 * Builds the index of the named object property hierarchy
+	 * @param objProps - the object properties to index. Named 
+	 * super-properties outside this set are indexed as well.
+	 * @param ontClosure - the ontologies the sub-property axioms are read 
+	 * from
+	 */
+	public static HierarchyIndex<OWLObjectProperty> forObjectProperties(
+			Set<OWLObjectProperty> objProps, Set<OWLOntology> ontClosure) {
+		HierarchyIndex<OWLObjectProperty> index = 
+				new HierarchyIndex<OWLObjectProperty>();
+		OWLObjectProperty objProp;
+		
+		for (OWLObjectProperty p : objProps) {
+			index.addEntity(p);
+		}
+		for (int i = 0; i < index.size(); i++) {
+			objProp = index.getEntity(i);
+			for (OWLObjectPropertyExpression superPropExp : 
+					objProp.getSuperProperties(ontClosure)) {
+				if (!superPropExp.isAnonymous()) {
+					index.addParent(objProp, 
+							superPropExp.asOWLObjectProperty());
+				}
+			}
+		}
+		index.close();
+		return index;
+	}
+	
+	/**
+	 * Builds the index of the named data property hierarchy
+	 * @param dataProps - the data properties to index. Named 
+	 * super-properties outside this set are indexed as well.
+	 * @param ontClosure - the ontologies the sub-property axioms are read 
+	 * from
+	 */
+	public static HierarchyIndex<OWLDataProperty> forDataProperties(
+			Set<OWLDataProperty> dataProps, Set<OWLOntology> ontClosure) {
+		HierarchyIndex<OWLDataProperty> index = 
+				new HierarchyIndex<OWLDataProperty>();
+		OWLDataProperty dataProp;
+		
+		for (OWLDataProperty p : dataProps) {
+			index.addEntity(p);
+		}
+		for (int i = 0; i < index.size(); i++) {
+			dataProp = index.getEntity(i);
+			for (OWLDataPropertyExpression superPropExp : 
+					dataProp.getSuperProperties(ontClosure)) {
+				if (!superPropExp.isAnonymous()) {
+					index.addParent(dataProp, 
+							superPropExp.asOWLDataProperty());
+				}
+			}
+		}
+		index.close();
+		return index;
+	}
+	
+	/**
+	 * Adds the given entity to the index if it is not already indexed
+	 * @return the id of the entity
+	 */
+	protected int addEntity(E entity) {
+		Integer id = ids.get(entity);
+		if (id == null) {
+			id = entities.size();
+			entities.add(entity);
+			ids.put(entity, id);
+			parents.add(new int[0]);
+		}
+		return id;
+	}
+	
+	/**
+	 * Records that parent is a direct super-class or super-property of child.
+	 * Entities that are not yet indexed are added.
+	 */
+	protected void addParent(E child, E parent) {
+		int childId = addEntity(child);
+		int parentId = addEntity(parent);
+		int[] childParents = parents.get(childId);
+		childParents = Arrays.copyOf(childParents, childParents.length + 1);
+		childParents[childParents.length - 1] = parentId;
+		parents.set(childId, childParents);
+	}
+	
+	/**
+	 * Computes the strongly connected components of the hierarchy with an
+	 * iterative version of Tarjan's algorithm and then the ancestors and 
+	 * descendants of every component
+	 */
+	protected void close() {
+		int n = entities.size();
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] edgePos = new int[n];
+		int[] stack = new int[n];
+		int[] callStack = new int[n];
+		boolean[] onStack = new boolean[n];
+		int counter = 0, stackSize = 0, callSize = 0, numComponents = 0;
+		int v, w, u;
+		int[] vParents;
+		ArrayList<BitSet> members = new ArrayList<BitSet>();
+		BitSet componentMembers;
+		
+		component = new int[n];
+		Arrays.fill(index, -1);
+		for (int s = 0; s < n; s++) {
+			if (index[s] != -1) {
+				continue;
+			}
+			index[s] = low[s] = counter++;
+			stack[stackSize++] = s;
+			onStack[s] = true;
+			callStack[callSize++] = s;
+			while (callSize > 0) {
+				v = callStack[callSize - 1];
+				vParents = parents.get(v);
+				if (edgePos[v] < vParents.length) {
+					w = vParents[edgePos[v]++];
+					if (index[w] == -1) {
+						index[w] = low[w] = counter++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[callSize++] = w;
+					} else if (onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+				callSize--;
+				if (low[v] == index[v]) {
+					componentMembers = new BitSet(n);
+					do {
+						w = stack[--stackSize];
+						onStack[w] = false;
+						component[w] = numComponents;
+						componentMembers.set(w);
+					} while (w != v);
+					members.add(componentMembers);
+					numComponents++;
+				}
+				if (callSize > 0) {
+					u = callStack[callSize - 1];
+					low[u] = Math.min(low[u], low[v]);
+				}
+			}
+		}
+		
+		/*
+		 * Tarjan's algorithm emits a component only after every component
+		 * reachable from it, so the ancestors of each component's parents 
+		 * are complete when it is reached in emission order. Descendants are
+		 * then the transpose of the ancestor relation.
+		 */
+		ancestors = new BitSet[numComponents];
+		descendants = new BitSet[numComponents];
+		for (int c = 0; c < numComponents; c++) {
+			ancestors[c] = (BitSet) members.get(c).clone();
+			descendants[c] = (BitSet) members.get(c).clone();
+		}
+		for (int c = 0; c < numComponents; c++) {
+			componentMembers = members.get(c);
+			for (int i = componentMembers.nextSetBit(0); i >= 0; 
+					i = componentMembers.nextSetBit(i + 1)) {
+				for (int p : parents.get(i)) {
+					if (component[p] != c) {
+						ancestors[c].or(ancestors[component[p]]);
+					}
+				}
+			}
+		}
+		for (int c = 0; c < numComponents; c++) {
+			for (int a = ancestors[c].nextSetBit(0); a >= 0; 
+					a = ancestors[c].nextSetBit(a + 1)) {
+				if (component[a] != c) {
+					descendants[component[a]].or(members.get(c));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of indexed entities
+	 */
+	public int size() {
+		return entities.size();
+	}
+	
+	/**
+	 * Returns the id of the given entity, or -1 if it is not indexed
+	 */
+	public int getId(E entity) {
+		Integer id = ids.get(entity);
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * Returns the entity with the given id
+	 */
+	public E getEntity(int id) {
+		return entities.get(id);
+	}
+	
+	/**
+	 * Returns the ids of the direct parents of the given entity
+	 */
+	public int[] getParentIds(int id) {
+		return parents.get(id);
+	}
+	
+	/**
+	 * Returns the ids of all ancestors of the entity with the given id, 
+	 * including the entity itself. The returned bitset is shared and must 
+	 * not be modified.
+	 */
+	public BitSet getAncestorIds(int id) {
+		return ancestors[component[id]];
+	}
+	
+	/**
+	 * Returns the ids of all descendants of the entity with the given id, 
+	 * including the entity itself. The returned bitset is shared and must 
+	 * not be modified.
+	 */
+	public BitSet getDescendantIds(int id) {
+		return descendants[component[id]];
+	}
+	
+	/**
+	 * Finds the ancestors of the entity with the given id breadth-first,
+	 * along with their depth, i.e. the length of the shortest chain of
+	 * direct parents from the entity to them. The entity itself is the
+	 * first ancestor, at depth 0, and the others follow in order of depth.
+	 * @param id - the id of the entity
+	 * @param ancestorIds - receives the ids of the ancestors. Must have room
+	 * for size() ids.
+	 * @param depths - receives the depth of every ancestor at its id. Must
+	 * have size() entries, all -1; the caller resets the entries of the
+	 * ancestors to -1 before the next call.
+	 * @return the number of ancestors
+	 */
+	public int getAncestorDepths(int id, int[] ancestorIds, int[] depths) {
+		int numAncestors = 1, next = 0;
+		int v;
+
+		/* The ancestors found so far double as the queue of the search */
+		ancestorIds[0] = id;
+		depths[id] = 0;
+		while (next < numAncestors) {
+			v = ancestorIds[next++];
+			for (int p : parents.get(v)) {
+				if (depths[p] < 0) {
+					depths[p] = depths[v] + 1;
+					ancestorIds[numAncestors++] = p;
+				}
+			}
+		}
+		return numAncestors;
+	}
+
+	/**
+	 * Returns true if ancestor is the given entity or one of its ancestors
+	 */
+	public boolean isAncestor(E ancestor, E entity) {
+		int ancestorId = getId(ancestor);
+		int id = getId(entity);
+		return ancestorId >= 0 && id >= 0 && 
+				ancestors[component[id]].get(ancestorId);
+	}
+	
+	/**
+	 * Returns all ancestors of the given entity, including the entity itself
+	 */
+	public List<E> getAncestors(E entity) {
+		int id = getId(entity);
+		if (id < 0) {
+			return toEntities(new BitSet());
+		}
+		return toEntities(ancestors[component[id]]);
+	}
+	
+	/**
+	 * Returns all descendants of the given entity, including the entity 
+	 * itself
+	 */
+	public List<E> getDescendants(E entity) {
+		int id = getId(entity);
+		if (id < 0) {
+			return toEntities(new BitSet());
+		}
+		return toEntities(descendants[component[id]]);
+	}
+	
+	/**
+	 * Returns the entities with the given ids
+	 */
+	public List<E> toEntities(BitSet idSet) {
+		ArrayList<E> out = new ArrayList<E>(idSet.cardinality());
+		for (int i = idSet.nextSetBit(0); i >= 0; i = idSet.nextSetBit(i + 1)) {
+			out.add(entities.get(i));
+		}
+		return out;
+	}
+}
@@ -0,0 +1,179 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The class of every individual of an individual source, collected from
+ * its records before the property instances are written. Per individual,
+ * only its IRI, the id of its class in the class index and the number of
+ * records about it are kept, so the table is much smaller than the
+ * individuals' descriptions but still grows with their number.
+ *
+ * Types are added one at a time; an individual that gets two different
+ * types has multiple classes. Classes that are not in the index are kept
+ * by IRI so they can be reported.
+ */
+public class IndividualClassTable {
+	/** The individual has no class */
+	static final int NO_CLASS = -1;
+	/** The individual has more than one class */
+	static final int MULTIPLE_CLASSES = -2;
+	/** The first code of the classes that are not in the index */
+	private static final int FIRST_UNKNOWN = -3;
+
+	private LinkedHashMap<String, Integer> indexes;
+	private int[] classIds, numRecords;
+	private ArrayList<String> unknownClasses;
+	private HashMap<String, Integer> unknownCodes;
+	private HashMap<String, Integer> pendingRecords;
+
+	/**
+	 * Initializes an empty table
+	 */
+	IndividualClassTable() {
+		indexes = new LinkedHashMap<String, Integer>();
+		classIds = new int[1024];
+		numRecords = new int[1024];
+		unknownClasses = new ArrayList<String>();
+		unknownCodes = new HashMap<String, Integer>();
+		pendingRecords = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Adds a record that declares the given individual
+	 * @return the index of the individual
+	 */
+	protected int addIndividual(String iri) {
+		Integer index = indexes.get(iri);
+		if (index == null) {
+			index = indexes.size();
+			indexes.put(iri, index);
+			if (index == classIds.length) {
+				classIds = Arrays.copyOf(classIds, index * 2);
+				numRecords = Arrays.copyOf(numRecords, index * 2);
+			}
+			classIds[index] = NO_CLASS;
+			numRecords[index] = 0;
+		}
+		numRecords[index]++;
+		return index;
+	}
+
+	/**
+	 * Adds a record about the given subject that doesn't declare it. It
+	 * counts as a record of the individual if the subject is declared by
+	 * another record, before or after this one.
+	 */
+	protected void addUndeclaredRecord(String iri) {
+		Integer index = indexes.get(iri);
+		Integer count;
+		if (index != null) {
+			numRecords[index]++;
+		} else {
+			count = pendingRecords.get(iri);
+			pendingRecords.put(iri, count == null ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Adds a type of the individual with the given index
+	 * @param classId - the id of the class in the class index, or -1 if
+	 * the class is not in the index
+	 * @param classIRI - the IRI of the class
+	 */
+	protected void addType(int index, int classId, String classIRI) {
+		int code = classId;
+		Integer unknownCode;
+
+		if (classId < 0) {
+			unknownCode = unknownCodes.get(classIRI);
+			if (unknownCode == null) {
+				unknownCode = FIRST_UNKNOWN - unknownClasses.size();
+				unknownClasses.add(classIRI);
+				unknownCodes.put(classIRI, unknownCode);
+			}
+			code = unknownCode;
+		}
+		if (classIds[index] == NO_CLASS) {
+			classIds[index] = code;
+		} else if (classIds[index] != code) {
+			classIds[index] = MULTIPLE_CLASSES;
+		}
+	}
+
+	/**
+	 * Counts the undeclared records of subjects that turned out to be
+	 * individuals. Called once every record has been added.
+	 */
+	protected void finishRecords() {
+		Integer index;
+		for (Map.Entry<String, Integer> entry : pendingRecords.entrySet()) {
+			index = indexes.get(entry.getKey());
+			if (index != null) {
+				numRecords[index] += entry.getValue();
+			}
+		}
+		pendingRecords = null;
+	}
+
+	/**
+	 * Returns the number of individuals
+	 */
+	public int size() {
+		return indexes.size();
+	}
+
+	/**
+	 * Returns the IRIs of the individuals by index, in the order they were
+	 * first declared
+	 */
+	public Iterable<Map.Entry<String, Integer>> getIndividuals() {
+		return indexes.entrySet();
+	}
+
+	/**
+	 * Returns the index of the given individual, or -1 if it is not one
+	 */
+	public int getIndex(String iri) {
+		Integer index = indexes.get(iri);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the class id of the individual with the given index, or
+	 * NO_CLASS or MULTIPLE_CLASSES, or a code below those for a class that
+	 * is not in the index (see getUnknownClass())
+	 */
+	public int getClassId(int index) {
+		return classIds[index];
+	}
+
+	/**
+	 * Returns the IRI of the class that is not in the index with the given
+	 * code
+	 */
+	public String getUnknownClass(int code) {
+		return unknownClasses.get(FIRST_UNKNOWN - code);
+	}
+
+	/**
+	 * Sets the class id of the individual with the given index, i.e. to
+	 * NO_CLASS once it has been rejected
+	 */
+	protected void setClassId(int index, int classId) {
+		classIds[index] = classId;
+	}
+
+	/**
+	 * Counts down a record about the individual with the given index as it
+	 * is read again
+	 * @return the number of records about it that are left
+	 */
+	protected int removeRecord(int index) {
+		return --numRecords[index];
+	}
+}
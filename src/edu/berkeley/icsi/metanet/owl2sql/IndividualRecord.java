@@ -0,0 +1,166 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The assertions about a single named individual, as read from an input
+ * file without the OWLAPI. IRIs are kept as strings and literals as their
+ * lexical form, datatype and language tag, so records stay cheap to create
+ * and to throw away.
+ *
+ * The assertions about an individual may be spread over several records.
+ * Only some of them declare the individual, i.e. carry its class
+ * assertions. The others may also be about entities that are not
+ * individuals, and are only used for the assertions of subjects that are
+ * declared by another record.
+ */
+public class IndividualRecord {
+
+	/**
+	 * Reads the individuals of an input file. A source can be read more
+	 * than once; every read delivers the same records in the same order.
+	 */
+	interface Source {
+
+		/**
+		 * Passes every record of the input to the given handler
+		 * @throws IOException if the input can't be read
+		 * @throws SQLException if the handler fails
+		 */
+		void read(Handler handler) throws IOException, SQLException;
+	}
+
+	/**
+	 * Receives the records read by a Source
+	 */
+	interface Handler {
+		void handle(IndividualRecord record) throws SQLException;
+	}
+
+	private String iri;
+	private boolean declaration;
+	private ArrayList<String> types;
+	private ArrayList<String> dataProps;
+	private ArrayList<String[]> dataValues;
+	private ArrayList<String> objProps;
+	private ArrayList<String> objValues;
+
+	/**
+	 * Initializes an empty record that declares the individual
+	 * @param iri - the IRI of the individual
+	 */
+	IndividualRecord(String iri) {
+		this(iri, true);
+	}
+
+	/**
+	 * Initializes an empty record
+	 * @param iri - the IRI of the individual
+	 * @param declaration - whether the record declares the individual
+	 */
+	IndividualRecord(String iri, boolean declaration) {
+		this.iri = iri;
+		this.declaration = declaration;
+		types = new ArrayList<String>(1);
+		dataProps = new ArrayList<String>();
+		dataValues = new ArrayList<String[]>();
+		objProps = new ArrayList<String>();
+		objValues = new ArrayList<String>();
+	}
+
+	/**
+	 * Adds a class assertion
+	 * @param classIRI - the IRI of the class
+	 */
+	void addType(String classIRI) {
+		types.add(classIRI);
+	}
+
+	/**
+	 * Adds a data property assertion
+	 * @param propIRI - the IRI of the data property
+	 * @param lexical - the lexical form of the value
+	 * @param datatype - the IRI of the datatype of the value, or null
+	 * @param lang - the language tag of the value, or null
+	 */
+	void addDataValue(String propIRI, String lexical, String datatype,
+			String lang) {
+		dataProps.add(propIRI);
+		dataValues.add(new String[] {lexical, datatype, lang});
+	}
+
+	/**
+	 * Adds an object property assertion
+	 * @param propIRI - the IRI of the object property
+	 * @param objIRI - the IRI of the object, or null if the object is an
+	 * anonymous individual
+	 */
+	void addObjectValue(String propIRI, String objIRI) {
+		objProps.add(propIRI);
+		objValues.add(objIRI);
+	}
+
+	/**
+	 * Adds every assertion of the given record to this record
+	 */
+	void addAll(IndividualRecord record) {
+		types.addAll(record.types);
+		dataProps.addAll(record.dataProps);
+		dataValues.addAll(record.dataValues);
+		objProps.addAll(record.objProps);
+		objValues.addAll(record.objValues);
+	}
+
+	public String getIRI() {
+		return iri;
+	}
+
+	/**
+	 * Checks if the record declares the individual. Only the records that
+	 * do are individuals for sure.
+	 */
+	public boolean isDeclaration() {
+		return declaration;
+	}
+
+	/**
+	 * Returns the IRIs of the asserted classes
+	 */
+	public List<String> getTypes() {
+		return types;
+	}
+
+	public int getNumDataValues() {
+		return dataProps.size();
+	}
+
+	public String getDataProperty(int i) {
+		return dataProps.get(i);
+	}
+
+	/**
+	 * Returns the i-th data value as {lexical form, datatype IRI or null,
+	 * language tag or null}
+	 */
+	public String[] getDataValue(int i) {
+		return dataValues.get(i);
+	}
+
+	public int getNumObjectValues() {
+		return objProps.size();
+	}
+
+	public String getObjectProperty(int i) {
+		return objProps.get(i);
+	}
+
+	/**
+	 * Returns the IRI of the i-th object, or null if it is anonymous
+	 */
+	public String getObjectValue(int i) {
+		return objValues.get(i);
+	}
+}
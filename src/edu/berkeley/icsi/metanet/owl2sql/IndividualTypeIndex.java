@@ -0,0 +1,98 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * The class of every named individual of an ontology, resolved once so
+ * that the checks on the individuals and on the targets of their object
+ * property assertions don't scan the class assertions of the ontology
+ * again. Every individual gets a dense position, and its entry is the id of
+ * its class in the class index, or a negative verdict if it has no class,
+ * more than one class or an anonymous class. The entries of different
+ * individuals may be resolved on different threads.
+ */
+public class IndividualTypeIndex {
+	static final int NO_CLASS = -1;
+	static final int MULTIPLE_CLASSES = -2;
+	static final int ANONYMOUS_CLASS = -3;
+
+	private OWLOntology ont;
+	private HierarchyIndex<OWLClass> classIndex;
+	private HashMap<OWLNamedIndividual, Integer> positions;
+	private int[] classIds;
+
+	/**
+	 * Initializes the index of the given individuals. Their classes are
+	 * resolved by resolve().
+	 * @param inds - the individuals
+	 * @param ont - the ontology the class assertions are read from
+	 * @param classIndex - the index of every class of the ontology
+	 */
+	IndividualTypeIndex(List<OWLNamedIndividual> inds, OWLOntology ont,
+			HierarchyIndex<OWLClass> classIndex) {
+		this.ont = ont;
+		this.classIndex = classIndex;
+		positions = new HashMap<OWLNamedIndividual, Integer>(
+				inds.size() * 4 / 3 + 1);
+		for (OWLNamedIndividual ind : inds) {
+			positions.put(ind, positions.size());
+		}
+		classIds = new int[positions.size()];
+	}
+
+	/**
+	 * Resolves the classes of the given individuals. Several threads may
+	 * resolve disjoint sets of individuals at once; the entries are only to
+	 * be read after every thread is done.
+	 * @param inds - individuals of the index
+	 */
+	protected void resolve(List<OWLNamedIndividual> inds) {
+		for (OWLNamedIndividual ind : inds) {
+			classIds[positions.get(ind)] = resolveClassId(ind);
+		}
+	}
+
+	/**
+	 * Returns the class id of the given individual, or its verdict
+	 */
+	private int resolveClassId(OWLIndividual ind) {
+		Set<OWLClassExpression> types = ind.getTypes(ont);
+		OWLClassExpression classExp;
+
+		if (types.isEmpty()) {
+			return NO_CLASS;
+		} else if (types.size() > 1) {
+			return MULTIPLE_CLASSES;
+		}
+		classExp = types.iterator().next();
+		if (classExp.isAnonymous()) {
+			return ANONYMOUS_CLASS;
+		}
+		return classIndex.getId(classExp.asOWLClass());
+	}
+
+	/**
+	 * Returns the id of the class of the given individual in the class
+	 * index, or NO_CLASS, MULTIPLE_CLASSES or ANONYMOUS_CLASS. Individuals
+	 * outside the index are resolved on every call.
+	 */
+	public int getClassId(OWLIndividual ind) {
+		Integer position = ind.isAnonymous() ? null : positions.get(ind);
+		return position == null ? resolveClassId(ind) : classIds[position];
+	}
+
+	/**
+	 * Returns the class with the given id
+	 */
+	public OWLClass getOWLClass(int classId) {
+		return classIndex.getEntity(classId);
+	}
+}
@@ -0,0 +1,108 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in microseconds with log-linear buckets, in the
+ * manner of an HDR histogram: every power of two is split into 16 linear
+ * buckets, so any recorded value is reported within about 6% over its
+ * whole range, in a fixed amount of memory. Values can be recorded from
+ * any thread without locks.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKETS = 16;
+	private static final int NUM_BUCKETS = 2 * SUB_BUCKETS +
+			(62 - 4) * SUB_BUCKETS;
+
+	private AtomicLongArray counts;
+	private AtomicLong numValues;
+	private AtomicLong max;
+
+	LatencyHistogram() {
+		counts = new AtomicLongArray(NUM_BUCKETS);
+		numValues = new AtomicLong();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records a latency
+	 * @param us - the latency in microseconds
+	 */
+	protected void record(long us) {
+		long prevMax;
+
+		us = Math.max(0, us);
+		counts.incrementAndGet(getBucket(us));
+		numValues.incrementAndGet();
+		do {
+			prevMax = max.get();
+		} while (us > prevMax && !max.compareAndSet(prevMax, us));
+	}
+
+	/**
+	 * Returns the number of recorded latencies
+	 */
+	public long getCount() {
+		return numValues.get();
+	}
+
+	/**
+	 * Returns the largest recorded latency, in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the given percentile of the recorded latencies, in
+	 * microseconds, as the upper bound of the bucket it falls in
+	 * @param percentile - the percentile, from 0 to 100
+	 */
+	public long getPercentile(double percentile) {
+		long total = numValues.get();
+		long target = (long) Math.ceil(percentile / 100 * total);
+		long seen = 0;
+
+		if (total == 0) {
+			return 0;
+		}
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= Math.max(1, target)) {
+				return Math.min(getUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Returns the bucket of the given value. Values below 32 have their own
+	 * bucket; above, the top 5 bits of the value select the bucket.
+	 */
+	private static int getBucket(long value) {
+		int shift;
+
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		shift = 63 - Long.numberOfLeadingZeros(value) - 4;
+		return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS +
+				(int) (value >> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Returns the largest value that falls in the given bucket
+	 */
+	private static long getUpperBound(int bucket) {
+		int shift;
+		long subBucket;
+
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		shift = (bucket - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+		subBucket = (bucket - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,51 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.SQLException;
+
+/**
+ * Counts the rows and bytes written to each table in a BuildMetrics
+ * before passing the rows on, and has the writer they are passed on to
+ * record its execute times in the same metrics. The bytes of a row are
+ * the UTF-8 size of its values.
+ */
+public class MeteredRowWriter extends RowWriter {
+	private RowWriter out;
+
+	/**
+	 * Initializes the MeteredRowWriter
+	 * @param out - the writer the rows are passed on to
+	 * @param metrics - the metrics of the build
+	 */
+	MeteredRowWriter(RowWriter out, BuildMetrics metrics) {
+		this.out = out;
+		setMetrics(metrics);
+	}
+
+	@Override
+	protected void setMetrics(BuildMetrics metrics) {
+		super.setMetrics(metrics);
+		out.setMetrics(metrics);
+	}
+
+	@Override
+	protected void write(String tableName, String[] fields, Object... values)
+			throws SQLException {
+		metrics.recordRow(tableName, Utilities.getRowBytes(values));
+		out.write(tableName, fields, values);
+	}
+
+	@Override
+	protected void flush() throws SQLException {
+		out.flush();
+	}
+
+	@Override
+	protected boolean checksForeignKeys() {
+		return out.checksForeignKeys();
+	}
+
+	@Override
+	protected void close() throws SQLException {
+		out.close();
+	}
+}
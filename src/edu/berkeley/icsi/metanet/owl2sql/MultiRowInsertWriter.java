@@ -0,0 +1,167 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes rows as text SQL, grouping the rows of each table into multi-row
+ * INSERT ... VALUES (...),(...),... statements. Each statement is cut so 
+ * that it stays below the given packet size, which should be the server's
+ * max_allowed_packet when the statements are sent to a live server.
+ */
+public class MultiRowInsertWriter extends RowWriter {
+	
+	/**
+	 * Bytes reserved in every packet for the protocol header
+	 */
+	private static final int PACKET_HEADROOM = 1024;
+	
+	/**
+	 * Upper bound on the size of a single statement so that the buffers of
+	 * all tables stay small even when the server allows huge packets
+	 */
+	private static final int MAX_STATEMENT_BYTES = 16 * 1024 * 1024;
+	
+	private Sink sink;
+	private int maxStatementBytes;
+	private LinkedHashMap<String, PendingInsert> inserts;
+	
+	/**
+	 * Destination of the generated SQL statements
+	 */
+	public interface Sink {
+		void execute(String sql) throws SQLException;
+	}
+	
+	/**
+	 * Sends each statement to the server through a JDBC statement
+	 */
+	public static class StatementSink implements Sink {
+		private Statement stmt;
+		
+		StatementSink(Statement stmt) {
+			this.stmt = stmt;
+		}
+
+		@Override
+		public void execute(String sql) throws SQLException {
+			stmt.execute(sql);
+		}
+	}
+	
+	/**
+	 * Appends each statement, terminated by a semicolon, to a character 
+	 * stream such as a .sql file
+	 */
+	public static class TextSink implements Sink {
+		private Writer out;
+		
+		TextSink(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void execute(String sql) throws SQLException {
+			try {
+				out.write(sql);
+				out.write(";\n");
+			} catch (IOException ex) {
+				throw new SQLException("Could not write SQL: " + 
+						ex.getMessage(), ex);
+			}
+		}
+	}
+	
+	/**
+	 * The statement currently being grouped for one table
+	 */
+	private static class PendingInsert {
+		String header;
+		int headerBytes;
+		StringBuilder values = new StringBuilder();
+		int valuesBytes = 0;
+		int numRows = 0;
+	}
+	
+	/**
+	 * Initializes the MultiRowInsertWriter
+	 * @param sink - the destination of the generated statements
+	 * @param maxPacketBytes - the largest statement the destination accepts,
+	 * in bytes (i.e. the server's max_allowed_packet)
+	 */
+	MultiRowInsertWriter(Sink sink, long maxPacketBytes) {
+		this.sink = sink;
+		maxStatementBytes = (int) Math.min(MAX_STATEMENT_BYTES, 
+				maxPacketBytes - PACKET_HEADROOM);
+		inserts = new LinkedHashMap<String, PendingInsert>();
+	}
+	
+	@Override
+	protected void write(String tableName, String[] fields, Object... values)
+			throws SQLException {
+		PendingInsert insert = inserts.get(tableName);
+		String tuple;
+		int tupleBytes;
+		
+		if (insert == null) {
+			insert = new PendingInsert();
+			insert.header = Utilities.getMultiRowInsertHeader(tableName, 
+					fields);
+			insert.headerBytes = Utilities.getUTF8Length(insert.header);
+			inserts.put(tableName, insert);
+		}
+		tuple = Utilities.getValuesTuple(values);
+		tupleBytes = Utilities.getUTF8Length(tuple) + 1;
+		if (insert.headerBytes + tupleBytes > maxStatementBytes) {
+			throw new SQLException("Row for table " + tableName + " is " +
+					"larger than the maximum packet size of " + 
+					maxStatementBytes + " bytes");
+		}
+		
+		/*
+		 * The full statement may reference rows still pending in other 
+		 * tables, so every table is flushed, in the order the tables were 
+		 * first written.
+		 */
+		if (insert.headerBytes + insert.valuesBytes + tupleBytes > 
+				maxStatementBytes) {
+			flush();
+		}
+		if (insert.numRows > 0) {
+			insert.values.append(',');
+		}
+		insert.values.append(tuple);
+		insert.valuesBytes += tupleBytes;
+		insert.numRows++;
+	}
+
+	@Override
+	protected void flush() throws SQLException {
+		PendingInsert insert;
+		String sql;
+		long startTime;
+		Object event;
+		for (Map.Entry<String, PendingInsert> entry : inserts.entrySet()) {
+			insert = entry.getValue();
+			if (insert.numRows > 0) {
+				sql = insert.header + insert.values;
+				event = events.beginStatement();
+				startTime = System.nanoTime();
+				sink.execute(sql);
+				if (metrics != null) {
+					metrics.recordExecute(entry.getKey(), 
+							System.nanoTime() - startTime);
+				}
+				events.endBatch(event, entry.getKey(), sql, insert.numRows, 
+						insert.headerBytes + insert.valuesBytes);
+				insert.values.setLength(0);
+				insert.valuesBytes = 0;
+				insert.numRows = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * The default dialect, for MySQL servers. Databases are created with 
+ * CREATE DATABASE and bulk loaded with LOAD DATA LOCAL INFILE.
+ */
+public class MySQLDialect extends Dialect {
+
+	@Override
+	public String getName() {
+		return "mysql";
+	}
+	
+	@Override
+	protected int getDefaultPort() {
+		return 3306;
+	}
+
+	@Override
+	protected String getURL(String server, int port, String dbName) {
+		return "jdbc:mysql://" + server + ":" + port + 
+				(dbName == null ? "" : "/" + dbName);
+	}
+	
+	@Override
+	protected Properties getDriverProfile(String username, String pw) {
+		return Connector.getDriverProfile(username, pw);
+	}
+
+	@Override
+	protected String getTextType() {
+		return Basics.DEFAULT_SQL_DATATYPE;
+	}
+
+	@Override
+	protected String getAutoIncrementType() {
+		return "BIGINT NOT NULL AUTO_INCREMENT";
+	}
+	
+	@Override
+	protected boolean adequatePermissions(Connection con) 
+			throws SQLException {
+		return Connector.adequatePermissions(con);
+	}
+
+	@Override
+	protected void prepare(Statement stmt, String dbName) 
+			throws SQLException {
+		DatabaseHandler.prepare(stmt, dbName);
+	}
+	
+	@Override
+	protected RowWriter getBulkWriter(Connection con, int batchSize) 
+			throws IOException {
+		return new BulkLoadWriter(con);
+	}
+}
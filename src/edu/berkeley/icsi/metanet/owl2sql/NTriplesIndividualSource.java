@@ -0,0 +1,455 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses an N-Triples file in parallel. The file is split into byte ranges
+ * on line boundaries, every range is memory-mapped and parsed on its own
+ * thread into per-subject buffers, and the buffers are merged in file
+ * order once every range is parsed.
+ *
+ * Named subjects with an rdf:type of owl:NamedIndividual, owl:Thing or a
+ * class outside of the RDF, RDFS, OWL and SWRL vocabularies become
+ * IndividualRecords; the triples of every other subject are written to a
+ * separate N-Triples file so that the OWLAPI only has to load the TBox.
+ * The lines of a subject are only kept until its chunk declares it an
+ * individual, so the ABox is only held as records.
+ */
+public class NTriplesIndividualSource implements IndividualRecord.Source {
+	private static final String RDF_TYPE =
+			RDFXMLIndividualSource.RDF_NS + "type";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final long MAX_CHUNK_BYTES = 1 << 30;
+
+	private LinkedHashMap<String, IndividualRecord> records;
+
+	/**
+	 * A single parsed triple. The object is either an IRI, a blank node, or
+	 * a literal with an optional datatype or language tag.
+	 */
+	private static class Triple {
+		String subject, predicate, object, datatype, lang;
+		boolean isLiteral;
+	}
+
+	/**
+	 * The triples of one subject within one chunk. The lines are only kept
+	 * while the subject may still go to the TBox.
+	 */
+	private static class SubjectBuffer {
+		final ArrayList<String> lines = new ArrayList<String>();
+		IndividualRecord record;
+		boolean isDeclared;
+	}
+
+	private NTriplesIndividualSource(
+			LinkedHashMap<String, IndividualRecord> records) {
+		this.records = records;
+	}
+
+	/**
+	 * Returns the number of individuals that were read
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	@Override
+	public void read(IndividualRecord.Handler handler) throws SQLException {
+		for (IndividualRecord record : records.values()) {
+			handler.handle(record);
+		}
+	}
+
+	/**
+	 * Parses the given N-Triples file
+	 * @param file - an N-Triples file
+	 * @param tboxFile - the file the triples that are not about individuals
+	 * are written to
+	 * @param numThreads - the number of threads the file is parsed on
+	 * @return the individuals of the file
+	 * @throws IOException if either file can't be read or written, or the
+	 * input contains a malformed triple
+	 */
+	static NTriplesIndividualSource parse(File file, File tboxFile,
+			int numThreads) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		FileChannel channel = raf.getChannel();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, numThreads));
+		ArrayList<Future<Map<String, SubjectBuffer>>> futures =
+				new ArrayList<Future<Map<String, SubjectBuffer>>>();
+		ArrayList<Map<String, SubjectBuffer>> chunks =
+				new ArrayList<Map<String, SubjectBuffer>>();
+		List<Long> bounds;
+
+		try {
+			bounds = getChunkBounds(channel, Math.max(1, numThreads) *
+					CHUNKS_PER_THREAD);
+			for (int i = 0; i < bounds.size() - 1; i++) {
+				final MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, bounds.get(i),
+						bounds.get(i + 1) - bounds.get(i));
+				final long offset = bounds.get(i);
+				futures.add(executor.submit(
+						new Callable<Map<String, SubjectBuffer>>() {
+					@Override
+					public Map<String, SubjectBuffer> call()
+							throws IOException {
+						return parseChunk(buffer, offset);
+					}
+				}));
+			}
+			for (Future<Map<String, SubjectBuffer>> future : futures) {
+				chunks.add(getChunk(future));
+			}
+		} finally {
+			executor.shutdownNow();
+			raf.close();
+		}
+		return merge(chunks, tboxFile);
+	}
+
+	/**
+	 * Splits the file into about the given number of byte ranges that start
+	 * at the beginning of a line
+	 * @return the offsets where the ranges start, followed by the size of
+	 * the file
+	 */
+	private static List<Long> getChunkBounds(FileChannel channel,
+			int numChunks) throws IOException {
+		ArrayList<Long> bounds = new ArrayList<Long>();
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		long size = channel.size();
+		long chunkBytes = Math.min(MAX_CHUNK_BYTES,
+				Math.max(1, size / numChunks));
+		long pos = 0;
+		boolean found;
+
+		bounds.add(0L);
+		while (pos + chunkBytes < size) {
+			/*
+			 * Move the boundary past the end of the line it falls in
+			 */
+			pos += chunkBytes;
+			found = false;
+			while (!found && pos < size) {
+				buf.clear();
+				channel.read(buf, pos);
+				buf.flip();
+				while (buf.hasRemaining()) {
+					pos++;
+					if (buf.get() == '\n') {
+						found = true;
+						break;
+					}
+				}
+			}
+			if (pos < size) {
+				bounds.add(pos);
+			}
+		}
+		bounds.add(size);
+		return bounds;
+	}
+
+	/**
+	 * Waits for the given chunk to be parsed and returns its buffers
+	 * @throws IOException if the chunk could not be parsed
+	 */
+	private static Map<String, SubjectBuffer> getChunk(
+			Future<Map<String, SubjectBuffer>> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			} else if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			} else if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new IOException("Could not parse", ex.getCause());
+		}
+	}
+
+	/**
+	 * Parses the lines of one chunk into per-subject buffers
+	 * @param buffer - the mapped chunk
+	 * @param offset - the position of the chunk in the file, for error
+	 * messages
+	 * @throws IOException if a line is not a valid triple
+	 */
+	private static Map<String, SubjectBuffer> parseChunk(ByteBuffer buffer,
+			long offset) throws IOException {
+		LinkedHashMap<String, SubjectBuffer> subjects =
+				new LinkedHashMap<String, SubjectBuffer>();
+		byte[] lineBytes = new byte[256];
+		int lineLength, lineStart;
+		String line;
+		Triple triple;
+		SubjectBuffer subject;
+		byte b;
+
+		while (buffer.hasRemaining()) {
+			lineStart = buffer.position();
+			lineLength = 0;
+			while (buffer.hasRemaining() && (b = buffer.get()) != '\n') {
+				if (lineLength == lineBytes.length) {
+					lineBytes = Arrays.copyOf(lineBytes,
+							lineLength * 2);
+				}
+				lineBytes[lineLength++] = b;
+			}
+			line = new String(lineBytes, 0, lineLength, UTF8).trim();
+			if (line.length() == 0 || line.charAt(0) == '#') {
+				continue;
+			}
+			triple = parseTriple(line, offset + lineStart);
+			subject = subjects.get(triple.subject);
+			if (subject == null) {
+				subject = new SubjectBuffer();
+				subject.record = new IndividualRecord(triple.subject);
+				subjects.put(triple.subject, subject);
+			}
+			if (!subject.isDeclared) {
+				subject.lines.add(line);
+			}
+			if (triple.isLiteral) {
+				subject.record.addDataValue(triple.predicate, triple.object,
+						triple.datatype, triple.lang);
+			} else if (triple.predicate.equals(RDF_TYPE)) {
+				subject.record.addType(triple.object);
+				if (!subject.isDeclared && !triple.subject.startsWith("_:") &&
+						RDFXMLIndividualSource.isIndividualType(
+								triple.object)) {
+					/* Individuals don't go to the TBox */
+					subject.isDeclared = true;
+					subject.lines.clear();
+					subject.lines.trimToSize();
+				}
+			} else {
+				subject.record.addObjectValue(triple.predicate,
+						triple.object.startsWith("_:") ? null : triple.object);
+			}
+		}
+		return subjects;
+	}
+
+	/**
+	 * Merges the buffers of every chunk in file order. The buffers of
+	 * subjects declared as individuals in any chunk become records, all 
+	 * other triples are written to the TBox file.
+	 */
+	private static NTriplesIndividualSource merge(
+			List<Map<String, SubjectBuffer>> chunks, File tboxFile)
+			throws IOException {
+		LinkedHashMap<String, IndividualRecord> records =
+				new LinkedHashMap<String, IndividualRecord>();
+		HashSet<String> individuals = new HashSet<String>();
+		IndividualRecord record;
+		Writer tboxWriter = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(tboxFile), UTF8));
+
+		for (Map<String, SubjectBuffer> chunk : chunks) {
+			for (Map.Entry<String, SubjectBuffer> entry : chunk.entrySet()) {
+				if (entry.getValue().isDeclared) {
+					individuals.add(entry.getKey());
+				}
+			}
+		}
+		try {
+			for (Map<String, SubjectBuffer> chunk : chunks) {
+				for (Map.Entry<String, SubjectBuffer> entry :
+						chunk.entrySet()) {
+					if (!individuals.contains(entry.getKey())) {
+						for (String line : entry.getValue().lines) {
+							tboxWriter.write(line);
+							tboxWriter.write('\n');
+						}
+						continue;
+					}
+					record = records.get(entry.getKey());
+					if (record == null) {
+						records.put(entry.getKey(), entry.getValue().record);
+					} else {
+						record.addAll(entry.getValue().record);
+					}
+				}
+				chunk.clear();
+			}
+		} finally {
+			tboxWriter.close();
+		}
+		return new NTriplesIndividualSource(records);
+	}
+
+	/**
+	 * Parses a single N-Triples line
+	 * @param line - the line, without surrounding whitespace
+	 * @param pos - the position of the line in the file, for error messages
+	 * @throws IOException if the line is not a valid triple
+	 */
+	private static Triple parseTriple(String line, long pos)
+			throws IOException {
+		Triple triple = new Triple();
+		int[] i = {0};
+		int langStart;
+
+		triple.subject = parseNode(line, i, pos);
+		triple.predicate = parseNode(line, i, pos);
+		skipSpace(line, i);
+		if (i[0] < line.length() && line.charAt(i[0]) == '"') {
+			triple.isLiteral = true;
+			triple.object = parseString(line, i, pos);
+			if (line.startsWith("^^", i[0])) {
+				i[0] += 2;
+				triple.datatype = parseNode(line, i, pos);
+			} else if (line.startsWith("@", i[0])) {
+				langStart = ++i[0];
+				while (i[0] < line.length() && (Character.isLetterOrDigit(
+						line.charAt(i[0])) || line.charAt(i[0]) == '-')) {
+					i[0]++;
+				}
+				triple.lang = line.substring(langStart, i[0]);
+			}
+		} else {
+			triple.object = parseNode(line, i, pos);
+		}
+		skipSpace(line, i);
+		if (!line.startsWith(".", i[0])) {
+			throw new IOException("Malformed triple at byte " + pos +
+					": missing final '.'");
+		}
+		return triple;
+	}
+
+	private static void skipSpace(String line, int[] i) {
+		while (i[0] < line.length() && (line.charAt(i[0]) == ' ' ||
+				line.charAt(i[0]) == '\t')) {
+			i[0]++;
+		}
+	}
+
+	/**
+	 * Parses an IRI in angle brackets or a blank node label, starting at
+	 * i[0] and leaving i[0] after it
+	 * @return the IRI, or the blank node label including its "_:" prefix
+	 */
+	private static String parseNode(String line, int[] i, long pos)
+			throws IOException {
+		int start, end;
+
+		skipSpace(line, i);
+		start = i[0];
+		if (line.startsWith("<", start)) {
+			end = line.indexOf('>', start);
+			if (end < 0) {
+				throw new IOException("Malformed triple at byte " + pos +
+						": unterminated IRI");
+			}
+			i[0] = end + 1;
+			return unescape(line.substring(start + 1, end), pos);
+		} else if (line.startsWith("_:", start)) {
+			while (i[0] < line.length() && line.charAt(i[0]) != ' ' &&
+					line.charAt(i[0]) != '\t') {
+				i[0]++;
+			}
+			return line.substring(start, i[0]);
+		}
+		throw new IOException("Malformed triple at byte " + pos +
+				": expected an IRI or a blank node");
+	}
+
+	/**
+	 * Parses a quoted string, starting at i[0] and leaving i[0] after the
+	 * closing quote
+	 * @return the unescaped string
+	 */
+	private static String parseString(String line, int[] i, long pos)
+			throws IOException {
+		int start = i[0] + 1;
+		int end = start;
+
+		while (end < line.length() && line.charAt(end) != '"') {
+			end += line.charAt(end) == '\\' ? 2 : 1;
+		}
+		if (end >= line.length()) {
+			throw new IOException("Malformed triple at byte " + pos +
+					": unterminated literal");
+		}
+		i[0] = end + 1;
+		return unescape(line.substring(start, end), pos);
+	}
+
+	/**
+	 * Resolves the escape sequences of N-Triples strings and IRIs
+	 */
+	private static String unescape(String str, long pos) throws IOException {
+		StringBuilder out;
+		char c;
+
+		if (str.indexOf('\\') < 0) {
+			return str;
+		}
+		out = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			c = str.charAt(i);
+			if (c != '\\' || i + 1 == str.length()) {
+				out.append(c);
+				continue;
+			}
+			c = str.charAt(++i);
+			try {
+				switch (c) {
+				case 't': out.append('\t'); break;
+				case 'b': out.append('\b'); break;
+				case 'n': out.append('\n'); break;
+				case 'r': out.append('\r'); break;
+				case 'f': out.append('\f'); break;
+				case 'u':
+					out.append((char) Integer.parseInt(
+							str.substring(i + 1, i + 5), 16));
+					i += 4;
+					break;
+				case 'U':
+					out.appendCodePoint(Integer.parseInt(
+							str.substring(i + 1, i + 9), 16));
+					i += 8;
+					break;
+				default: out.append(c);
+				}
+			} catch (RuntimeException ex) {
+				throw new IOException("Malformed triple at byte " + pos +
+						": invalid escape sequence");
+			}
+		}
+		return out.toString();
+	}
+}
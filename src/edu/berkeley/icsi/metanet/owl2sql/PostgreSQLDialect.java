@@ -0,0 +1,85 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Dialect for PostgreSQL servers. The database is built as a schema of the
+ * user's default database, since a connection can't switch databases, and
+ * is bulk loaded with COPY. The PostgreSQL driver is only needed at run 
+ * time.
+ */
+public class PostgreSQLDialect extends Dialect {
+
+	@Override
+	public String getName() {
+		return "postgresql";
+	}
+	
+	@Override
+	protected int getDefaultPort() {
+		return 5432;
+	}
+
+	@Override
+	protected String getURL(String server, int port, String dbName) {
+		return "jdbc:postgresql://" + server + ":" + port + "/" + 
+				(dbName == null ? "" : "?currentSchema=" + dbName);
+	}
+	
+	/**
+	 * Batched inserts are rewritten into multi-row INSERTs by the driver
+	 */
+	@Override
+	protected Properties getDriverProfile(String username, String pw) {
+		Properties props = super.getDriverProfile(username, pw);
+		props.setProperty("reWriteBatchedInserts", "true");
+		return props;
+	}
+
+	@Override
+	protected String getTextType() {
+		return "VARCHAR(333)";
+	}
+
+	@Override
+	protected String getAutoIncrementType() {
+		return "BIGINT GENERATED BY DEFAULT AS IDENTITY";
+	}
+	
+	/**
+	 * Checks if the user may create schemas in the current database
+	 */
+	@Override
+	protected boolean adequatePermissions(Connection con) 
+			throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT has_database_privilege(" +
+					"current_database(), 'CREATE')");
+			rs.next();
+			return rs.getBoolean(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@Override
+	protected void prepare(Statement stmt, String dbName) 
+			throws SQLException {
+		stmt.execute("DROP SCHEMA IF EXISTS " + dbName + " CASCADE");
+		stmt.execute("CREATE SCHEMA " + dbName);
+		System.out.println("Empty schema " + dbName + " created");
+		stmt.execute("SET search_path TO " + dbName);
+	}
+	
+	@Override
+	protected RowWriter getBulkWriter(Connection con, int batchSize) 
+			throws IOException {
+		return new CopyRowWriter(con);
+	}
+}
@@ -0,0 +1,166 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports the progress of the current phase of a build. The phase's
+ * counter is updated from the hot path without locks, from any thread, and
+ * is rendered by a timer thread: a few times per second on a single
+ * updating line when the output is a console, or as a plain line every
+ * few seconds when it is redirected, i.e. to a log file. Each line shows
+ * the items done, the rate, the elapsed time and, if the total is known,
+ * the estimated time left.
+ */
+public class ProgressReporter {
+	private static final long CONSOLE_INTERVAL_MS = 250;
+	private static final long LOG_INTERVAL_MS = 10000;
+
+	private PrintStream out;
+	private boolean console;
+	private ScheduledExecutorService timer;
+	private AtomicLong numDone;
+	private volatile String phase;
+	private volatile long total;
+	private volatile long startTimeMS;
+	private long lastRendered;
+
+	/**
+	 * Initializes a reporter on standard output
+	 */
+	ProgressReporter() {
+		this(System.out, System.console() != null);
+	}
+
+	/**
+	 * Initializes a reporter
+	 * @param out - the stream the progress is printed to
+	 * @param console - whether the stream is a console that the current
+	 * line can be overwritten on
+	 */
+	ProgressReporter(PrintStream out, boolean console) {
+		this.out = out;
+		this.console = console;
+		numDone = new AtomicLong();
+	}
+
+	/**
+	 * Finishes the current phase, if any, and starts reporting the given
+	 * phase
+	 * @param phase - the description of the phase
+	 * @param total - the number of items in the phase, or -1 if unknown
+	 */
+	protected synchronized void start(String phase, long total) {
+		finish();
+		numDone.set(0);
+		this.total = total;
+		startTimeMS = System.currentTimeMillis();
+		lastRendered = -1;
+		this.phase = phase;
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "owl2sql-progress");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			timer.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					render(false);
+				}
+			}, 0, console ? CONSOLE_INTERVAL_MS : LOG_INTERVAL_MS,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Counts one item of the current phase as done
+	 */
+	protected void step() {
+		numDone.incrementAndGet();
+	}
+
+	/**
+	 * Counts the given number of items of the current phase as done
+	 */
+	protected void step(long numItems) {
+		numDone.addAndGet(numItems);
+	}
+
+	/**
+	 * Prints the final progress of the current phase and ends its line
+	 */
+	protected synchronized void finish() {
+		if (phase != null) {
+			render(true);
+			phase = null;
+		}
+	}
+
+	/**
+	 * Finishes the current phase and stops the timer thread
+	 */
+	protected synchronized void close() {
+		finish();
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	/**
+	 * Prints the progress of the current phase, unless nothing changed
+	 * since it was last printed
+	 * @param last - if true, the progress is printed in any case and its
+	 * line is ended
+	 */
+	private synchronized void render(boolean last) {
+		long done = numDone.get();
+		long elapsedMS;
+		StringBuilder line;
+
+		if (phase == null || (!last && done == lastRendered)) {
+			return;
+		}
+		elapsedMS = System.currentTimeMillis() - startTimeMS;
+		line = new StringBuilder();
+		line.append(phase).append(" --- ").append(done);
+		if (total >= 0) {
+			line.append(" of ").append(total);
+		}
+		line.append(" --- ").append(done * 1000 / Math.max(1, elapsedMS))
+				.append("/s, ").append(formatTime(elapsedMS))
+				.append(" elapsed");
+		if (total > 0 && done > 0 && done < total) {
+			line.append(", ").append(formatTime(elapsedMS * (total - done) /
+					done)).append(" left");
+		}
+		if (console) {
+			/* Pad over the rest of the previous, possibly longer, line */
+			out.print("\r" + line + "        ");
+			if (last) {
+				out.println();
+			}
+		} else {
+			out.println(line);
+		}
+		out.flush();
+		lastRendered = done;
+	}
+
+	/**
+	 * Formats the given duration as h:mm:ss
+	 */
+	static String formatTime(long ms) {
+		long s = ms / 1000;
+		return String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+	}
+}
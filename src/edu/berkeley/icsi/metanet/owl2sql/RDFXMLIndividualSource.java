@@ -0,0 +1,488 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Streams the individuals of an RDF/XML file with StAX, one top-level
+ * description at a time, so only the description being read is held in
+ * memory.
+ *
+ * A top-level description declares an individual if it is typed with a
+ * class outside of the RDF, RDFS, OWL and SWRL vocabularies, is an
+ * owl:NamedIndividual or owl:Thing, or is an rdf:Description with an
+ * rdf:type of such a class, owl:NamedIndividual or owl:Thing. These
+ * descriptions are left out of the TBox. Untyped rdf:Descriptions with a
+ * subject may add assertions to an individual declared elsewhere in the
+ * file, but may as well be about the TBox, so they are kept in the TBox
+ * and also streamed as records that don't declare their subject.
+ */
+public class RDFXMLIndividualSource implements IndividualRecord.Source {
+	static final String RDF_NS =
+			"http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	static final String RDFS_NS = "http://www.w3.org/2000/01/rdf-schema#";
+	static final String OWL_NS = "http://www.w3.org/2002/07/owl#";
+	static final String NAMED_INDIVIDUAL = OWL_NS + "NamedIndividual";
+	static final String THING = OWL_NS + "Thing";
+	private static final HashSet<String> VOCABULARY_NS = new HashSet<String>(
+			Arrays.asList(RDF_NS, RDFS_NS, OWL_NS,
+					"http://www.w3.org/2003/11/swrl#",
+					"http://www.w3.org/2003/11/swrlb#",
+					"http://www.w3.org/2001/XMLSchema#"));
+	private static final QName RDF_ABOUT = new QName(RDF_NS, "about");
+	private static final QName RDF_ID = new QName(RDF_NS, "ID");
+	private static final QName RDF_RESOURCE = new QName(RDF_NS, "resource");
+	private static final QName RDF_NODE_ID = new QName(RDF_NS, "nodeID");
+	private static final QName RDF_DATATYPE = new QName(RDF_NS, "datatype");
+	private static final QName RDF_PARSE_TYPE =
+			new QName(RDF_NS, "parseType");
+	private static final QName RDF_TYPE = new QName(RDF_NS, "type");
+	private static final QName RDF_DESCRIPTION =
+			new QName(RDF_NS, "Description");
+	private static final QName OWL_NAMED_INDIVIDUAL =
+			new QName(OWL_NS, "NamedIndividual");
+	private static final QName OWL_THING = new QName(OWL_NS, "Thing");
+	private static final QName XML_BASE =
+			new QName(XMLConstants.XML_NS_URI, "base");
+	private static final QName XML_LANG =
+			new QName(XMLConstants.XML_NS_URI, "lang");
+
+	private File file;
+
+	/**
+	 * Initializes the source
+	 * @param file - an RDF/XML file
+	 */
+	RDFXMLIndividualSource(File file) {
+		this.file = file;
+	}
+
+	private static XMLEventReader createReader(InputStream in)
+			throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		return factory.createXMLEventReader(in);
+	}
+
+	/**
+	 * Copies the given RDF/XML file without the descriptions of its
+	 * individuals, so that only the TBox is loaded into the OWLAPI
+	 * @param in - the RDF/XML file
+	 * @param out - the file the copy is written to
+	 * @throws IOException if either file can't be read or written, or the
+	 * input is not well-formed XML
+	 */
+	static void writeTBox(File in, File out) throws IOException {
+		XMLEventReader reader = null;
+		XMLEventWriter xmlWriter = null;
+		InputStream is = new BufferedInputStream(new FileInputStream(in));
+		OutputStream os = null;
+		XMLEvent event;
+		StartDocument startDoc;
+		List<XMLEvent> element;
+		int depth = 0;
+
+		try {
+			os = new BufferedOutputStream(new FileOutputStream(out));
+			reader = createReader(is);
+			xmlWriter = XMLOutputFactory.newInstance().createXMLEventWriter(
+					os, "UTF-8");
+			while (reader.hasNext()) {
+				event = reader.nextEvent();
+				if (event.isStartDocument()) {
+					/* The copy is always written in UTF-8 */
+					startDoc = (StartDocument) event;
+					xmlWriter.add(XMLEventFactory.newInstance()
+							.createStartDocument("UTF-8",
+									startDoc.getVersion()));
+					continue;
+				}
+				if (event.isStartElement() && depth == 1) {
+					element = readElement(event, reader);
+					if (!isIndividual(element)) {
+						for (XMLEvent elementEvent : element) {
+							xmlWriter.add(elementEvent);
+						}
+					}
+					continue;
+				}
+				if (event.isStartElement()) {
+					depth++;
+				} else if (event.isEndElement()) {
+					depth--;
+				}
+				xmlWriter.add(event);
+			}
+			xmlWriter.flush();
+		} catch (XMLStreamException ex) {
+			throw new IOException("Could not parse " + in + ": " +
+					ex.getMessage(), ex);
+		} finally {
+			try {
+				if (reader != null) {
+					reader.close();
+				}
+				if (xmlWriter != null) {
+					xmlWriter.close();
+				}
+			} catch (XMLStreamException ex) {
+				/* The streams are closed below either way */
+			}
+			is.close();
+			if (os != null) {
+				os.close();
+			}
+		}
+	}
+
+	@Override
+	public void read(IndividualRecord.Handler handler)
+			throws IOException, SQLException {
+		XMLEventReader reader = null;
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		String base = file.toURI().toString();
+		XMLEvent event;
+		List<XMLEvent> element;
+		IndividualRecord record;
+		int depth = 0;
+
+		try {
+			reader = createReader(is);
+			while (reader.hasNext()) {
+				event = reader.nextEvent();
+				if (event.isStartElement() && depth == 0) {
+					base = resolve(base, getAttribute(event, XML_BASE));
+				} else if (event.isStartElement() && depth == 1) {
+					element = readElement(event, reader);
+					if (isIndividual(element)) {
+						record = toRecord(element, base, true);
+					} else if (isUntypedDescription(element)) {
+						record = toRecord(element, base, false);
+					} else {
+						record = null;
+					}
+					if (record != null) {
+						handler.handle(record);
+					}
+					continue;
+				}
+				if (event.isStartElement()) {
+					depth++;
+				} else if (event.isEndElement()) {
+					depth--;
+				}
+			}
+		} catch (XMLStreamException ex) {
+			throw new IOException("Could not parse " + file + ": " +
+					ex.getMessage(), ex);
+		} finally {
+			try {
+				if (reader != null) {
+					reader.close();
+				}
+			} catch (XMLStreamException ex) {
+				/* The stream is closed below either way */
+			}
+			is.close();
+		}
+	}
+
+	/**
+	 * Reads the rest of the element started by the given event
+	 * @return the events of the element, from its start to its end
+	 */
+	private static List<XMLEvent> readElement(XMLEvent start,
+			XMLEventReader reader) throws XMLStreamException {
+		ArrayList<XMLEvent> element = new ArrayList<XMLEvent>();
+		XMLEvent event;
+		int depth = 1;
+
+		element.add(start);
+		while (depth > 0) {
+			event = reader.nextEvent();
+			if (event.isStartElement()) {
+				depth++;
+			} else if (event.isEndElement()) {
+				depth--;
+			}
+			element.add(event);
+		}
+		return element;
+	}
+
+	/**
+	 * Returns the index of the end of the element starting at the given
+	 * index
+	 */
+	private static int getEndIndex(List<XMLEvent> events, int start) {
+		int depth = 0;
+
+		for (int i = start; i < events.size(); i++) {
+			if (events.get(i).isStartElement()) {
+				depth++;
+			} else if (events.get(i).isEndElement()) {
+				depth--;
+				if (depth == 0) {
+					return i;
+				}
+			}
+		}
+		return events.size() - 1;
+	}
+
+	/**
+	 * Checks if the given IRI is in the RDF, RDFS, OWL, SWRL or XML Schema
+	 * vocabularies
+	 */
+	static boolean isVocabulary(String iri) {
+		for (String ns : VOCABULARY_NS) {
+			if (iri.startsWith(ns)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if an rdf:type of the given class makes its subject an
+	 * individual, i.e. if the class is owl:NamedIndividual, owl:Thing or
+	 * outside of the vocabularies
+	 */
+	static boolean isIndividualType(String classIRI) {
+		return classIRI.equals(NAMED_INDIVIDUAL) ||
+				classIRI.equals(THING) || !isVocabulary(classIRI);
+	}
+
+	/**
+	 * Returns the start events of the direct children of the given element
+	 */
+	private static List<StartElement> getChildren(List<XMLEvent> element) {
+		ArrayList<StartElement> children = new ArrayList<StartElement>();
+		int end;
+
+		for (int i = 1; i < element.size() - 1; i = end + 1) {
+			end = i;
+			if (element.get(i).isStartElement()) {
+				end = getEndIndex(element, i);
+				children.add(element.get(i).asStartElement());
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * Checks if the given top-level element describes an individual
+	 */
+	private static boolean isIndividual(List<XMLEvent> element) {
+		QName name = element.get(0).asStartElement().getName();
+		String type;
+
+		if (name.equals(OWL_NAMED_INDIVIDUAL) || name.equals(OWL_THING)) {
+			return true;
+		} else if (!name.equals(RDF_DESCRIPTION)) {
+			return !VOCABULARY_NS.contains(name.getNamespaceURI());
+		}
+		for (StartElement child : getChildren(element)) {
+			if (child.getName().equals(RDF_TYPE)) {
+				type = getAttribute(child, RDF_RESOURCE);
+				if (type != null && isIndividualType(type)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the given top-level element is an rdf:Description without
+	 * any rdf:type
+	 */
+	private static boolean isUntypedDescription(List<XMLEvent> element) {
+		if (!element.get(0).asStartElement().getName().equals(
+				RDF_DESCRIPTION)) {
+			return false;
+		}
+		for (StartElement child : getChildren(element)) {
+			if (child.getName().equals(RDF_TYPE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Converts the given top-level element into a record
+	 * @param declaration - whether the element declares the individual
+	 * @return the record, or null if the element describes an anonymous
+	 * individual
+	 */
+	private static IndividualRecord toRecord(List<XMLEvent> element,
+			String base, boolean declaration) {
+		StartElement start = element.get(0).asStartElement();
+		QName name = start.getName();
+		String iri, lang;
+		IndividualRecord record;
+		Attribute attr;
+		XMLEvent event;
+		int end;
+
+		base = resolve(base, getAttribute(start, XML_BASE));
+		lang = getAttribute(start, XML_LANG);
+		iri = getSubject(start, base);
+		if (iri == null) {
+			return null;
+		}
+		record = new IndividualRecord(iri, declaration);
+		if (!name.equals(RDF_DESCRIPTION) &&
+				!name.equals(OWL_NAMED_INDIVIDUAL)) {
+			record.addType(name.getNamespaceURI() + name.getLocalPart());
+		}
+
+		/*
+		 * Property attributes are plain literals
+		 */
+		for (Iterator<?> it = start.getAttributes(); it.hasNext(); ) {
+			attr = (Attribute) it.next();
+			if (!RDF_NS.equals(attr.getName().getNamespaceURI()) &&
+					!XMLConstants.XML_NS_URI.equals(
+							attr.getName().getNamespaceURI())) {
+				record.addDataValue(attr.getName().getNamespaceURI() +
+						attr.getName().getLocalPart(), attr.getValue(), null,
+						lang);
+			}
+		}
+
+		for (int i = 1; i < element.size() - 1; i = end + 1) {
+			event = element.get(i);
+			end = i;
+			if (event.isStartElement()) {
+				end = getEndIndex(element, i);
+				addProperty(record, event.asStartElement(),
+						element.subList(i + 1, end), base, lang);
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Adds the assertion of the given property element to the record
+	 * @param record - the record of the enclosing description
+	 * @param prop - the start of the property element
+	 * @param content - the events between the start and the end of the
+	 * property element
+	 * @param base - the base IRI of the enclosing description
+	 * @param lang - the language of the enclosing description, or null
+	 */
+	private static void addProperty(IndividualRecord record,
+			StartElement prop, List<XMLEvent> content, String base,
+			String lang) {
+		QName name = prop.getName();
+		String propIRI = name.getNamespaceURI() + name.getLocalPart();
+		String resource = getAttribute(prop, RDF_RESOURCE);
+		String datatype = getAttribute(prop, RDF_DATATYPE);
+		String propLang = getAttribute(prop, XML_LANG);
+		StringBuilder text = new StringBuilder();
+
+		base = resolve(base, getAttribute(prop, XML_BASE));
+		if (name.equals(RDF_TYPE)) {
+			if (resource != null) {
+				record.addType(resolve(base, resource));
+			}
+			return;
+		} else if (resource != null) {
+			record.addObjectValue(propIRI, resolve(base, resource));
+			return;
+		} else if (getAttribute(prop, RDF_NODE_ID) != null) {
+			record.addObjectValue(propIRI, null);
+			return;
+		} else if (getAttribute(prop, RDF_PARSE_TYPE) != null) {
+			/* XML literals, collections and blank nodes are not streamed */
+			return;
+		}
+
+		for (XMLEvent event : content) {
+			if (event.isStartElement()) {
+				/* The object is described inline */
+				record.addObjectValue(propIRI,
+						getSubject(event.asStartElement(), base));
+				return;
+			} else if (event.isCharacters()) {
+				text.append(event.asCharacters().getData());
+			}
+		}
+		if (datatype != null) {
+			record.addDataValue(propIRI, text.toString(),
+					resolve(base, datatype), null);
+		} else {
+			record.addDataValue(propIRI, text.toString(), null,
+					propLang != null ? propLang : lang);
+		}
+	}
+
+	/**
+	 * Returns the IRI of the node described by the given element, or null
+	 * if the node is anonymous
+	 */
+	private static String getSubject(StartElement start, String base) {
+		String about = getAttribute(start, RDF_ABOUT);
+		String id = getAttribute(start, RDF_ID);
+
+		if (about != null) {
+			return resolve(base, about);
+		} else if (id != null) {
+			return resolve(base, "#" + id);
+		}
+		return null;
+	}
+
+	private static String getAttribute(XMLEvent event, QName name) {
+		Attribute attr = event.asStartElement().getAttributeByName(name);
+		return attr == null ? null : attr.getValue();
+	}
+
+	/**
+	 * Resolves the given IRI reference against the given base IRI
+	 * @return the resolved IRI, the reference itself if it can't be
+	 * resolved, or the base if the reference is null
+	 */
+	static String resolve(String base, String ref) {
+		if (ref == null) {
+			return base;
+		}
+		try {
+			return new URI(base).resolve(new URI(ref)).toString();
+		} catch (URISyntaxException ex) {
+			return ref;
+		} catch (IllegalArgumentException ex) {
+			return ref;
+		}
+	}
+}
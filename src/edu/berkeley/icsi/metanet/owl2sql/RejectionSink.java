@@ -0,0 +1,230 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects the rejections of a build. Any thread may report a rejection;
+ * reporting only counts it and adds it to a lock-free queue, and a
+ * background thread writes the queued rejections to the error log as JSON
+ * lines. Rejections are counted by category, and every category may be
+ * capped: rejections past the cap of their category are still counted, but
+ * neither logged nor stored.
+ *
+ * If the table is enabled, the rejections are also kept until the build
+ * writes them to the BuildRejection table with writeRows().
+ */
+public class RejectionSink {
+	static final String TABLE_NAME = "BuildRejection";
+	static final String[] TABLE_FIELDS = {"category", "targetTable",
+		"entity", "property", "reason"};
+
+	private static final long POLL_INTERVAL_MS = 100;
+	private static final int NUM_CATEGORIES =
+			BuildRejection.Category.values().length;
+
+	private AtomicLongArray counts;
+	private long[] caps;
+	private ConcurrentLinkedQueue<BuildRejection> logQueue, rows;
+	private Writer log;
+	private Thread logger;
+	private volatile boolean closed;
+	private long numLogged, numLogErrors;
+
+	/**
+	 * Initializes a sink that only counts the rejections
+	 */
+	RejectionSink() {
+		counts = new AtomicLongArray(NUM_CATEGORIES);
+		caps = new long[NUM_CATEGORIES];
+		Arrays.fill(caps, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Writes the rejections to the given file from now on, replacing its
+	 * contents
+	 * @throws IOException if the file can't be opened
+	 */
+	protected void openLog(File file) throws IOException {
+		log = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"));
+		logQueue = new ConcurrentLinkedQueue<BuildRejection>();
+		logger = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLog();
+			}
+		}, "owl2sql-rejections");
+		/* A failed build must not be kept alive by its logger */
+		logger.setDaemon(true);
+		logger.start();
+	}
+
+	/**
+	 * Keeps the rejections for the BuildRejection table from now on
+	 */
+	protected void enableTable() {
+		rows = new ConcurrentLinkedQueue<BuildRejection>();
+	}
+
+	/**
+	 * Checks if the rejections are kept for the BuildRejection table
+	 */
+	protected boolean isTableEnabled() {
+		return rows != null;
+	}
+
+	/**
+	 * Logs and stores at most the given number of rejections of the given
+	 * category
+	 */
+	protected void setCap(BuildRejection.Category category, long cap) {
+		caps[category.ordinal()] = cap;
+	}
+
+	/**
+	 * Logs and stores at most the given number of rejections of every
+	 * category
+	 */
+	protected void setCaps(long cap) {
+		Arrays.fill(caps, cap);
+	}
+
+	/**
+	 * Reports a rejection. Safe to call from any thread.
+	 * @param rejection - the rejection
+	 */
+	protected void reject(BuildRejection rejection) {
+		int category = rejection.category.ordinal();
+
+		if (counts.incrementAndGet(category) > caps[category]) {
+			return;
+		}
+		if (logQueue != null) {
+			logQueue.offer(rejection);
+		}
+		if (rows != null) {
+			rows.offer(rejection);
+		}
+	}
+
+	/**
+	 * Returns the number of rejections of the given category so far,
+	 * including the ones past its cap
+	 */
+	public long getCount(BuildRejection.Category category) {
+		return counts.get(category.ordinal());
+	}
+
+	/**
+	 * Returns the number of rejections so far, including the ones past the
+	 * caps
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < NUM_CATEGORIES; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the number of rejections written to the error log. Only final
+	 * once the sink is closed.
+	 */
+	public long getNumLogged() {
+		return numLogged;
+	}
+
+	/**
+	 * Returns the number of rejections that could not be written to the
+	 * error log. Only final once the sink is closed.
+	 */
+	public long getNumLogErrors() {
+		return numLogErrors;
+	}
+
+	/**
+	 * Writes the rejections stored since the last call to the
+	 * BuildRejection table. Must be called from the thread that writes the
+	 * other rows.
+	 * @param out - the writer of the build
+	 * @return the number of rows written
+	 * @throws SQLException
+	 */
+	protected int writeRows(RowWriter out) throws SQLException {
+		BuildRejection rejection;
+		int numRows = 0;
+
+		if (rows == null) {
+			return 0;
+		}
+		while ((rejection = rows.poll()) != null) {
+			out.write(TABLE_NAME, TABLE_FIELDS, rejection.category.name(),
+					rejection.table, rejection.entity, rejection.property,
+					rejection.reason);
+			numRows++;
+		}
+		return numRows;
+	}
+
+	/**
+	 * Writes queued rejections to the log until the sink is closed and the
+	 * queue is empty. Runs on the logger thread.
+	 */
+	private void drainLog() {
+		BuildRejection rejection;
+
+		while (true) {
+			rejection = logQueue.poll();
+			if (rejection != null) {
+				try {
+					log.write(rejection.toJSON());
+					log.write('\n');
+					numLogged++;
+				} catch (IOException ex) {
+					numLogErrors++;
+				}
+			} else if (closed) {
+				/* Nothing can be queued once closed, so the log is done */
+				break;
+			} else {
+				LockSupport.parkNanos(
+						TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS));
+			}
+		}
+		try {
+			log.close();
+		} catch (IOException ex) {
+			numLogErrors++;
+		}
+	}
+
+	/**
+	 * Waits for the logger to write every queued rejection and closes the
+	 * log. Rejections reported after this are only counted and stored.
+	 */
+	protected void close() {
+		if (logger == null || closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(logger);
+		try {
+			logger.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		logQueue = null;
+	}
+}
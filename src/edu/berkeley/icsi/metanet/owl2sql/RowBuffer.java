@@ -0,0 +1,56 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Keeps written rows in memory, in order, until they are replayed into 
+ * another RowWriter. Used to hand rows produced on worker threads to the
+ * single writer of the build.
+ */
+public class RowBuffer extends RowWriter {
+	private ArrayList<String> tableNames;
+	private ArrayList<String[]> fieldLists;
+	private ArrayList<Object[]> rows;
+	
+	RowBuffer() {
+		tableNames = new ArrayList<String>();
+		fieldLists = new ArrayList<String[]>();
+		rows = new ArrayList<Object[]>();
+	}
+	
+	@Override
+	protected void write(String tableName, String[] fields, Object... values) {
+		tableNames.add(tableName);
+		fieldLists.add(fields);
+		rows.add(values);
+	}
+	
+	/**
+	 * Does nothing; buffered rows are only released by writeTo()
+	 */
+	@Override
+	protected void flush() {
+	}
+	
+	/**
+	 * Returns the number of buffered rows
+	 */
+	public int size() {
+		return rows.size();
+	}
+	
+	/**
+	 * Writes every buffered row to the given writer, in the order the rows 
+	 * were buffered, and empties the buffer
+	 * @throws SQLException
+	 */
+	protected void writeTo(RowWriter out) throws SQLException {
+		for (int i = 0; i < rows.size(); i++) {
+			out.write(tableNames.get(i), fieldLists.get(i), rows.get(i));
+		}
+		tableNames.clear();
+		fieldLists.clear();
+		rows.clear();
+	}
+}
@@ -0,0 +1,68 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.SQLException;
+
+/**
+ * Destination for the rows produced by the TableBuilder. Implementations
+ * decide how rows reach the database (or wherever they are going) and may
+ * buffer them, so callers must call close() once all rows have been written.
+ * 
+ * Rows must be written in foreign key order: a row may only reference rows
+ * that were written before it, and each table must be written for the first
+ * time after every table it references.
+ */
+public abstract class RowWriter {
+	
+	/**
+	 * The metrics the execute time of the rows is recorded in, or null
+	 */
+	protected BuildMetrics metrics;
+	
+	/**
+	 * The flight recorder events every batch is marked with
+	 */
+	protected BuildEvents events = BuildEvents.get();
+	
+	/**
+	 * Writes a single row to the given table
+	 * @param tableName - name of the target table
+	 * @param fields - names of the fields being set, in the same order as
+	 * the values. Every row written to a table must use the same fields.
+	 * @param values - the raw (unescaped) values of the fields. Strings and
+	 * Booleans are supported.
+	 * @throws SQLException
+	 */
+	protected abstract void write(String tableName, String[] fields, 
+			Object... values) throws SQLException;
+	
+	/**
+	 * Sends every buffered row to its destination
+	 * @throws SQLException
+	 */
+	protected abstract void flush() throws SQLException;
+	
+	/**
+	 * Returns whether foreign keys are checked as the rows are written. If
+	 * not, the caller has to verify them once the writer is closed.
+	 */
+	protected boolean checksForeignKeys() {
+		return true;
+	}
+	
+	/**
+	 * Records the time spent sending the rows of each table to their 
+	 * destination in the given metrics
+	 */
+	protected void setMetrics(BuildMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Flushes all remaining rows and releases any resources held by the 
+	 * writer
+	 * @throws SQLException
+	 */
+	protected void close() throws SQLException {
+		flush();
+	}
+}
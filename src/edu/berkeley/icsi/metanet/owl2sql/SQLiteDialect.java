@@ -0,0 +1,74 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * Dialect for embedded SQLite database files. The database name is the 
+ * path of the file. Foreign keys are enforced, which SQLite only does when
+ * asked to. The SQLite driver is only needed at run time.
+ */
+public class SQLiteDialect extends Dialect {
+
+	@Override
+	public String getName() {
+		return "sqlite";
+	}
+	
+	@Override
+	protected boolean isEmbedded() {
+		return true;
+	}
+
+	@Override
+	protected String getURL(String server, int port, String dbName) {
+		return "jdbc:sqlite:" + new File(dbName).getAbsolutePath();
+	}
+	
+	@Override
+	protected Properties getDriverProfile(String username, String pw) {
+		Properties props = super.getDriverProfile(username, pw);
+		props.setProperty("foreign_keys", "true");
+		return props;
+	}
+
+	@Override
+	protected String getTextType() {
+		return "TEXT";
+	}
+
+	/**
+	 * An INTEGER primary key is an alias of the rowid, which SQLite 
+	 * generates
+	 */
+	@Override
+	protected String getAutoIncrementType() {
+		return "INTEGER NOT NULL";
+	}
+
+	/**
+	 * Drops every view and table of the file, the tables in the reverse of
+	 * the order they were created in so no foreign key is left dangling
+	 */
+	@Override
+	protected void prepare(Statement stmt, String dbName) 
+			throws SQLException {
+		ArrayList<String[]> objects = new ArrayList<String[]>();
+		ResultSet rs = stmt.executeQuery("SELECT type, name FROM " +
+				"sqlite_master WHERE type IN ('view', 'table') AND name NOT " +
+				"LIKE 'sqlite_%' ORDER BY type = 'table', rowid DESC");
+		
+		while (rs.next()) {
+			objects.add(new String[] {rs.getString(1), rs.getString(2)});
+		}
+		rs.close();
+		for (String[] object : objects) {
+			stmt.execute("DROP " + object[0].toUpperCase() + " " + object[1]);
+		}
+		System.out.println("Emptied database file " + dbName);
+	}
+}
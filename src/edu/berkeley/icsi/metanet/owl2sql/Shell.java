@@ -1,12 +1,15 @@
 package edu.berkeley.icsi.metanet.owl2sql;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 
+import javax.management.JMException;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -14,18 +17,158 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.FileDocumentSource;
+import org.semanticweb.owlapi.io.OWLOntologyDocumentSource;
+import org.semanticweb.owlapi.io.StreamDocumentSource;
+import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 
 public abstract class Shell {
 	String server, username, pw;
 	int port;
+	Dialect dialect;
 	
 	static void printHelp(Options options) {
 		HelpFormatter formatter = new HelpFormatter();
 		formatter.printHelp("owl2sql [OPTIONS] FILE", options);
 		System.exit(0);
 	}
+
+	/**
+	 * Returns the options that change which rows are built, or their order.
+	 * A build is only resumed if these are the same as before.
+	 */
+	static String getCheckpointOptions(CommandLine cmd) {
+		StringBuilder out = new StringBuilder();
+		for (String option : new String[] {"intkeys", "compactglobal",
+				"deferkeys", "stream", "ntriples", "rejections"}) {
+			if (cmd.hasOption(option)) {
+				out.append('-').append(option).append(' ');
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Applies the command-line options that shape the build to the given
+	 * TableBuilder
+	 */
+	static void configure(TableBuilder tableBuilder, CommandLine cmd, 
+			int numThreads) {
+		String logPath;
+		
+		if (cmd.hasOption("threads")) {
+			tableBuilder.setNumThreads(numThreads);
+		}
+		
+		if (cmd.hasOption("intkeys")) {
+			tableBuilder.enableSurrogateKeys();
+		}
+		
+		if (cmd.hasOption("compactglobal")) {
+			tableBuilder.enableCompactGlobals();
+		}
+		
+		if (cmd.hasOption("deferkeys")) {
+			tableBuilder.enableDeferredConstraints();
+		}
+		
+		if (cmd.hasOption("E")) {
+			logPath = System.getProperty("user.dir") + "/error.log";
+			try {
+				tableBuilder.enableErrorLogging(logPath);
+			} catch (IOException e) {
+				System.err.println("Error: Could not initialize error " +
+						"logging to " + logPath + 
+						". Proceeding without error logging.");
+			}
+		}
+		
+		if (cmd.hasOption("rejections")) {
+			tableBuilder.enableRejectionTable();
+		}
+		
+		if (cmd.hasOption("rejectcap")) {
+			tableBuilder.setRejectionCap(Long.parseLong(
+					cmd.getOptionValue("rejectcap")));
+		}
+	}
+	
+	/**
+	 * Builds the database into a directory of SQL files, without a server
+	 */
+	static void dump(CommandLine cmd, OWLOntology ont, 
+			IndividualRecord.Source individualSource, int numThreads, 
+			BuildMetrics metrics) {
+		File dir = new File(cmd.getOptionValue("dump"));
+		DumpWriter writer = null;
+		TableBuilder tableBuilder;
+		
+		try {
+			writer = new DumpWriter(dir, cmd.hasOption("gzip"), numThreads);
+		} catch (IOException ex) {
+			System.err.println("Error: Unable to create dump files in " + 
+					dir + ": " + ex.getMessage());
+			System.exit(1);
+		}
+		if (metrics != null) {
+			metrics.startPhase("indexHierarchy");
+		}
+		tableBuilder = new TableBuilder(ont, null, writer);
+		tableBuilder.enableDump(writer.getSchemaSink());
+		if (metrics != null) {
+			tableBuilder.enableMetrics(metrics);
+		}
+		if (individualSource != null) {
+			tableBuilder.setIndividualSource(individualSource);
+		}
+		configure(tableBuilder, cmd, numThreads);
+		
+		try {
+			tableBuilder.build();
+		} catch (SQLException ex) {
+			System.err.println("\nError: " + ex.getMessage());
+			System.err.println("Error occurred while writing the dump to " +
+					dir + ". The dump is incomplete.");
+			System.exit(1);
+		}
+		System.out.println("Wrote dump to " + dir.getAbsolutePath());
+		if (metrics != null) {
+			writeMetrics(metrics, cmd);
+		}
+	}
+	
+	/**
+	 * Starts the metrics of a build and exposes them through JMX
+	 */
+	static BuildMetrics startMetrics() {
+		BuildMetrics metrics = new BuildMetrics();
+		try {
+			metrics.register();
+		} catch (JMException ex) {
+			System.err.println("Error: Could not register metrics MBean. " +
+					"Proceeding without JMX.");
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Writes the JSON report of the given metrics to the file given by the
+	 * metrics option and unregisters their MBean
+	 */
+	static void writeMetrics(BuildMetrics metrics, CommandLine cmd) {
+		File file = new File(cmd.getOptionValue("metrics"));
+		metrics.unregister();
+		try {
+			metrics.writeReport(file);
+			System.out.println("Wrote build metrics to " + 
+					file.getAbsolutePath());
+		} catch (IOException ex) {
+			System.err.println("Error: Could not write build metrics to " + 
+					file + ": " + ex.getMessage());
+		}
+	}
 	
 	abstract Connection establishConnection();
 	
@@ -36,13 +179,23 @@ public abstract class Shell {
 		List<String> argList;
 		Shell shell;
 		boolean adequatePermissions = false;
-		String path, logPath;
-		String dbName;
-		File owlFile;
+		String path;
+		String dbName, buildDBName;
+		File owlFile, tboxFile;
+		OWLOntologyDocumentSource ontSource;
+		IndividualRecord.Source individualSource = null;
 		Connection con = null;
 		OWLOntology ont = null;
 		OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
 		TableBuilder tableBuilder;
+		RowWriter rowWriter;
+		int batchSize = Basics.DEFAULT_BATCH_SIZE;
+		int numConnections = 1;
+		boolean shadow, resume;
+		BuildCheckpoint checkpoint = null;
+		Dialect dialect;
+		BuildMetrics metrics = null;
+		int numThreads = Runtime.getRuntime().availableProcessors();
 		Statement stmt = null;
 		CommandLineParser parser;
 		CommandLine cmd;
@@ -57,11 +210,58 @@ public abstract class Shell {
 		options.addOption("C", false, "prompt server and user login info " +
 				"from console");
 		options.addOption("E", false, "enable error logging");
-		options.addOption("server", true, "MySQL server name");
-		options.addOption("port", true, "MySQL server port");
-		options.addOption("u", true, "MySQL username");
-		options.addOption("p", true, "MySQL password");
-		options.addOption("db", true, "MySQL database name");
+		options.addOption("rejections", false, "write every build error " +
+				"to the BuildRejection table as well");
+		options.addOption("rejectcap", true, "log and store at most this " +
+				"many build errors of each category");
+		options.addOption("server", true, "database server name");
+		options.addOption("port", true, "database server port");
+		options.addOption("u", true, "database username");
+		options.addOption("p", true, "database password");
+		options.addOption("db", true, "database name, or the path of the " +
+				"database file for h2 and sqlite");
+		options.addOption("dialect", true, "database system to build for: " +
+				"mysql, postgresql, h2 or sqlite (default mysql)");
+		options.addOption("batch", true, "number of rows sent to the server " +
+				"per batch (default " + Basics.DEFAULT_BATCH_SIZE + ")");
+		options.addOption("multirow", false, "send rows as multi-row INSERT " +
+				"statements sized to the server's max_allowed_packet");
+		options.addOption("bulk", false, "stage rows in tab-separated files " +
+				"and load them with LOAD DATA LOCAL INFILE");
+		options.addOption("deferkeys", false, "create keys and foreign keys " +
+				"after loading the data, then verify and analyze the tables");
+		options.addOption("intkeys", false, "key all tables by INT ids and " +
+				"expose the string-keyed tables as views");
+		options.addOption("compactglobal", false, "flag properties without a " +
+				"declared domain or range instead of listing every class");
+		options.addOption("threads", true, "number of threads individuals " +
+				"are extracted and N-Triples are parsed on (default: number " +
+				"of processors)");
+		options.addOption("connections", true, "number of connections rows " +
+				"are loaded through concurrently (default 1)");
+		options.addOption("stream", false, "load only the TBox of an RDF/XML " +
+				"file into memory and stream its individuals");
+		options.addOption("ntriples", false, "parse the file as N-Triples, " +
+				"in parallel chunks");
+		options.addOption("sync", false, "update an existing database with " +
+				"only the rows that changed instead of rebuilding it");
+		options.addOption("shadow", false, "build into a shadow database " +
+				"and swap it in once the build succeeds, keeping the " +
+				"previous tables and views in <db>" +
+				DatabaseHandler.PREVIOUS_SUFFIX);
+		options.addOption("resume", false, "record checkpoints while " +
+				"building and resume an interrupted build of the same file " +
+				"and options from its last checkpoint");
+		options.addOption("dump", true, "write the schema and the rows of " +
+				"every table to SQL files in the given directory instead of " +
+				"a server");
+		options.addOption("gzip", false, "gzip the table files of a dump");
+		options.addOption("metrics", true, "expose build metrics through " +
+				"JMX and write them as JSON to the given file");
+		options.addOption("slowms", true, "statements slower than this " +
+				"many milliseconds are recorded as slow statement flight " +
+				"recorder events (default " + 
+				BuildEvents.DEFAULT_SLOW_STATEMENT_MS + ")");
 		options.addOption("help", false, "print this message");
 		
 		parser = new PosixParser();
@@ -77,6 +277,14 @@ public abstract class Shell {
 		if (cmd.hasOption("help")) {
 			Shell.printHelp(options);
 		}
+		shadow = cmd.hasOption("shadow");
+		resume = cmd.hasOption("resume");
+		dialect = Dialect.forName(cmd.getOptionValue("dialect", "mysql"));
+		if (dialect == null) {
+			System.err.println("Error: Unknown dialect " + 
+					cmd.getOptionValue("dialect"));
+			System.exit(1);
+		}
 		
 		argList = cmd.getArgList();
 		if (argList.size() == 0) {
@@ -87,6 +295,88 @@ public abstract class Shell {
 			System.err.println("Error: Only one argument can be provided");
 		}
 		
+		if (cmd.hasOption("batch")) {
+			try {
+				batchSize = Integer.parseInt(cmd.getOptionValue("batch"));
+			} catch (NumberFormatException ex) {
+				System.err.println("Error: Batch option must be an integer");
+				System.exit(1);
+			}
+		}
+		
+		if (cmd.hasOption("threads")) {
+			try {
+				numThreads = Integer.parseInt(cmd.getOptionValue("threads"));
+			} catch (NumberFormatException ex) {
+				System.err.println("Error: Threads option must be an integer");
+				System.exit(1);
+			}
+		}
+		
+		if (cmd.hasOption("rejectcap")) {
+			try {
+				Long.parseLong(cmd.getOptionValue("rejectcap"));
+			} catch (NumberFormatException ex) {
+				System.err.println("Error: Rejectcap option must be an " +
+						"integer");
+				System.exit(1);
+			}
+		}
+		
+		if (cmd.hasOption("slowms")) {
+			try {
+				BuildEvents.get().setSlowStatementThreshold(
+						Long.parseLong(cmd.getOptionValue("slowms")));
+			} catch (NumberFormatException ex) {
+				System.err.println("Error: Slowms option must be an integer");
+				System.exit(1);
+			}
+		}
+		
+		if (cmd.hasOption("connections")) {
+			try {
+				numConnections = Integer.parseInt(
+						cmd.getOptionValue("connections"));
+			} catch (NumberFormatException ex) {
+				System.err.println("Error: Connections option must be an " +
+						"integer");
+				System.exit(1);
+			}
+		}
+		
+		if (resume && (cmd.hasOption("sync") || cmd.hasOption("bulk") || 
+				numConnections > 1)) {
+			System.err.println("Error: Resume option can't be combined with " +
+					"sync, bulk or connections");
+			System.exit(1);
+		}
+		
+		if (cmd.hasOption("sync") && (shadow || 
+				cmd.hasOption("intkeys"))) {
+			System.err.println("Error: Sync option can't be combined with " +
+					"shadow or intkeys");
+			System.exit(1);
+		}
+		
+		if (!(dialect instanceof MySQLDialect) && (cmd.hasOption("sync") || 
+				cmd.hasOption("multirow") || cmd.hasOption("shadow") || 
+				cmd.hasOption("deferkeys") || cmd.hasOption("dump") || 
+				resume || numConnections > 1)) {
+			System.err.println("Error: Sync, multirow, shadow, deferkeys, " +
+					"dump, resume and connections options are only " +
+					"supported by the mysql dialect");
+			System.exit(1);
+		}
+		
+		if (cmd.hasOption("dump") && (cmd.hasOption("sync") || 
+				cmd.hasOption("bulk") || cmd.hasOption("multirow") || 
+				cmd.hasOption("shadow") || cmd.hasOption("deferkeys") || 
+				resume || numConnections > 1)) {
+			System.err.println("Error: Dump option can't be combined with " +
+					"options for a live server");
+			System.exit(1);
+		}
+		
 		path = argList.get(0);
 		owlFile = new File(path);
 		if (!owlFile.exists()) {
@@ -94,20 +384,68 @@ public abstract class Shell {
 			System.exit(1);
 		}
 		
+		if (cmd.hasOption("metrics")) {
+			metrics = startMetrics();
+			metrics.startPhase("loadOntology");
+		}
+		
+		/*
+		 * When streaming or reading N-Triples, the individuals are left out 
+		 * of the file loaded into the OWLAPI and read without it later
+		 */
+		ontSource = new FileDocumentSource(owlFile);
+		if (cmd.hasOption("ntriples")) {
+			try {
+				tboxFile = File.createTempFile("owl2sql-tbox", ".nt");
+				tboxFile.deleteOnExit();
+				individualSource = NTriplesIndividualSource.parse(owlFile, 
+						tboxFile, numThreads);
+				ontSource = new FileDocumentSource(tboxFile);
+				System.out.println("Parsed " + 
+						((NTriplesIndividualSource) individualSource).size() +
+						" individuals on " + numThreads + " threads");
+			} catch (IOException ex) {
+				System.err.println("Error: Unable to parse N-Triples file: " +
+						ex.getMessage());
+				System.exit(1);
+			}
+		} else if (cmd.hasOption("stream")) {
+			try {
+				tboxFile = File.createTempFile("owl2sql-tbox", ".owl");
+				tboxFile.deleteOnExit();
+				RDFXMLIndividualSource.writeTBox(owlFile, tboxFile);
+				ontSource = new StreamDocumentSource(
+						new FileInputStream(tboxFile), IRI.create(owlFile));
+				individualSource = new RDFXMLIndividualSource(owlFile);
+			} catch (IOException ex) {
+				System.err.println("Error: Unable to separate the " +
+						"individuals from the TBox: " + ex.getMessage());
+				System.exit(1);
+			}
+		}
+		
 		try {
-			ont = manager.loadOntologyFromOntologyDocument(owlFile);
+			ont = manager.loadOntologyFromOntologyDocument(ontSource);
 			System.out.println("Ontology file loaded");
 		} catch (Exception ex) {
 			System.err.println("Error: Invalid file");
 			System.exit(1);
 		}
 		
+		if (cmd.hasOption("dump")) {
+			dump(cmd, ont, individualSource, numThreads, metrics);
+			return;
+		}
+		
 		if (cmd.hasOption("C")) {
-			shell = new ConsoleShell();
+			shell = new ConsoleShell(dialect);
 		} else {
-			shell = new CmdLineShell(cmd);
+			shell = new CmdLineShell(cmd, dialect);
 		}
 		
+		if (metrics != null) {
+			metrics.startPhase("connect");
+		}
 		con = shell.establishConnection();
 		System.out.println("Connection established");
 		try {
@@ -118,7 +456,7 @@ public abstract class Shell {
 		}
 		
 		try {
-			adequatePermissions = Connector.adequatePermissions(con);
+			adequatePermissions = dialect.adequatePermissions(con);
 		} catch (SQLException ex) {
 			System.err.println("Error: Unable to check user permissions");
 			System.exit(1);
@@ -126,49 +464,150 @@ public abstract class Shell {
 		
 		if (!adequatePermissions) {
 			System.err.println("Error: Inadequate user permissions on this " +
-					"MySQL server. Contact the database administrator.");
+					"server. Contact the database administrator.");
 			System.exit(1);
 		} else {
 			System.out.println("Permissions checked");
 		}
 		
-		tableBuilder = new TableBuilder(ont, stmt);
-		
 		dbName = shell.getDBName();
+		buildDBName = dbName;
+		if (shadow) {
+			buildDBName = dbName + DatabaseHandler.SHADOW_SUFFIX;
+		}
 		
-		try {
-			DatabaseHandler.prepare(stmt, dbName);
-		} catch (SQLException ex) {
-			System.err.println("Error: Could not prepare database");
-			System.exit(1);
+		if (cmd.hasOption("sync")) {
+			try {
+				DatabaseHandler.open(stmt, dbName);
+			} catch (SQLException ex) {
+				System.err.println("Error: Could not open database " + 
+						dbName + " to synchronize");
+				System.exit(1);
+			}
+		} else {
+			if (resume) {
+				try {
+					checkpoint = new BuildCheckpoint(stmt, 
+							BuildCheckpoint.getHash(owlFile, 
+							getCheckpointOptions(cmd)));
+				} catch (IOException ex) {
+					System.err.println("Error: Unable to hash ontology file");
+					System.exit(1);
+				}
+			}
+			if (checkpoint == null || !checkpoint.load(buildDBName)) {
+				try {
+					dialect.prepare(stmt, buildDBName);
+				} catch (SQLException ex) {
+					System.err.println("Error: Could not prepare database");
+					System.exit(1);
+				}
+			}
 		}
 		
-		if (cmd.hasOption("E")) {
-			logPath = System.getProperty("user.dir") + "/error.log";
+		if (cmd.hasOption("sync")) {
+			rowWriter = new SyncRowWriter(con, batchSize);
+		} else if (cmd.hasOption("bulk")) {
 			try {
-				tableBuilder.enableErrorLogging(logPath);
-			} catch (IOException e) {
-				System.err.println("Error: Could not initialize error " +
-						"logging to " + logPath + 
-						". Proceeding without error logging.");
+				rowWriter = dialect.getBulkWriter(con, batchSize);
+			} catch (IOException ex) {
+				System.err.println("Error: Unable to create staging " +
+						"directory for bulk loading");
+				System.exit(1);
+				return;
+			}
+		} else if (cmd.hasOption("multirow")) {
+			try {
+				rowWriter = new MultiRowInsertWriter(
+						new MultiRowInsertWriter.StatementSink(stmt), 
+						Connector.getMaxAllowedPacket(con));
+			} catch (SQLException ex) {
+				System.err.println("Error: Unable to read max_allowed_packet");
+				System.exit(1);
+				return;
 			}
+		} else if (numConnections > 1) {
+			try {
+				rowWriter = new ConcurrentRowWriter(Connector.getConnections(
+						shell.server, shell.port, shell.username, shell.pw, 
+						buildDBName, numConnections), batchSize);
+			} catch (SQLException ex) {
+				System.err.println("Error: Unable to open loader connections");
+				System.exit(1);
+				return;
+			}
+		} else {
+			rowWriter = new BatchRowWriter(con, batchSize);
+		}
+		if (metrics != null) {
+			metrics.startPhase("indexHierarchy");
+		}
+		tableBuilder = new TableBuilder(ont, stmt, rowWriter);
+		if (!(dialect instanceof MySQLDialect)) {
+			tableBuilder.setDialect(dialect);
+		}
+		if (metrics != null) {
+			tableBuilder.enableMetrics(metrics);
+		}
+		if (individualSource != null) {
+			tableBuilder.setIndividualSource(individualSource);
+		}
+		if (cmd.hasOption("sync")) {
+			tableBuilder.enableSync((SyncRowWriter) rowWriter);
+		}
+		if (checkpoint != null) {
+			tableBuilder.enableCheckpoints(checkpoint);
 		}
+		configure(tableBuilder, cmd, numThreads);
 		
 		try {
 			tableBuilder.build();
 		} catch (SQLException ex) {
 			System.err.println("\nError: " + ex.getMessage());
-			System.err.println("Error occurred while creating the " +
-					"new database. No changes committed.");
+			if (shadow) {
+				System.err.println("Error occurred while building " + 
+						buildDBName + ". " + dbName + " was not changed.");
+			} else if (resume) {
+				System.err.println("Error occurred while creating the " +
+						"new database. Run again with -resume to continue " +
+						"from the last checkpoint.");
+			} else if (rowWriter instanceof ConcurrentRowWriter &&
+					((ConcurrentRowWriter) rowWriter).hasCommitted()) {
+				System.err.println("Error occurred while creating the " +
+						"new database after the loader connections " +
+						"committed their tables. " + dbName + " is " +
+						"partially loaded and must be rebuilt.");
+			} else {
+				System.err.println("Error occurred while creating the " +
+						"new database. No changes committed.");
+			}
 			System.exit(1);
 		}
 		
+		if (metrics != null) {
+			metrics.startPhase("commit");
+		}
 		try {
 			con.commit();
-			System.out.println("Committed changes to jdbc:mysql://" + shell.server + 
-					":" + shell.port + "/" + dbName);
 		} catch (SQLException e) {
 			System.err.println("Error: Unable to commit changes to database");
+			System.exit(1);
+		}
+		
+		if (shadow) {
+			try {
+				DatabaseHandler.swap(stmt, dbName, 
+						tableBuilder.getViewStrings());
+			} catch (SQLException ex) {
+				System.err.println("Error: Unable to swap the new build into " +
+						dbName + ": " + ex.getMessage());
+				System.exit(1);
+			}
+		}
+		System.out.println("Committed changes to " + 
+				dialect.getURL(shell.server, shell.port, dbName));
+		if (metrics != null) {
+			writeMetrics(metrics, cmd);
 		}
 	}
 }
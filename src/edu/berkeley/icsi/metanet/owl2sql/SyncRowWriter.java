@@ -0,0 +1,390 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synchronizes an existing database with the written rows instead of
+ * loading them into empty tables. The rows are kept in memory until the
+ * writer is closed; every table is then diffed against its current
+ * contents, keyed by the table's primary key, and only the differences are
+ * applied. Tables whose primary key is not written (i.e. an AUTO_INCREMENT
+ * id) are keyed by the full written row instead.
+ *
+ * The changes are applied with foreign key checks turned off, so deleting
+ * a changed row doesn't cascade to rows that are unchanged. The caller
+ * commits or rolls back the connection.
+ */
+public class SyncRowWriter extends RowWriter {
+	private Connection con;
+	private int batchSize;
+	private LinkedHashMap<String, String[]> tableFields;
+	private LinkedHashMap<String, List<Object[]>> tableRows;
+	private LinkedHashMap<String, int[]> tableCounts;
+
+	/**
+	 * Initializes the SyncRowWriter
+	 * @param con - a connection to the database being synchronized, with
+	 * auto-commit disabled
+	 * @param batchSize - the number of inserts or deletes sent to the
+	 * server per batch
+	 */
+	SyncRowWriter(Connection con, int batchSize) {
+		this.con = con;
+		this.batchSize = batchSize;
+		tableFields = new LinkedHashMap<String, String[]>();
+		tableRows = new LinkedHashMap<String, List<Object[]>>();
+		tableCounts = new LinkedHashMap<String, int[]>();
+	}
+
+	@Override
+	protected void write(String tableName, String[] fields, Object... values) {
+		List<Object[]> rows = tableRows.get(tableName);
+		if (rows == null) {
+			rows = new ArrayList<Object[]>();
+			tableRows.put(tableName, rows);
+			tableFields.put(tableName, fields);
+		}
+		rows.add(values);
+	}
+
+	/**
+	 * Does nothing; the rows are only compared once all are written
+	 */
+	@Override
+	protected void flush() {
+	}
+
+	/**
+	 * Foreign keys are checked after the changes are applied
+	 */
+	@Override
+	protected boolean checksForeignKeys() {
+		return false;
+	}
+
+	/**
+	 * Applies the differences between the written rows and the current
+	 * contents of every table of the database, and records the number of
+	 * rows added, removed and unchanged per table
+	 * @throws SQLException
+	 */
+	@Override
+	protected void close() throws SQLException {
+		Statement stmt = con.createStatement();
+		BatchRowWriter inserter = new BatchRowWriter(con, batchSize);
+		int[] counts;
+		
+		inserter.setMetrics(metrics);
+		tableCounts.clear();
+
+		try {
+			stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+			for (String tableName : getBaseTables()) {
+				if (!tableRows.containsKey(tableName)) {
+					/* Nothing is written to this table any more */
+					counts = new int[] {0, stmt.executeUpdate(
+							"DELETE FROM " + tableName), 0};
+				} else {
+					counts = syncTable(tableName, inserter);
+				}
+				tableCounts.put(tableName, counts);
+			}
+			inserter.close();
+		} finally {
+			/* The connection outlives the writer, so always restore checks */
+			try {
+				stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+			} finally {
+				stmt.close();
+				tableRows.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of rows added, removed and unchanged by close(),
+	 * in that order, per synchronized table
+	 */
+	protected Map<String, int[]> getTableCounts() {
+		return tableCounts;
+	}
+
+	/**
+	 * Returns the name of the current database
+	 */
+	private String getDatabase() throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT DATABASE()");
+			rs.next();
+			return rs.getString(1);
+		} finally {
+			stmt.close();
+		}
+	}
+	
+	/**
+	 * Returns the names of the base tables of the current database. Tables
+	 * that were written are returned under their written names, even if the
+	 * server reports them in a different case.
+	 * @throws SQLException if a written table does not exist
+	 */
+	private List<String> getBaseTables() throws SQLException {
+		ArrayList<String> tables = new ArrayList<String>();
+		ArrayList<String> missing = new ArrayList<String>(tableRows.keySet());
+		String tableName;
+		ResultSet rs = con.getMetaData().getTables(getDatabase(), null, "%", 
+				new String[] {"TABLE"});
+		
+		try {
+			while (rs.next()) {
+				tableName = rs.getString("TABLE_NAME");
+				for (String written : tableRows.keySet()) {
+					if (written.equalsIgnoreCase(tableName)) {
+						tableName = written;
+					}
+				}
+				missing.remove(tableName);
+				tables.add(tableName);
+			}
+		} finally {
+			rs.close();
+		}
+		if (!missing.isEmpty()) {
+			throw new SQLException("Table " + missing.get(0) + " does not " +
+					"exist in the database being synchronized");
+		}
+		return tables;
+	}
+	
+	/**
+	 * Returns the primary key columns of the given table
+	 */
+	private List<String> getPrimaryKey(String tableName) throws SQLException {
+		DatabaseMetaData meta = con.getMetaData();
+		String[] columns = new String[0];
+		ResultSet rs = meta.getPrimaryKeys(getDatabase(), null, tableName);
+
+		try {
+			while (rs.next()) {
+				if (rs.getShort("KEY_SEQ") > columns.length) {
+					columns = Arrays.copyOf(columns, rs.getShort("KEY_SEQ"));
+				}
+				columns[rs.getShort("KEY_SEQ") - 1] =
+						rs.getString("COLUMN_NAME");
+			}
+		} finally {
+			rs.close();
+		}
+		return Arrays.asList(columns);
+	}
+
+	/**
+	 * Diffs the written rows of the given table against its contents.
+	 * Stored rows without an identical written row are deleted, and written
+	 * rows without an identical stored row are inserted.
+	 * @return the number of rows added, removed and unchanged
+	 * @throws SQLException
+	 */
+	private int[] syncTable(String tableName, BatchRowWriter inserter)
+			throws SQLException {
+		String[] fields = tableFields.get(tableName);
+		List<String> fieldList = Arrays.asList(fields);
+		List<String> primaryKey = getPrimaryKey(tableName);
+		ArrayList<String> columns = new ArrayList<String>(primaryKey);
+		HashMap<List<String>, List<Object[]>> written =
+				new HashMap<List<String>, List<Object[]>>();
+		ArrayList<Object[]> deletes = new ArrayList<Object[]>();
+		List<Object[]> matches;
+		List<String> key;
+		int[] keyIndexes, fieldIndexes;
+		Object[] stored;
+		ResultSet rs;
+		Statement stmt;
+		int numAdded = 0, numUnchanged = 0;
+
+		if (primaryKey.isEmpty()) {
+			throw new SQLException("Table " + tableName + " has no primary " +
+					"key and can't be synchronized");
+		}
+		
+		/*
+		 * Key by the primary key if it is written, by the full row if not
+		 */
+		if (!fieldList.containsAll(primaryKey)) {
+			keyIndexes = new int[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				keyIndexes[i] = i;
+			}
+		} else {
+			keyIndexes = new int[primaryKey.size()];
+			for (int i = 0; i < keyIndexes.length; i++) {
+				keyIndexes[i] = fieldList.indexOf(primaryKey.get(i));
+			}
+		}
+		for (Object[] row : tableRows.get(tableName)) {
+			key = getKey(row, keyIndexes);
+			matches = written.get(key);
+			if (matches == null) {
+				matches = new ArrayList<Object[]>(1);
+				written.put(key, matches);
+			}
+			matches.add(row);
+		}
+
+		/*
+		 * Read the stored rows: primary key columns first, then any written
+		 * field that is not part of the primary key
+		 */
+		for (String field : fields) {
+			if (!columns.contains(field)) {
+				columns.add(field);
+			}
+		}
+		fieldIndexes = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			fieldIndexes[i] = columns.indexOf(fields[i]);
+		}
+		stmt = con.createStatement();
+		try {
+			rs = stmt.executeQuery("SELECT " + join(columns) + " FROM " +
+					tableName);
+			while (rs.next()) {
+				stored = new Object[columns.size()];
+				for (int i = 0; i < stored.length; i++) {
+					stored[i] = rs.getObject(i + 1);
+				}
+				if (!removeMatch(written, stored, fieldIndexes, keyIndexes)) {
+					deletes.add(Arrays.copyOf(stored, primaryKey.size()));
+				} else {
+					numUnchanged++;
+				}
+			}
+			rs.close();
+		} finally {
+			stmt.close();
+		}
+
+		delete(tableName, primaryKey, deletes);
+		for (List<Object[]> rows : written.values()) {
+			for (Object[] row : rows) {
+				inserter.write(tableName, fields, row);
+				numAdded++;
+			}
+		}
+		inserter.flush();
+		tableRows.put(tableName, null);
+		return new int[] {numAdded, deletes.size(), numUnchanged};
+	}
+
+	/**
+	 * Removes the written row identical to the given stored row, if any
+	 * @param written - the written rows that are not yet matched, by key
+	 * @param stored - the stored row
+	 * @param fieldIndexes - the index in the stored row of each written
+	 * field
+	 * @param keyIndexes - the indexes of the key fields in a written row
+	 * @return true if an identical written row was found
+	 */
+	private static boolean removeMatch(
+			Map<List<String>, List<Object[]>> written, Object[] stored,
+			int[] fieldIndexes, int[] keyIndexes) {
+		Object[] storedFields = new Object[fieldIndexes.length];
+		List<Object[]> matches;
+
+		for (int i = 0; i < fieldIndexes.length; i++) {
+			storedFields[i] = stored[fieldIndexes[i]];
+		}
+		matches = written.get(getKey(storedFields, keyIndexes));
+		if (matches == null) {
+			return false;
+		}
+		for (int i = 0; i < matches.size(); i++) {
+			if (getKey(matches.get(i), null).equals(
+					getKey(storedFields, null))) {
+				matches.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes the rows with the given primary keys
+	 */
+	private void delete(String tableName, List<String> primaryKey,
+			List<Object[]> keys) throws SQLException {
+		StringBuilder sql = new StringBuilder();
+		PreparedStatement ps;
+		int numPending = 0;
+
+		if (keys.isEmpty()) {
+			return;
+		}
+		sql.append("DELETE FROM ").append(tableName).append(" WHERE ");
+		for (int i = 0; i < primaryKey.size(); i++) {
+			sql.append(i > 0 ? " AND " : "").append(primaryKey.get(i));
+			sql.append(" = ?");
+		}
+		ps = con.prepareStatement(sql.toString());
+		try {
+			for (Object[] key : keys) {
+				for (int i = 0; i < key.length; i++) {
+					ps.setObject(i + 1, key[i]);
+				}
+				ps.addBatch();
+				if (++numPending >= batchSize) {
+					ps.executeBatch();
+					numPending = 0;
+				}
+			}
+			if (numPending > 0) {
+				ps.executeBatch();
+			}
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * Returns the given values of a row in a comparable form. Booleans are
+	 * compared as 1 and 0 and numbers by their decimal string, so values
+	 * read from the database match the written ones.
+	 * @param row - the row
+	 * @param indexes - the indexes of the values, or null for all values
+	 */
+	private static List<String> getKey(Object[] row, int[] indexes) {
+		int length = indexes == null ? row.length : indexes.length;
+		ArrayList<String> key = new ArrayList<String>(length);
+		Object value;
+
+		for (int i = 0; i < length; i++) {
+			value = row[indexes == null ? i : indexes[i]];
+			if (value instanceof Boolean) {
+				key.add((Boolean) value ? "1" : "0");
+			} else {
+				key.add(value == null ? null : value.toString());
+			}
+		}
+		return key;
+	}
+
+	private static String join(List<String> columns) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			out.append(i > 0 ? ", " : "").append(columns.get(i));
+		}
+		return out.toString();
+	}
+}
@@ -1,22 +1,37 @@
 package edu.berkeley.icsi.metanet.owl2sql;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLDataProperty;
 import org.semanticweb.owlapi.model.OWLDataPropertyExpression;
+import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLIndividual;
 import org.semanticweb.owlapi.model.OWLLiteral;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
@@ -24,36 +39,121 @@ import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
 import org.semanticweb.owlapi.model.OWLOntology;
 
+import edu.berkeley.icsi.metanet.owl2sql.BuildRejection.Category;
+
 public class TableBuilder {
-	private int numLogErrors, numBuildErrors;
-	private boolean loggingEnabled;
-	private BufferedWriter errorLogger;
+	private static final String[] CLASS_FIELDS = {"name"};
+	private static final String[] CLASS_REL_FIELDS = {"subclass", "superclass"};
+	private static final String[] CLASS_CLOSURE_FIELDS = {"ancestor", 
+		"descendant", "depth"};
+	private static final String[] IND_FIELDS = {"name", "class"};
+	private static final String[] OBJ_PROP_TYPE_FIELDS = {"name", 
+		"isFunctional", "isInverseFunctional", "isTransitive", "isSymmetric", 
+		"isAsymmetric", "isReflexive", "isIrreflexive"};
+	private static final String[] OBJ_PROP_DOMAIN_FIELDS = {"property", 
+		"domainClass"};
+	private static final String[] OBJ_PROP_RANGE_FIELDS = {"property", 
+		"rangeClass"};
+	private static final String[] OBJ_PROP_INST_FIELDS = {"domainClass", 
+		"domainIndividual", "property", "rangeClass", "rangeIndividual"};
+	private static final String[] OBJ_PROP_INV_FIELDS = {"property", 
+		"inverseProperty"};
+	private static final String[] DATA_PROP_TYPE_FIELDS = {"name", 
+		"isFunctional"};
+	private static final String[] OBJ_PROP_TYPE_COMPACT_FIELDS = {"name", 
+		"isFunctional", "isInverseFunctional", "isTransitive", "isSymmetric", 
+		"isAsymmetric", "isReflexive", "isIrreflexive", "isGlobalDomain", 
+		"isGlobalRange"};
+	private static final String[] DATA_PROP_TYPE_COMPACT_FIELDS = {"name", 
+		"isFunctional", "isGlobalDomain"};
+	private static final String[] DATA_PROP_DOMAIN_FIELDS = {"property", 
+		"domainClass"};
+	private static final String[] DATA_PROP_INST_FIELDS = {"domainClass", 
+		"domainIndividual", "property", "value"};
+	private static final String[] PROP_REL_FIELDS = {"subproperty", 
+		"superproperty", "isInferred"};
+	private static final String[] NAMESPACE_FIELDS = {"id", "iri"};
+	private static final String[] DICTIONARY_FIELDS = {"id", "namespace"};
+	
+	private static final int MAX_CHUNK_SIZE = 1000;
+	
+	private int numThreads;
+	private boolean loggingEnabled, constraintsDeferred, surrogateKeys, 
+			compactGlobals, syncing, dumping;
+	private List<TableSchema> tableSchemas;
+	private RejectionSink rejections;
+	private HashMap<OWLEntity, String> names;
 	private OWLOntology ont;
 	private Set<OWLOntology> ontClosure;
 	private Statement stmt;
+	private RowWriter writer;
+	private SyncRowWriter syncWriter;
+	private MultiRowInsertWriter.Sink schemaSink;
+	private Dialect dialect;
+	private ProgressReporter progress;
+	private BuildMetrics metrics;
+	private BuildEvents events;
+	private Object phaseEvent;
 	private HashMap<OWLObjectProperty, HashSet<OWLClass>> objPropDomains, 
 		objPropRanges;
 	private HashMap<OWLDataProperty, HashSet<OWLClass>>dataPropDomains;
+	private HierarchyIndex<OWLClass> classIndex;
+	private HierarchyIndex<OWLObjectProperty> objPropIndex;
+	private HierarchyIndex<OWLDataProperty> dataPropIndex;
+	private IndividualTypeIndex typeIndex;
+	private HashMap<String, Integer> namespaceIds;
+	private HashSet<OWLEntity> globalDomainProps, globalRangeProps;
+	private HashMap<OWLNamedIndividual, Integer> indIds;
+	private IndividualRecord.Source individualSource;
+	private BuildCheckpoint checkpoint;
+	private CheckpointRowWriter checkpointWriter;
 	private String logPath;
 	
 	/** 
 	 * Initializes the TableBuilder object
 	 * @throws FileNotFoundException 
 	 */
-	TableBuilder(OWLOntology ont, Statement stmt) {
+	TableBuilder(OWLOntology ont, Statement stmt, RowWriter writer) {
 		this.ont = ont;
 		this.stmt = stmt;
-		ontClosure = ont.getImports();
+		this.writer = writer;
+		ontClosure = ont.getImportsClosure();
 		loggingEnabled = false;
+		rejections = new RejectionSink();
+		constraintsDeferred = false;
+		surrogateKeys = false;
+		compactGlobals = false;
+		syncing = false;
+		schemaSink = new MultiRowInsertWriter.StatementSink(stmt);
+		dumping = false;
+		dialect = new MySQLDialect();
+		progress = new ProgressReporter();
+		events = BuildEvents.get();
+		numThreads = Runtime.getRuntime().availableProcessors();
+		globalDomainProps = new HashSet<OWLEntity>();
+		globalRangeProps = new HashSet<OWLEntity>();
+		namespaceIds = new HashMap<String, Integer>();
+		indIds = new HashMap<OWLNamedIndividual, Integer>();
 		objPropDomains = new HashMap<OWLObjectProperty, HashSet<OWLClass>>();
 		objPropRanges = new HashMap<OWLObjectProperty, HashSet<OWLClass>>();
 		dataPropDomains = new HashMap<OWLDataProperty, HashSet<OWLClass>>();
+		classIndex = HierarchyIndex.forClasses(
+				ont.getClassesInSignature(true), ontClosure);
+		objPropIndex = HierarchyIndex.forObjectProperties(
+				ont.getObjectPropertiesInSignature(true), ontClosure);
+		dataPropIndex = HierarchyIndex.forDataProperties(
+				ont.getDataPropertiesInSignature(true), ontClosure);
+		println("Indexed " + classIndex.size() + " classes, " + 
+				objPropIndex.size() + " object properties and " + 
+				dataPropIndex.size() + " data properties");
+		indexNames();
 		println("Initialized TableBuilder");
 		logPath = "";
 	}
 	
 	/**
-	 * Enables error logging to the given file during the table building process
+	 * Enables error logging to the given file during the table building 
+	 * process. Every rejected entry is written to the file as a line of JSON.
 	 * @param logFile - a File object representing the file to wish we wish to
 	 * write error logs
 	 * @throws IOException 
@@ -67,28 +167,294 @@ public class TableBuilder {
 		}
 		logFile.createNewFile();
 		println("New log file at " + logPath + " created");
-		errorLogger = new BufferedWriter(new FileWriter(logFile));
+		rejections.openLog(logFile);
 		loggingEnabled = true;
 		this.logPath = logPath;
 		println("Error logging enabled");
 	}
 	
 	/**
-	 * Outputs the given text to the error log if error logging is enabled. 
-	 * Otherwise, does nothing.
-	 * @param text
+	 * Defers all keys and foreign keys until after the data is loaded. The
+	 * data is loaded with foreign key and unique checks turned off, and the
+	 * build ends with a finalization phase that adds the keys, verifies 
+	 * referential integrity and analyzes the tables.
 	 */
-	protected void logError(String text) {
-		numBuildErrors++;
-		if (loggingEnabled) {
-			try {
-				errorLogger.write(text + "\n");
-			} catch (IOException e) {
-				numLogErrors++;
-			}
+	protected void enableDeferredConstraints() {
+		constraintsDeferred = true;
+		println("Deferred constraints enabled");
+	}
+	
+	/**
+	 * Gives classes, individuals and properties INT ids in their dictionary
+	 * tables and makes every other table reference those ids. The IRI
+	 * namespace of each entity is kept in the Namespace table, so entities
+	 * from different namespaces no longer collide on their fragments. The 
+	 * id-keyed tables are prefixed with Basics.SURROGATE_TABLE_PREFIX, and
+	 * views with the original table names expose the string-keyed shape.
+	 */
+	protected void enableSurrogateKeys() {
+		surrogateKeys = true;
+		println("Surrogate keys enabled");
+	}
+	
+	/**
+	 * Stores only the declared domain and range classes of each property. 
+	 * Properties without a declared domain or range are flagged with 
+	 * isGlobalDomain or isGlobalRange in their type table instead of being 
+	 * given a row for every class. The full domains and ranges are exposed 
+	 * by the ObjectPropertyDomainAll, ObjectPropertyRangeAll and 
+	 * DataPropertyDomainAll views.
+	 */
+	protected void enableCompactGlobals() {
+		compactGlobals = true;
+		println("Compact global domains and ranges enabled");
+	}
+	
+	/**
+	 * Builds into the tables of an existing database instead of creating 
+	 * them. The writer is expected to synchronize the tables with the 
+	 * written rows. Deferred constraints are ignored, since the tables 
+	 * already have their keys.
+	 * @param syncWriter - the writer the rows reach, which reports the 
+	 * number of rows it changed per table once it is closed
+	 */
+	protected void enableSync(SyncRowWriter syncWriter) {
+		syncing = true;
+		this.syncWriter = syncWriter;
+		println("Synchronizing with the existing database");
+	}
+	
+	/**
+	 * Sets the dialect the column types of the schema are taken from. The
+	 * default is MySQL.
+	 * @param dialect - the dialect of the target database
+	 */
+	protected void setDialect(Dialect dialect) {
+		this.dialect = dialect;
+		println("Building for " + dialect.getName());
+	}
+	
+	/**
+	 * Writes the DDL of the tables and views to the given sink instead of 
+	 * executing it, for a build that needs no server. The tables are not
+	 * verified once the rows are written.
+	 * @param schemaSink - the destination of the DDL
+	 */
+	protected void enableDump(MultiRowInsertWriter.Sink schemaSink) {
+		this.schemaSink = schemaSink;
+		dumping = true;
+		println("Dumping to files");
+	}
+	
+	/**
+	 * Writes every rejected entry to the BuildRejection table as well, so
+	 * the build errors can be queried
+	 */
+	protected void enableRejectionTable() {
+		rejections.enableTable();
+		println("Rejection table enabled");
+	}
+	
+	/**
+	 * Logs and stores at most the given number of rejected entries of every
+	 * category. The entries past the cap are still counted.
+	 */
+	protected void setRejectionCap(long cap) {
+		rejections.setCaps(cap);
+	}
+	
+	/**
+	 * Records the progress of the build in the given checkpoint, committing
+	 * the rows written so far at the end of every phase and every
+	 * Basics.CHECKPOINT_INTERVAL rows. If the checkpoint was loaded from an
+	 * interrupted build, the completed phases are skipped and the rows that
+	 * were already committed are not written again. The phases that write 
+	 * rows are still run, since later phases depend on what they extract.
+	 * @param checkpoint - the checkpoint, loaded or empty
+	 */
+	protected void enableCheckpoints(BuildCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+		checkpointWriter = new CheckpointRowWriter(writer, checkpoint);
+		writer = checkpointWriter;
+		println("Checkpoints enabled");
+	}
+	
+	/**
+	 * Records the duration of every phase of the build and the rows, bytes
+	 * and execute time of every table in the given metrics. Must be called
+	 * before checkpoints are enabled, so rows skipped on resume are not 
+	 * counted.
+	 * @param metrics - the metrics of the build
+	 */
+	protected void enableMetrics(BuildMetrics metrics) {
+		this.metrics = metrics;
+		writer = new MeteredRowWriter(writer, metrics);
+		println("Metrics enabled");
+	}
+	
+	/**
+	 * Sets the number of threads individuals are extracted on
+	 * @param numThreads - the number of threads, at least 1
+	 */
+	protected void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+		println("Extracting individuals on " + this.numThreads + " threads");
+	}
+	
+	/**
+	 * Reads the individuals from the given source instead of the ontology.
+	 * The ontology then only needs to contain the TBox.
+	 * @param individualSource - the source of the individuals
+	 */
+	protected void setIndividualSource(
+			IndividualRecord.Source individualSource) {
+		this.individualSource = individualSource;
+		println("Individuals are read from the input file directly");
+	}
+	
+	/**
+	 * Builds the SQL names of the indexed classes and properties. The names
+	 * are looked up in the innermost loops of the build, so each one is
+	 * built once; the table is only read after this and is shared by the
+	 * extraction threads. Individual names are built on every use, so the
+	 * table only grows with the TBox.
+	 */
+	private void indexNames() {
+		names = new HashMap<OWLEntity, String>((classIndex.size() + 
+				objPropIndex.size() + dataPropIndex.size()) * 4 / 3 + 16);
+		for (int i = 0; i < classIndex.size(); i++) {
+			names.put(classIndex.getEntity(i), 
+					Basics.getClassName(classIndex.getEntity(i)));
+		}
+		for (int i = 0; i < objPropIndex.size(); i++) {
+			names.put(objPropIndex.getEntity(i), 
+					Basics.getObjPropName(objPropIndex.getEntity(i)));
+		}
+		for (int i = 0; i < dataPropIndex.size(); i++) {
+			names.put(dataPropIndex.getEntity(i), 
+					Basics.getDataPropName(dataPropIndex.getEntity(i)));
 		}
 	}
 	
+	private String getClassName(OWLClass owlClass) {
+		String name = names.get(owlClass);
+		return name != null ? name : Basics.getClassName(owlClass);
+	}
+	
+	private String getObjPropName(OWLObjectProperty objProp) {
+		String name = names.get(objProp);
+		return name != null ? name : Basics.getObjPropName(objProp);
+	}
+	
+	private String getDataPropName(OWLDataProperty dataProp) {
+		String name = names.get(dataProp);
+		return name != null ? name : Basics.getDataPropName(dataProp);
+	}
+	
+	/**
+	 * Returns the name of the given table in the current schema mode
+	 */
+	private String table(String name) {
+		return surrogateKeys ? Basics.SURROGATE_TABLE_PREFIX + name : name;
+	}
+	
+	private Object classKey(OWLClass owlClass) {
+		return surrogateKeys ? (Object) (classIndex.getId(owlClass) + 1) :
+				getClassName(owlClass);
+	}
+	
+	private Object objPropKey(OWLObjectProperty objProp) {
+		return surrogateKeys ? (Object) (objPropIndex.getId(objProp) + 1) :
+				getObjPropName(objProp);
+	}
+	
+	private Object dataPropKey(OWLDataProperty dataProp) {
+		return surrogateKeys ? (Object) (dataPropIndex.getId(dataProp) + 1) :
+				getDataPropName(dataProp);
+	}
+	
+	private Object indKey(OWLNamedIndividual namedInd) {
+		return surrogateKeys ? (Object) indIds.get(namedInd) :
+				Basics.getIndName(namedInd);
+	}
+	
+	/**
+	 * Writes a row to one of the dictionary tables (Class, Individual, 
+	 * ObjectPropertyType and DataPropertyType). With surrogate keys, the 
+	 * row is prefixed with the entity's id and the id of its namespace, and
+	 * the namespace is written first if it is new.
+	 * @param out - the writer the row is written to
+	 * @param tableName - the unprefixed name of the table
+	 * @param fields - the fields of the string-keyed table, starting with 
+	 * the name
+	 * @param entity - the entity the row describes
+	 * @param values - the values of the fields, starting with the name
+	 * @throws SQLException
+	 */
+	private void writeDictionaryRow(RowWriter out, String tableName, 
+			String[] fields, OWLEntity entity, Object... values) 
+			throws SQLException {
+		String[] dictFields;
+		Object[] dictValues;
+		
+		if (!surrogateKeys) {
+			out.write(tableName, fields, values);
+			return;
+		}
+		dictFields = new String[fields.length + 2];
+		dictValues = new Object[values.length + 2];
+		System.arraycopy(DICTIONARY_FIELDS, 0, dictFields, 0, 2);
+		System.arraycopy(fields, 0, dictFields, 2, fields.length);
+		if (entity instanceof OWLClass) {
+			dictValues[0] = classKey((OWLClass) entity);
+		} else if (entity instanceof OWLObjectProperty) {
+			dictValues[0] = objPropKey((OWLObjectProperty) entity);
+		} else if (entity instanceof OWLDataProperty) {
+			dictValues[0] = dataPropKey((OWLDataProperty) entity);
+		} else {
+			dictValues[0] = indKey((OWLNamedIndividual) entity);
+		}
+		dictValues[1] = getNamespaceKey(entity, out);
+		System.arraycopy(values, 0, dictValues, 2, values.length);
+		out.write(table(tableName), dictFields, dictValues);
+	}
+	
+	/**
+	 * Returns the id of the given entity's namespace. If the namespace is 
+	 * new, it is given the next id and written to the Namespace table.
+	 * @param entity - the entity
+	 * @param out - the writer new namespaces are written to
+	 * @throws SQLException
+	 */
+	private Integer getNamespaceKey(OWLEntity entity, RowWriter out) 
+			throws SQLException {
+		String namespace = entity.getIRI().getStart();
+		Integer namespaceId = namespaceIds.get(namespace);
+		if (namespaceId == null) {
+			namespaceId = namespaceIds.size() + 1;
+			namespaceIds.put(namespace, namespaceId);
+			out.write("Namespace", NAMESPACE_FIELDS, namespaceId, namespace);
+		}
+		return namespaceId;
+	}
+	
+	/**
+	 * Reports an entry that can't be inserted. It is counted, and logged
+	 * and stored if those are enabled. Safe to call from the extraction 
+	 * threads.
+	 * @param category - why the entry is rejected
+	 * @param table - the table the entry can't be inserted into
+	 * @param entity - the name of the rejected individual or property
+	 * @param property - the name of the property of the rejected 
+	 * assertion, or null
+	 * @param text - the message describing the rejection
+	 */
+	protected void logError(BuildRejection.Category category, String table,
+			String entity, String property, String text) {
+		rejections.reject(new BuildRejection(category, table, entity, 
+				property, text));
+	}
+	
 	/**
 	 * Prints empty string
 	 */
@@ -113,160 +479,683 @@ public class TableBuilder {
 	}
 	
 	/**
-	 * Initializes the tables of the SQL schema
+	 * Returns the tables of the SQL schema, in the order they must be created
+	 */
+	protected List<TableSchema> getTableSchemas() {
+		String datatype = dialect.getTextType();
+		List<TableSchema> tables = new ArrayList<TableSchema>();
+		TableSchema table;
+		
+		if (surrogateKeys) {
+			return getSurrogateTableSchemas();
+		}
+		
+		table = new TableSchema("Class");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.setPrimaryKey("name");
+		tables.add(table);
+		
+		table = new TableSchema("ClassRelationship");
+		table.addColumn("subclass " + datatype + " NOT NULL");
+		table.addColumn("superclass " + datatype + " NOT NULL");
+		table.setPrimaryKey("subclass, superclass");
+		table.addForeignKey("subclass", "Class", "name");
+		table.addForeignKey("superclass", "Class", "name");
+		tables.add(table);
+		
+		/*
+		 * The primary key finds the descendants of a class and the unique 
+		 * key its ancestors
+		 */
+		table = new TableSchema("ClassClosure");
+		table.addColumn("ancestor " + datatype + " NOT NULL");
+		table.addColumn("descendant " + datatype + " NOT NULL");
+		table.addColumn("depth INT NOT NULL");
+		table.setPrimaryKey("ancestor, descendant");
+		table.addUniqueKey("descendant, ancestor");
+		table.addForeignKey("ancestor", "Class", "name");
+		table.addForeignKey("descendant", "Class", "name");
+		tables.add(table);
+		
+		table = new TableSchema("Individual");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.addColumn("class " + datatype + " NOT NULL");
+		table.setPrimaryKey("name, class");
+		table.addForeignKey("class", "Class", "name");
+		tables.add(table);
+		
+		table = new TableSchema("ObjectPropertyType");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.addColumn("isFunctional BOOLEAN NOT NULL");
+		table.addColumn("isInverseFunctional BOOLEAN NOT NULL");
+		table.addColumn("isSymmetric BOOLEAN NOT NULL");
+		table.addColumn("isAsymmetric BOOLEAN NOT NULL");
+		table.addColumn("isTransitive BOOLEAN NOT NULL");
+		table.addColumn("isReflexive BOOLEAN NOT NULL");
+		table.addColumn("isIrreflexive BOOLEAN NOT NULL");
+		addDomainRangeSchema(table, "ObjectPropertyType");
+		table.setPrimaryKey("name");
+		tables.add(table);
+		
+		table = new TableSchema("ObjectPropertyDomain");
+		table.addColumn("domainClass " + datatype + " NOT NULL");
+		table.addColumn("property " + datatype + " NOT NULL");
+		table.setPrimaryKey("property, domainClass");
+		table.addForeignKey("property", "ObjectPropertyType", "name");
+		table.addForeignKey("domainClass", "Class", "name");
+		tables.add(table);
+		
+		table = new TableSchema("ObjectPropertyRange");
+		table.addColumn("property " + datatype + " NOT NULL");
+		table.addColumn("rangeClass " + datatype + " NOT NULL");
+		table.setPrimaryKey("property, rangeClass");
+		table.addForeignKey("property", "ObjectPropertyType", "name");
+		table.addForeignKey("rangeClass", "Class", "name");
+		tables.add(table);
+		
+		table = new TableSchema("ObjectPropertyInstance");
+		table.addColumn("domainClass " + datatype + " NOT NULL");
+		table.addColumn("domainIndividual " + datatype + " NOT NULL");
+		table.addColumn("property " + datatype + " NOT NULL");
+		table.addColumn("rangeClass " + datatype + " NOT NULL");
+		table.addColumn("rangeIndividual " + datatype + " NOT NULL");
+		table.setPrimaryKey("domainIndividual, domainClass, rangeIndividual, " +
+				"rangeClass, property");
+		table.addForeignKey("domainIndividual, domainClass", "Individual", 
+				"name, class");
+		table.addForeignKey("rangeIndividual, rangeClass", "Individual", 
+				"name, class");
+		addDomainRangeSchema(table, "ObjectPropertyInstance");
+		tables.add(table);
+		
+		table = new TableSchema("ObjectPropertyRelationship");
+		table.addColumn("subproperty " + datatype + " NOT NULL");
+		table.addColumn("superproperty " + datatype + " NOT NULL");
+		table.addColumn("isInferred BOOLEAN DEFAULT false");
+		table.setPrimaryKey("subproperty, superproperty");
+		table.addForeignKey("subproperty", "ObjectPropertyType", "name");
+		table.addForeignKey("superproperty", "ObjectPropertyType", "name");
+		tables.add(table);
+		
+		table = new TableSchema("ObjectPropertyInverse");
+		table.addColumn("property " + datatype);
+		table.addColumn("inverseProperty " + datatype);
+		table.setPrimaryKey("property, inverseProperty");
+		table.addForeignKey("property", "ObjectPropertyType", "name");
+		table.addForeignKey("inverseProperty", "ObjectPropertyType", "name");
+		tables.add(table);
+		
+		table = new TableSchema("DataPropertyType");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.addColumn("isFunctional BOOLEAN NOT NULL");
+		addDomainRangeSchema(table, "DataPropertyType");
+		table.setPrimaryKey("name");
+		tables.add(table);
+		
+		table = new TableSchema("DataPropertyDomain");
+		table.addColumn("domainClass " + datatype + " NOT NULL");
+		table.addColumn("property " + datatype + " NOT NULL");
+		table.setPrimaryKey("property, domainClass");
+		table.addForeignKey("property", "DataPropertyType", "name");
+		table.addForeignKey("domainClass", "Class", "name");
+		tables.add(table);
+		
+		table = new TableSchema("DataPropertyRelationship");
+		table.addColumn("subproperty " + datatype + " NOT NULL");
+		table.addColumn("superproperty " + datatype + " NOT NULL");
+		table.addColumn("isInferred BOOLEAN DEFAULT false");
+		table.setPrimaryKey("subproperty, superproperty");
+		table.addForeignKey("subproperty", "DataPropertyType", "name");
+		table.addForeignKey("superproperty", "DataPropertyType", "name");
+		tables.add(table);
+		
+		table = new TableSchema("DataPropertyInstance");
+		table.addColumn("id " + dialect.getAutoIncrementType());
+		table.addColumn("domainClass " + datatype + " NOT NULL");
+		table.addColumn("domainIndividual " + datatype + " NOT NULL");
+		table.addColumn("property " + datatype + " NOT NULL");
+		table.addColumn("value TEXT NOT NULL");
+		table.setRequiredPrimaryKey("id");
+		table.addForeignKey("domainIndividual, domainClass", "Individual", 
+				"name, class");
+		addDomainRangeSchema(table, "DataPropertyInstance");
+		tables.add(table);
+		
+		addRejectionSchema(tables);
+		return tables;
+	}
+	
+	/**
+	 * Adds the BuildRejection table to the given tables if it is enabled.
+	 * Its rows reference no other rows, so it is the same in both schemas.
+	 */
+	private void addRejectionSchema(List<TableSchema> tables) {
+		String datatype = dialect.getTextType();
+		TableSchema table;
+		
+		if (!rejections.isTableEnabled()) {
+			return;
+		}
+		table = new TableSchema(RejectionSink.TABLE_NAME);
+		table.addColumn("id " + dialect.getAutoIncrementType());
+		table.addColumn("category " + datatype + " NOT NULL");
+		table.addColumn("targetTable " + datatype + " NOT NULL");
+		table.addColumn("entity " + datatype + " NOT NULL");
+		table.addColumn("property " + datatype);
+		table.addColumn("reason TEXT NOT NULL");
+		table.setRequiredPrimaryKey("id");
+		tables.add(table);
+	}
+	
+	/**
+	 * Returns the tables of the surrogate-key SQL schema, in the order they
+	 * must be created
+	 */
+	protected List<TableSchema> getSurrogateTableSchemas() {
+		String datatype = dialect.getTextType();
+		String key = Basics.SURROGATE_KEY_DATATYPE;
+		List<TableSchema> tables = new ArrayList<TableSchema>();
+		TableSchema table;
+		
+		table = new TableSchema("Namespace");
+		table.addColumn("id " + key + " NOT NULL");
+		table.addColumn("iri " + datatype + " NOT NULL");
+		table.setPrimaryKey("id");
+		table.addUniqueKey("iri");
+		tables.add(table);
+		
+		table = new TableSchema(table("Class"));
+		table.addColumn("id " + key + " NOT NULL");
+		table.addColumn("namespace " + key + " NOT NULL");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.setPrimaryKey("id");
+		table.addUniqueKey("namespace, name");
+		table.addForeignKey("namespace", "Namespace", "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("ClassRelationship"));
+		table.addColumn("subclass " + key + " NOT NULL");
+		table.addColumn("superclass " + key + " NOT NULL");
+		table.setPrimaryKey("subclass, superclass");
+		table.addForeignKey("subclass", table("Class"), "id");
+		table.addForeignKey("superclass", table("Class"), "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("ClassClosure"));
+		table.addColumn("ancestor " + key + " NOT NULL");
+		table.addColumn("descendant " + key + " NOT NULL");
+		table.addColumn("depth INT NOT NULL");
+		table.setPrimaryKey("ancestor, descendant");
+		table.addUniqueKey("descendant, ancestor");
+		table.addForeignKey("ancestor", table("Class"), "id");
+		table.addForeignKey("descendant", table("Class"), "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("Individual"));
+		table.addColumn("id " + key + " NOT NULL");
+		table.addColumn("namespace " + key + " NOT NULL");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.addColumn("class " + key + " NOT NULL");
+		table.setPrimaryKey("id");
+		table.addUniqueKey("namespace, name");
+		table.addForeignKey("namespace", "Namespace", "id");
+		table.addForeignKey("class", table("Class"), "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("ObjectPropertyType"));
+		table.addColumn("id " + key + " NOT NULL");
+		table.addColumn("namespace " + key + " NOT NULL");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.addColumn("isFunctional BOOLEAN NOT NULL");
+		table.addColumn("isInverseFunctional BOOLEAN NOT NULL");
+		table.addColumn("isSymmetric BOOLEAN NOT NULL");
+		table.addColumn("isAsymmetric BOOLEAN NOT NULL");
+		table.addColumn("isTransitive BOOLEAN NOT NULL");
+		table.addColumn("isReflexive BOOLEAN NOT NULL");
+		table.addColumn("isIrreflexive BOOLEAN NOT NULL");
+		addDomainRangeSchema(table, "ObjectPropertyType");
+		table.setPrimaryKey("id");
+		table.addUniqueKey("namespace, name");
+		table.addForeignKey("namespace", "Namespace", "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("ObjectPropertyDomain"));
+		table.addColumn("domainClass " + key + " NOT NULL");
+		table.addColumn("property " + key + " NOT NULL");
+		table.setPrimaryKey("property, domainClass");
+		table.addForeignKey("property", table("ObjectPropertyType"), "id");
+		table.addForeignKey("domainClass", table("Class"), "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("ObjectPropertyRange"));
+		table.addColumn("property " + key + " NOT NULL");
+		table.addColumn("rangeClass " + key + " NOT NULL");
+		table.setPrimaryKey("property, rangeClass");
+		table.addForeignKey("property", table("ObjectPropertyType"), "id");
+		table.addForeignKey("rangeClass", table("Class"), "id");
+		tables.add(table);
+		
+		/*
+		 * Every individual has exactly one class, so the class columns only
+		 * serve the domain and range foreign keys.
+		 */
+		table = new TableSchema(table("ObjectPropertyInstance"));
+		table.addColumn("domainClass " + key + " NOT NULL");
+		table.addColumn("domainIndividual " + key + " NOT NULL");
+		table.addColumn("property " + key + " NOT NULL");
+		table.addColumn("rangeClass " + key + " NOT NULL");
+		table.addColumn("rangeIndividual " + key + " NOT NULL");
+		table.setPrimaryKey("domainIndividual, rangeIndividual, property");
+		table.addForeignKey("domainIndividual", table("Individual"), "id");
+		table.addForeignKey("rangeIndividual", table("Individual"), "id");
+		addDomainRangeSchema(table, "ObjectPropertyInstance");
+		tables.add(table);
+		
+		table = new TableSchema(table("ObjectPropertyRelationship"));
+		table.addColumn("subproperty " + key + " NOT NULL");
+		table.addColumn("superproperty " + key + " NOT NULL");
+		table.addColumn("isInferred BOOLEAN DEFAULT false");
+		table.setPrimaryKey("subproperty, superproperty");
+		table.addForeignKey("subproperty", table("ObjectPropertyType"), "id");
+		table.addForeignKey("superproperty", table("ObjectPropertyType"), 
+				"id");
+		tables.add(table);
+		
+		table = new TableSchema(table("ObjectPropertyInverse"));
+		table.addColumn("property " + key + " NOT NULL");
+		table.addColumn("inverseProperty " + key + " NOT NULL");
+		table.setPrimaryKey("property, inverseProperty");
+		table.addForeignKey("property", table("ObjectPropertyType"), "id");
+		table.addForeignKey("inverseProperty", table("ObjectPropertyType"), 
+				"id");
+		tables.add(table);
+		
+		table = new TableSchema(table("DataPropertyType"));
+		table.addColumn("id " + key + " NOT NULL");
+		table.addColumn("namespace " + key + " NOT NULL");
+		table.addColumn("name " + datatype + " NOT NULL");
+		table.addColumn("isFunctional BOOLEAN NOT NULL");
+		addDomainRangeSchema(table, "DataPropertyType");
+		table.setPrimaryKey("id");
+		table.addUniqueKey("namespace, name");
+		table.addForeignKey("namespace", "Namespace", "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("DataPropertyDomain"));
+		table.addColumn("domainClass " + key + " NOT NULL");
+		table.addColumn("property " + key + " NOT NULL");
+		table.setPrimaryKey("property, domainClass");
+		table.addForeignKey("property", table("DataPropertyType"), "id");
+		table.addForeignKey("domainClass", table("Class"), "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("DataPropertyRelationship"));
+		table.addColumn("subproperty " + key + " NOT NULL");
+		table.addColumn("superproperty " + key + " NOT NULL");
+		table.addColumn("isInferred BOOLEAN DEFAULT false");
+		table.setPrimaryKey("subproperty, superproperty");
+		table.addForeignKey("subproperty", table("DataPropertyType"), "id");
+		table.addForeignKey("superproperty", table("DataPropertyType"), "id");
+		tables.add(table);
+		
+		table = new TableSchema(table("DataPropertyInstance"));
+		table.addColumn("id " + dialect.getAutoIncrementType());
+		table.addColumn("domainClass " + key + " NOT NULL");
+		table.addColumn("domainIndividual " + key + " NOT NULL");
+		table.addColumn("property " + key + " NOT NULL");
+		table.addColumn("value TEXT NOT NULL");
+		table.setRequiredPrimaryKey("id");
+		table.addForeignKey("domainIndividual", table("Individual"), "id");
+		addDomainRangeSchema(table, "DataPropertyInstance");
+		tables.add(table);
+		
+		addRejectionSchema(tables);
+		return tables;
+	}
+	
+	/**
+	 * Returns the CREATE VIEW statements of every view of the schema in the
+	 * current schema mode, in the order they must be created
+	 */
+	protected List<String> getViewStrings() {
+		List<String> views = new ArrayList<String>();
+		if (compactGlobals) {
+			views.addAll(getExpandedViewStrings());
+		}
+		if (surrogateKeys) {
+			views.addAll(getCompatibilityViewStrings());
+		}
+		return views;
+	}
+	
+	/**
+	 * Returns the CREATE VIEW statements that expose the surrogate-key 
+	 * tables under the original table names and in the original string-keyed
+	 * shape. Each column is either copied from the id-keyed table or, if it
+	 * holds an id, replaced by the name from the referenced dictionary table.
+	 * With compact global domains and ranges, the domain and range views 
+	 * are expanded.
+	 */
+	protected List<String> getCompatibilityViewStrings() {
+		String c = table("Class");
+		String i = table("Individual");
+		String o = table("ObjectPropertyType");
+		String d = table("DataPropertyType");
+		String all = compactGlobals ? "All" : "";
+		List<String> views = new ArrayList<String>();
+		
+		views.add(getViewString("Class", c, "name", null));
+		views.add(getViewString("ClassRelationship", 
+				table("ClassRelationship"), "subclass", c, "superclass", c));
+		views.add(getViewString("ClassClosure", table("ClassClosure"), 
+				"ancestor", c, "descendant", c, "depth", null));
+		views.add(getViewString("Individual", i, "name", null, "class", c));
+		if (compactGlobals) {
+			views.add(getViewString("ObjectPropertyType", o, "name", null, 
+					"isFunctional", null, "isInverseFunctional", null, 
+					"isSymmetric", null, "isAsymmetric", null, 
+					"isTransitive", null, "isReflexive", null, 
+					"isIrreflexive", null, "isGlobalDomain", null, 
+					"isGlobalRange", null));
+		} else {
+			views.add(getViewString("ObjectPropertyType", o, "name", null, 
+					"isFunctional", null, "isInverseFunctional", null, 
+					"isSymmetric", null, "isAsymmetric", null, 
+					"isTransitive", null, "isReflexive", null, 
+					"isIrreflexive", null));
+		}
+		views.add(getViewString("ObjectPropertyDomain", 
+				table("ObjectPropertyDomain") + all, "domainClass", c, 
+				"property", o));
+		views.add(getViewString("ObjectPropertyRange", 
+				table("ObjectPropertyRange") + all, "property", o, 
+				"rangeClass", c));
+		views.add(getViewString("ObjectPropertyInstance", 
+				table("ObjectPropertyInstance"), "domainClass", c, 
+				"domainIndividual", i, "property", o, "rangeClass", c, 
+				"rangeIndividual", i));
+		views.add(getViewString("ObjectPropertyRelationship", 
+				table("ObjectPropertyRelationship"), "subproperty", o, 
+				"superproperty", o, "isInferred", null));
+		views.add(getViewString("ObjectPropertyInverse", 
+				table("ObjectPropertyInverse"), "property", o, 
+				"inverseProperty", o));
+		if (compactGlobals) {
+			views.add(getViewString("DataPropertyType", d, "name", null, 
+					"isFunctional", null, "isGlobalDomain", null));
+		} else {
+			views.add(getViewString("DataPropertyType", d, "name", null, 
+					"isFunctional", null));
+		}
+		views.add(getViewString("DataPropertyDomain", 
+				table("DataPropertyDomain") + all, "domainClass", c, 
+				"property", d));
+		views.add(getViewString("DataPropertyRelationship", 
+				table("DataPropertyRelationship"), "subproperty", d, 
+				"superproperty", d, "isInferred", null));
+		views.add(getViewString("DataPropertyInstance", 
+				table("DataPropertyInstance"), "id", null, "domainClass", c,
+				"domainIndividual", i, "property", d, "value", null));
+		return views;
+	}
+	
+	/**
+	 * Returns the CREATE VIEW statements of the ObjectPropertyDomainAll, 
+	 * ObjectPropertyRangeAll and DataPropertyDomainAll views, which expand
+	 * global domains and ranges to every class. Only used with compact 
+	 * global domains and ranges.
+	 */
+	protected List<String> getExpandedViewStrings() {
+		List<String> views = new ArrayList<String>();
+		String key = surrogateKeys ? "id" : "name";
+		
+		views.add("CREATE VIEW " + table("ObjectPropertyDomain") + "All AS " +
+				"SELECT domainClass, property FROM " + 
+				table("ObjectPropertyDomain") + " UNION ALL " +
+				"SELECT c." + key + ", p." + key + " FROM " + 
+				table("ObjectPropertyType") + " p JOIN " + table("Class") + 
+				" c ON p.isGlobalDomain");
+		views.add("CREATE VIEW " + table("ObjectPropertyRange") + "All AS " +
+				"SELECT property, rangeClass FROM " + 
+				table("ObjectPropertyRange") + " UNION ALL " +
+				"SELECT p." + key + ", c." + key + " FROM " + 
+				table("ObjectPropertyType") + " p JOIN " + table("Class") + 
+				" c ON p.isGlobalRange");
+		views.add("CREATE VIEW " + table("DataPropertyDomain") + "All AS " +
+				"SELECT domainClass, property FROM " + 
+				table("DataPropertyDomain") + " UNION ALL " +
+				"SELECT c." + key + ", p." + key + " FROM " + 
+				table("DataPropertyType") + " p JOIN " + table("Class") + 
+				" c ON p.isGlobalDomain");
+		return views;
+	}
+	
+	/**
+	 * Adds the columns, foreign keys and checks that depend on how global
+	 * domains and ranges are stored to the given type or instance table. 
+	 * Without compact globals, instances reference the domain and range 
+	 * tables directly. With compact globals, they only reference the 
+	 * property, and a check verifies that each instance is either in a 
+	 * stored domain or range or belongs to a global property.
+	 * @param table - the ObjectPropertyType, DataPropertyType, 
+	 * ObjectPropertyInstance or DataPropertyInstance table
+	 * @param tableName - the unprefixed name of the table
+	 */
+	private void addDomainRangeSchema(TableSchema table, String tableName) {
+		String key = surrogateKeys ? "id" : "name";
+		String objType = table("ObjectPropertyType");
+		String dataType = table("DataPropertyType");
+		
+		if (tableName.equals("ObjectPropertyType") && compactGlobals) {
+			table.addColumn("isGlobalDomain BOOLEAN NOT NULL DEFAULT false");
+			table.addColumn("isGlobalRange BOOLEAN NOT NULL DEFAULT false");
+		} else if (tableName.equals("DataPropertyType") && compactGlobals) {
+			table.addColumn("isGlobalDomain BOOLEAN NOT NULL DEFAULT false");
+		} else if (tableName.equals("ObjectPropertyInstance") && 
+				!compactGlobals) {
+			table.addForeignKey("property, domainClass", 
+					table("ObjectPropertyDomain"), "property, domainClass");
+			table.addForeignKey("property, rangeClass", 
+					table("ObjectPropertyRange"), "property, rangeClass");
+		} else if (tableName.equals("ObjectPropertyInstance")) {
+			table.addForeignKey("property", objType, key);
+			table.addIntegrityCheck(getCompactCheckString(table.getName(), 
+					"domainClass", table("ObjectPropertyDomain"), objType, 
+					"isGlobalDomain"), "rows of " + table.getName() + 
+					" are outside the domain of their property");
+			table.addIntegrityCheck(getCompactCheckString(table.getName(), 
+					"rangeClass", table("ObjectPropertyRange"), objType, 
+					"isGlobalRange"), "rows of " + table.getName() + 
+					" are outside the range of their property");
+		} else if (tableName.equals("DataPropertyInstance") && 
+				!compactGlobals) {
+			table.addForeignKey("property, domainClass", 
+					table("DataPropertyDomain"), "property, domainClass");
+		} else if (tableName.equals("DataPropertyInstance")) {
+			table.addForeignKey("property", dataType, key);
+			table.addIntegrityCheck(getCompactCheckString(table.getName(), 
+					"domainClass", table("DataPropertyDomain"), dataType, 
+					"isGlobalDomain"), "rows of " + table.getName() + 
+					" are outside the domain of their property");
+		}
+	}
+	
+	/**
+	 * Returns a query counting the rows of the given instance table whose
+	 * class is neither stored in the given domain or range table nor 
+	 * covered by a global domain or range flag
+	 */
+	private String getCompactCheckString(String instTable, String classColumn, 
+			String domainTable, String typeTable, String globalFlag) {
+		return "SELECT COUNT(*) FROM " + instTable + " b WHERE NOT EXISTS (" +
+				"SELECT * FROM " + domainTable + " d WHERE d.property = " +
+				"b.property AND d." + classColumn + " = b." + classColumn + 
+				") AND NOT EXISTS (SELECT * FROM " + typeTable + 
+				" p WHERE p." + (surrogateKeys ? "id" : "name") + 
+				" = b.property AND p." + 
+				globalFlag + ")";
+	}
+	
+	/**
+	 * Returns a CREATE VIEW statement over the given id-keyed table
+	 * @param viewName - name of the view
+	 * @param baseTable - name of the id-keyed table
+	 * @param columns - pairs of column name and the dictionary table the 
+	 * column's id refers to, or null if the column is copied as is
+	 */
+	private static String getViewString(String viewName, String baseTable, 
+			String... columns) {
+		StringBuilder select = new StringBuilder();
+		StringBuilder from = new StringBuilder();
+		String alias;
+		
+		from.append(" FROM ").append(baseTable).append(" b");
+		for (int k = 0; k < columns.length; k += 2) {
+			if (k > 0) {
+				select.append(", ");
+			}
+			if (columns[k + 1] == null) {
+				select.append("b.").append(columns[k]);
+			} else {
+				alias = "t" + k / 2;
+				select.append(alias).append(".name AS ").append(columns[k]);
+				from.append(" JOIN ").append(columns[k + 1]).append(" ")
+						.append(alias).append(" ON ").append(alias)
+						.append(".id = b.").append(columns[k]);
+			}
+		}
+		return "CREATE VIEW " + viewName + " AS SELECT " + select + from;
+	}
+	
+	/**
+	 * Initializes the tables of the SQL schema. If constraints are deferred,
+	 * the tables are created without their keys and foreign key and unique 
+	 * checks are turned off for the rest of the session until 
+	 * finalizeTables() is called. When synchronizing or resuming, the 
+	 * tables already exist and are left as they are.
 	 * @throws SQLException
 	 */
 	protected void initializeTables() throws SQLException {
-		String datatype = Basics.DEFAULT_SQL_DATATYPE;
-		
 		println("Initializing SQL tables");
 		
-		stmt.execute(
-				"CREATE TABLE Class (" +
-				"name " + datatype + " NOT NULL," +
-				"PRIMARY KEY (name))"
-				);
-		
-		stmt.execute(
-				"CREATE TABLE ClassRelationship (" +
-				"subclass " + datatype + " NOT NULL," +
-				"superclass " + datatype + " NOT NULL," +
-				"PRIMARY KEY (subclass, superclass), " +
-				"FOREIGN KEY (subclass) REFERENCES Class(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (superclass) REFERENCES Class(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		
-		stmt.execute(
-				"CREATE TABLE Individual (" +
-				"name " + datatype + " NOT NULL," +
-				"class " + datatype + " NOT NULL," +
-				"PRIMARY KEY (name, class)," +
-				"FOREIGN KEY (class) REFERENCES Class(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		
-		stmt.execute(
-				"CREATE TABLE ObjectPropertyType (" +
-				"name " + datatype + " NOT NULL, " +
-				"isFunctional BOOLEAN NOT NULL, " +
-				"isInverseFunctional BOOLEAN NOT NULL, " +
-				"isSymmetric BOOLEAN NOT NULL," +
-				"isAsymmetric BOOLEAN NOT NULL, " +
-				"isTransitive BOOLEAN NOT NULL," +
-				"isReflexive BOOLEAN NOT NULL, " +
-				"isIrreflexive BOOLEAN NOT NULL, " +
-				"PRIMARY KEY (name))"
-				);
-		stmt.execute(
-				"CREATE TABLE ObjectPropertyDomain (" +
-				"domainClass " + datatype + " NOT NULL, " +
-				"property " + datatype + " NOT NULL, " +
-				"PRIMARY KEY (property, domainClass), " +
-				"FOREIGN KEY (property) " +
-					"REFERENCES ObjectPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (domainClass) REFERENCES Class(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE )"
-				);
-		stmt.execute(
-				"CREATE TABLE ObjectPropertyRange (" +
-				"property " + datatype + " NOT NULL, " +
-				"rangeClass " + datatype + " NOT NULL, " +
-				"PRIMARY KEY (property, rangeClass), " +
-				"FOREIGN KEY (property) " +
-					"REFERENCES ObjectPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (rangeClass) REFERENCES Class(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		stmt.execute(
-				"CREATE TABLE ObjectPropertyInstance (" +
-				"domainClass " + datatype + " NOT NULL," +
-				"domainIndividual " + datatype + " NOT NULL," +
-				"property " + datatype + " NOT NULL," +
-				"rangeClass " + datatype + " NOT NULL," +
-				"rangeIndividual " + datatype + " NOT NULL," +
-				"PRIMARY KEY (domainIndividual, domainClass, rangeIndividual," +
-					"rangeClass, property)," +
-				"FOREIGN KEY (domainIndividual, domainClass) REFERENCES " +
-					"Individual(name, class) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (rangeIndividual, rangeClass) REFERENCES " +
-					"Individual(name, class) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (property, domainClass) " +
-					"REFERENCES ObjectPropertyDomain(property, domainClass) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (property, rangeClass) " +
-					"REFERENCES ObjectPropertyRange(property, rangeClass) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		stmt.execute(
-				"CREATE TABLE ObjectPropertyRelationship (" +
-				"subproperty " + datatype + " NOT NULL, " +
-				"superproperty " + datatype + " NOT NULL, " +
-				"isInferred BOOLEAN DEFAULT false, " +
-				"PRIMARY KEY (subproperty, superproperty), " +
-				"FOREIGN KEY (subproperty) REFERENCES ObjectPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (superproperty) REFERENCES ObjectPropertyType(name)" +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		stmt.execute(
-				"CREATE TABLE ObjectPropertyInverse (" +
-				"property " + datatype + ", " +
-				"inverseProperty " + datatype + ", " +
-				"PRIMARY KEY (property, inverseProperty), " +
-				"FOREIGN KEY (property) REFERENCES ObjectPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (inverseProperty) REFERENCES ObjectPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		stmt.execute(
-				"CREATE TABLE DataPropertyType (" +
-				"name " + datatype + " NOT NULL," +
-				"isFunctional BOOLEAN NOT NULL, " + 
-				"PRIMARY KEY (name))"
-				);
-		stmt.execute(
-				"CREATE TABLE DataPropertyDomain (" +
-				"domainClass " + datatype + " NOT NULL, " +
-				"property " + datatype + " NOT NULL, " +
-				"PRIMARY KEY (property, domainClass), " +
-				"FOREIGN KEY (property) " +
-					"REFERENCES DataPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (domainClass) REFERENCES Class(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		stmt.execute(
-				"CREATE TABLE DataPropertyRelationship (" +
-				"subproperty " + datatype + " NOT NULL, " +
-				"superproperty " + datatype + " NOT NULL, " +
-				"isInferred BOOLEAN DEFAULT false, " +
-				"PRIMARY KEY (subproperty, superproperty), " +
-				"FOREIGN KEY (subproperty) REFERENCES DataPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (superproperty) REFERENCES DataPropertyType(name) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
-		stmt.execute(
-				"CREATE TABLE DataPropertyInstance (" +
-				"id BIGINT NOT NULL AUTO_INCREMENT, " +
-				"domainClass " + datatype + " NOT NULL," +
-				"domainIndividual " + datatype + " NOT NULL," +
-				"property " + datatype + " NOT NULL," +
-				"value TEXT NOT NULL, " +
-				"PRIMARY KEY (id), " +
-				"FOREIGN KEY (domainIndividual, domainClass) " +
-					"REFERENCES Individual(name, class) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE, " +
-				"FOREIGN KEY (property, domainClass) " +
-					"REFERENCES DataPropertyDomain(property, domainClass) " +
-					"ON DELETE CASCADE ON UPDATE CASCADE)"
-				);
+		tableSchemas = getTableSchemas();
+		if (syncing) {
+			return;
+		}
+		if (!isCompleted("initialize")) {
+			for (TableSchema table : tableSchemas) {
+				schemaSink.execute(table.getCreateString(
+						!constraintsDeferred));
+			}
+			for (String view : getViewStrings()) {
+				schemaSink.execute(view);
+			}
+			if (checkpoint != null) {
+				checkpoint.create();
+			}
+		} else if (rejections.isTableEnabled()) {
+			/*
+			 * The rejections come from the extraction threads in no stable
+			 * order, so they can't be skipped by count; rebuild them all
+			 */
+			stmt.execute("DELETE FROM " + RejectionSink.TABLE_NAME);
+		}
+		if (checkpointWriter != null && rejections.isTableEnabled()) {
+			checkpointWriter.addUnorderedTable(RejectionSink.TABLE_NAME);
+		}
+		if (constraintsDeferred) {
+			stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+			stmt.execute("SET UNIQUE_CHECKS = 0");
+		}
+	}
+	
+	/**
+	 * Runs the integrity checks of the given table
+	 * @param table - the table to check
+	 * @param withForeignKeys - if true, every foreign key is checked with a 
+	 * set-based query as well
+	 * @throws SQLException if any check finds offending rows
+	 */
+	protected void verifyTable(TableSchema table, boolean withForeignKeys) 
+			throws SQLException {
+		ResultSet rs;
+		long numOffending;
+		Object event;
+		
+		for (String[] check : table.getIntegrityChecks(withForeignKeys)) {
+			event = events.beginStatement();
+			rs = stmt.executeQuery(check[0]);
+			events.endStatement(event, check[0]);
+			rs.next();
+			numOffending = rs.getLong(1);
+			rs.close();
+			if (numOffending > 0) {
+				progress.finish();
+				throw new SQLException(numOffending + " " + check[1]);
+			}
+		}
+	}
+	
+	/**
+	 * Executes the given statement and marks it for the flight recorder if
+	 * it is slow
+	 * @throws SQLException
+	 */
+	private void execute(String sql) throws SQLException {
+		Object event = events.beginStatement();
+		stmt.execute(sql);
+		events.endStatement(event, sql);
+	}
+	
+	/**
+	 * Adds the deferred primary and unique keys, verifies referential 
+	 * integrity with one set-based query per foreign key, adds the foreign 
+	 * keys, restores the session checks, and updates the optimizer 
+	 * statistics of every table. Only needed if constraints are deferred.
+	 * @throws SQLException if any row references a missing row
+	 */
+	protected void finalizeTables() throws SQLException {
+		String sql;
+		int numTables = tableSchemas.size();
+		
+		/*
+		 * DDL isn't transactional, so the keys of every table are recorded as
+		 * a step of their own; a resumed build skips the tables that already
+		 * have them
+		 */
+		progress.start("Adding keys", numTables);
+		for (TableSchema table : tableSchemas) {
+			sql = table.getAddKeysString();
+			if (sql != null && !isCompleted("keys:" + table.getName())) {
+				execute(sql);
+				completeStep("keys:" + table.getName());
+			}
+			progress.step();
+		}
+		
+		progress.start("Verifying and adding foreign keys", numTables);
+		for (TableSchema table : tableSchemas) {
+			sql = table.getAddForeignKeysString();
+			if (sql != null && 
+					!isCompleted("foreignKeys:" + table.getName())) {
+				verifyTable(table, true);
+				execute(sql);
+				completeStep("foreignKeys:" + table.getName());
+			} else if (sql == null) {
+				verifyTable(table, true);
+			}
+			progress.step();
+		}
+		progress.finish();
+		stmt.execute("SET UNIQUE_CHECKS = 1");
+		stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+		
+		progress.start("Analyzing tables", numTables);
+		for (TableSchema table : tableSchemas) {
+			execute("ANALYZE TABLE " + table.getName());
+			progress.step();
+		}
+		progress.finish();
 	}
 	
 	/**
@@ -275,37 +1164,77 @@ public class TableBuilder {
 	 */
 	protected void handleClassSchema() throws SQLException{
 		Set<OWLClass> owlClasses = ont.getClassesInSignature(true);
-		HashMap<String, String> classFieldsMap = new HashMap<String, String>();
-		int numOwlClasses = owlClasses.size();
-		int prog = 0;
+		Object classKey;
 		
 		/*
 		 * Initialize progress update
 		 */
-		print("Building class schema --- 0 of " + numOwlClasses);
+		progress.start("Building class schema", owlClasses.size());
 		
 		for (OWLClass owlClass : owlClasses) {
-			classFieldsMap.put("name", Basics.getClassName(owlClass));
-			stmt.execute(Utilities.getInsertString("Class", classFieldsMap));
-			prog++;
-			print("\rBuilding class schema --- " + prog + " of " + 
-					numOwlClasses);
+			writeDictionaryRow(writer, "Class", CLASS_FIELDS, owlClass, 
+					getClassName(owlClass));
+			progress.step();
 		}
-		println();
+		progress.finish();
 		
-		classFieldsMap = new HashMap<String, String>();
 		for (OWLClass owlClass : owlClasses) {
-			classFieldsMap.put("subclass", Basics.getClassName(owlClass));
+			classKey = classKey(owlClass);
 			for (OWLClassExpression superclassExp : 
 					owlClass.getSuperClasses(ontClosure)) {
 				for (OWLClass superclass : 
 						Utilities.extractClasses(superclassExp)) {
-					classFieldsMap.put("superclass", 
-							Basics.getClassName(superclass));
-					stmt.execute(Utilities.getInsertString("ClassRelationship", 
-							classFieldsMap));
+					writer.write(table("ClassRelationship"), CLASS_REL_FIELDS, 
+							classKey, classKey(superclass));
+				}
+			}
+		}
+		writeClassClosure(owlClasses);
+	}
+	
+	/**
+	 * Populates the ClassClosure table with every pair of a class and one 
+	 * of its ancestors, including the class itself, and the length of the 
+	 * shortest chain of direct superclasses between them. Only classes of 
+	 * the given set are written, as they are the rows of the Class table.
+	 */
+	private void writeClassClosure(Set<OWLClass> owlClasses) 
+			throws SQLException {
+		int[] ancestorIds = new int[classIndex.size()];
+		int[] depths = new int[classIndex.size()];
+		int id, numAncestors;
+		OWLClass ancestor;
+		Object classKey;
+		
+		progress.start("Building class closure", owlClasses.size());
+		Arrays.fill(depths, -1);
+		for (OWLClass owlClass : owlClasses) {
+			id = classIndex.getId(owlClass);
+			classKey = classKey(owlClass);
+			numAncestors = classIndex.getAncestorDepths(id, ancestorIds, 
+					depths);
+			for (int i = 0; i < numAncestors; i++) {
+				ancestor = classIndex.getEntity(ancestorIds[i]);
+				if (owlClasses.contains(ancestor)) {
+					writer.write(table("ClassClosure"), CLASS_CLOSURE_FIELDS, 
+							classKey(ancestor), classKey, 
+							depths[ancestorIds[i]]);
 				}
+				depths[ancestorIds[i]] = -1;
 			}
+			progress.step();
+		}
+		progress.finish();
+	}
+	
+	/**
+	 * Adds the ids of the given class and all of its subclasses to the given
+	 * set of class ids
+	 */
+	private void addSubClassIds(BitSet classIds, OWLClass owlClass) {
+		int id = classIndex.getId(owlClass);
+		if (id >= 0) {
+			classIds.or(classIndex.getDescendantIds(id));
 		}
 	}
 	
@@ -315,33 +1244,25 @@ public class TableBuilder {
 	 * @throws SQLException 
 	 */
 	protected void handleObjPropSchema() throws SQLException {
-		String objPropName, supPropName;
-		boolean fun, invFun, trans, sym, asym, ref, irref;
-		int numSupProps, prog, numObjProps, numInvProps;
+		String objPropName;
+		Object objPropKey;
+		boolean fun, invFun, trans, sym, asym, ref, irref, globalDomain, 
+				globalRange;
 		
 		HashSet<OWLClass> domainClasses, rangeClasses;
-		HashMap<String, String> typeFieldsMap = 
-				new HashMap<String, String>();
-		HashMap<String, String> domainFieldsMap = 
-				new HashMap<String, String>();
-		HashMap<String, String> rangeFieldsMap = 
-				new HashMap<String, String>();
-		HashMap<String, String> relFieldsMap = 
-				new HashMap<String, String>();
-		HashMap<String, String> invFieldsMap =
-				new HashMap<String, String>();
-		HashSet<String> declaredSupPropStrings = new HashSet<String>();
-		HashSet<String> invPropStrings = new HashSet<String>();
+		BitSet domainIds, rangeIds;
+		List<OWLObjectProperty> superProps;
+		LinkedHashSet<List<Object>> declaredSupPropRows = 
+				new LinkedHashSet<List<Object>>();
+		LinkedHashSet<List<Object>> invPropRows = 
+				new LinkedHashSet<List<Object>>();
 		HashSet<OWLObjectProperty> ancestorProps;
 		Set<OWLObjectProperty> objProps = ont.getObjectPropertiesInSignature(true);
 		
 		/*
 		 * Initialize progress printout
 		 */
-		prog = 0;
-		numObjProps = objProps.size();
-		print("Building object property schema --- 0 of " + 
-				numObjProps);
+		progress.start("Building object property schema", objProps.size());
 		
 		/*
 		 * Begin looping through all object properties
@@ -349,7 +1270,7 @@ public class TableBuilder {
 		for (OWLObjectProperty objProp : objProps) {
 			domainClasses = new HashSet<OWLClass>();
 			rangeClasses = new HashSet<OWLClass>();
-			objPropName = Basics.getObjPropName(objProp);
+			objPropName = getObjPropName(objProp);
 			fun = objProp.isFunctional(ontClosure);
 			invFun = objProp.isInverseFunctional(ontClosure);
 			trans = objProp.isTransitive(ontClosure);
@@ -360,46 +1281,72 @@ public class TableBuilder {
 			/*
 			 * Update progress printout
 			 */
-			prog++;
-			print("\rBuilding object property schema --- " + prog + 
-					" of " + numObjProps);
+			progress.step();
+			
+			/*
+			 * Get all domains and ranges. Finds every class that is in the 
+			 * declared domain or range of each property and its 
+			 * super-properties.
+			 */
+			superProps = objPropIndex.getAncestors(objProp);
+			domainIds = new BitSet(classIndex.size());
+			rangeIds = new BitSet(classIndex.size());
+			for (OWLObjectProperty superProp : superProps) {
+				for (OWLClassExpression domainExp : 
+						superProp.getDomains(ontClosure)) {
+					for (OWLClass domain : 
+							Utilities.extractClasses(domainExp)) {
+						addSubClassIds(domainIds, domain);
+					}
+				}
+				for (OWLClassExpression rangeExp : 
+						superProp.getRanges(ontClosure)) {
+					for (OWLClass range : Utilities.extractClasses(rangeExp)) {
+						addSubClassIds(rangeIds, range);
+					}
+				}
+			}
+			domainClasses.addAll(classIndex.toEntities(domainIds));
+			rangeClasses.addAll(classIndex.toEntities(rangeIds));
+			globalDomain = domainClasses.isEmpty();
+			globalRange = rangeClasses.isEmpty();
 			
 			/*
 			 * Handle entries into the ObjectPropertyType table
 			 */
-			typeFieldsMap.put("name", objPropName);
-			typeFieldsMap.put("isFunctional", String.valueOf(fun));
-			typeFieldsMap.put("isInverseFunctional", String.valueOf(invFun));
-			typeFieldsMap.put("isTransitive", String.valueOf(trans));
-			typeFieldsMap.put("isSymmetric", String.valueOf(sym));
-			typeFieldsMap.put("isAsymmetric", String.valueOf(asym));
-			typeFieldsMap.put("isReflexive", String.valueOf(ref));
-			typeFieldsMap.put("isIrreflexive", String.valueOf(irref));
-			stmt.execute(Utilities.getInsertString("ObjectPropertyType",
-					typeFieldsMap));
+			if (compactGlobals) {
+				writeDictionaryRow(writer, "ObjectPropertyType", 
+						OBJ_PROP_TYPE_COMPACT_FIELDS, objProp, objPropName, 
+						fun, invFun, trans, sym, asym, ref, irref, 
+						globalDomain, globalRange);
+			} else {
+				writeDictionaryRow(writer, "ObjectPropertyType", 
+						OBJ_PROP_TYPE_FIELDS, objProp, objPropName, fun, 
+						invFun, trans, sym, asym, ref, irref);
+			}
+			objPropKey = objPropKey(objProp);
 			
 			/*
 			 * Saves all explicitly declared super properties for later update 
 			 * execution. Also finds implicit super properties.
 			 */
-			relFieldsMap.put("subproperty", objPropName);
-			relFieldsMap.put("isInferred", "false");
-			ancestorProps = Utilities.getSuperProps(objProp, ontClosure);
+			ancestorProps = new HashSet<OWLObjectProperty>(superProps);
 			ancestorProps.remove(objProp);
 						
 			for (OWLObjectPropertyExpression superPropExp : 
 					objProp.getSuperProperties(ontClosure)) {	
 				if (superPropExp.isAnonymous()) {
-					logError(objPropName + " has anonymous superproperty " +
+					logError(Category.ANONYMOUS_PROPERTY, 
+							table("ObjectPropertyRelationship"), 
+							objPropName, null, 
+							objPropName + " has anonymous superproperty " +
 							superPropExp + ". Cannot insert into the " +
 							"ObjectPropertyRelationship table.");
 				} else {
 					ancestorProps.remove(superPropExp.asOWLObjectProperty());
-					supPropName = Basics.getObjPropName(
-							superPropExp.asOWLObjectProperty());
-					relFieldsMap.put("superproperty", supPropName);
-					declaredSupPropStrings.add(Utilities.getInsertString(
-							"ObjectPropertyRelationship", relFieldsMap));
+					declaredSupPropRows.add(Arrays.<Object>asList(objPropKey, 
+							objPropKey(superPropExp.asOWLObjectProperty()), 
+							false));
 				}
 			}
 			
@@ -407,54 +1354,26 @@ public class TableBuilder {
 			 * Saves all implicit super properties for later update execution.
 			 */
 			
-			relFieldsMap.put("isInferred", "true");
 			for (OWLObjectProperty ancestorProp : ancestorProps) {
-				relFieldsMap.put("superproperty", Basics.getObjPropName(
-						ancestorProp));
-				declaredSupPropStrings.add(Utilities.getInsertString(
-						"ObjectPropertyRelationship", relFieldsMap));
+				declaredSupPropRows.add(Arrays.<Object>asList(objPropKey, 
+						objPropKey(ancestorProp), true));
 			}
 			
 			/*
 			 * Saves all inverse property declarations for later update 
 			 * execution.
 			 */
-			invFieldsMap.put("property", objPropName);
 			for (OWLObjectPropertyExpression invPropExp : 
 					objProp.getInverses(ontClosure)) {
 				if (invPropExp.isAnonymous()) {
-					logError("Object property " + objPropName + " has " +
+					logError(Category.ANONYMOUS_PROPERTY, 
+							table("ObjectPropertyInverse"), objPropName, null, 
+							"Object property " + objPropName + " has " +
 							"anonymous inverse " + invPropExp + ". Cannot " +
 							"insert into the ObjectPropertyInverse table.");
 				} else {
-					invFieldsMap.put("inverseProperty", Basics.getObjPropName(
-							invPropExp.asOWLObjectProperty()));
-					invPropStrings.add(Utilities.getInsertString(
-							"ObjectPropertyInverse", invFieldsMap));
-				}
-			}
-			
-			/*
-			 * Get all domains and ranges. Finds every class that is in the 
-			 * declared domain or range of each property and its 
-			 * super-properties.
-			 */
-			for (OWLObjectProperty superProp : Utilities.getSuperProps(objProp, 
-					ontClosure)) {
-				for (OWLClassExpression domainExp : 
-						superProp.getDomains(ontClosure)) {
-					for (OWLClass domain : 
-							Utilities.extractClasses(domainExp)) {
-						domainClasses.addAll(Utilities.getSubClasses(domain, 
-								ontClosure));
-					}
-				}
-				for (OWLClassExpression rangeExp : 
-						superProp.getRanges(ontClosure)) {
-					for (OWLClass range : Utilities.extractClasses(rangeExp)) {
-						domainClasses.addAll(Utilities.getSubClasses(range, 
-								ontClosure));
-					}
+					invPropRows.add(Arrays.<Object>asList(objPropKey, 
+							objPropKey(invPropExp.asOWLObjectProperty())));
 				}
 			}
 			
@@ -462,28 +1381,34 @@ public class TableBuilder {
 			 * Populate the ObjectPropertyDomain and ObjectPropertyRange tables.
 			 * If the object property and its superproperties do not specify
 			 * a domain or range, then it is assumed that the domain or range
-			 * is global.
+			 * is global. Global domains and ranges are either expanded to 
+			 * every class or, in compact mode, only flagged in the 
+			 * ObjectPropertyType table.
 			 */
-			if (domainClasses.isEmpty()) {
-				domainClasses.addAll(ont.getClassesInSignature(true));
+			if (globalDomain) {
+				if (compactGlobals) {
+					globalDomainProps.add(objProp);
+				} else {
+					domainClasses.addAll(ont.getClassesInSignature(true));
+				}
 			}
-			if (rangeClasses.isEmpty()) {
-				rangeClasses.addAll(ont.getClassesInSignature(true));
+			if (globalRange) {
+				if (compactGlobals) {
+					globalRangeProps.add(objProp);
+				} else {
+					rangeClasses.addAll(ont.getClassesInSignature(true));
+				}
 			}
 			
 			for (OWLClass domainClass : domainClasses) {
-				domainFieldsMap.put("property", objPropName);
-				domainFieldsMap.put("domainClass", Basics.getClassName(
-						domainClass));
-				stmt.execute(Utilities.getInsertString("ObjectPropertyDomain", 
-						domainFieldsMap));
+				writer.write(table("ObjectPropertyDomain"), 
+						OBJ_PROP_DOMAIN_FIELDS, objPropKey, 
+						classKey(domainClass));
 			}
 			for (OWLClass rangeClass : rangeClasses) {
-				rangeFieldsMap.put("property", objPropName);
-				rangeFieldsMap.put("rangeClass", Basics.getClassName(
-						rangeClass));
-				stmt.execute(Utilities.getInsertString("ObjectPropertyRange", 
-						rangeFieldsMap));
+				writer.write(table("ObjectPropertyRange"), 
+						OBJ_PROP_RANGE_FIELDS, objPropKey, 
+						classKey(rangeClass));
 			}
 			
 			/*
@@ -498,42 +1423,33 @@ public class TableBuilder {
 		/*
 		 * Initialize next progress printout
 		 */
-		prog = 0;
-		numSupProps = declaredSupPropStrings.size();
-		println();
-		print("Populating object property relationships --- 0 of " +
-				numSupProps);
+		progress.start("Populating object property relationships", 
+				declaredSupPropRows.size());
 		
 		/*
 		 * Executes the declared superproperty updates
 		 */
-		for (String declaredSupPropString : declaredSupPropStrings) {
-			stmt.execute(declaredSupPropString);
-			prog++;
-			print(
-					"\rPopulating object property relationships --- " + prog + 
-					" of " + numSupProps);
+		for (List<Object> declaredSupPropRow : declaredSupPropRows) {
+			writer.write(table("ObjectPropertyRelationship"), PROP_REL_FIELDS, 
+					declaredSupPropRow.toArray());
+			progress.step();
 		}
 		
 		/*
 		 * Initialize next progress printout
 		 */
-		prog = 0;
-		numInvProps = invPropStrings.size();
-		println();
-		print("Populating object property inverses --- 0 of " +
-				numInvProps);
+		progress.start("Populating object property inverses", 
+				invPropRows.size());
 		
 		/*
 		 * Executes the declared inverse property updates
 		 */
-		for (String invPropString : invPropStrings) {
-			prog++;
-			print("\rPopulating object property inverses --- " + prog +
-					" of " + numInvProps);
-			stmt.execute(invPropString);
+		for (List<Object> invPropRow : invPropRows) {
+			progress.step();
+			writer.write(table("ObjectPropertyInverse"), OBJ_PROP_INV_FIELDS, 
+					invPropRow.toArray());
 		}
-		println();
+		progress.finish();
 	}
 	
 	/**
@@ -541,112 +1457,109 @@ public class TableBuilder {
 	 * @throws SQLException
 	 */
 	protected void handleDataPropSchema() throws SQLException {
-		String dataPropName, supPropName;
+		String dataPropName;
+		Object dataPropKey;
 		HashSet<OWLClass> domainClasses;
 		HashSet<OWLDataProperty> ancestorProps;
-		boolean fun;
-		int prog, numSupProps, numDataProps;
-		
-		HashMap<String, String> typeFieldsMap =
-				new HashMap<String,String>();
-		HashMap<String, String> domainFieldsMap =
-				new HashMap<String,String>();
-		HashMap<String, String> relFieldsMap =
-				new HashMap<String,String>();
-		HashSet<String> declaredSupPropStrings = new HashSet<String>();
+		boolean fun, globalDomain;
+		
+		LinkedHashSet<List<Object>> declaredSupPropRows = 
+				new LinkedHashSet<List<Object>>();
 		Set<OWLDataProperty> dataProps = ont.getDataPropertiesInSignature(true);
 		
 		/*
 		 * Initialize progress printout
 		 */
-		prog = 0;
-		numDataProps = dataProps.size();
-		print("Building data property schema --- 0 of " + 
-				numDataProps);
+		progress.start("Building data property schema", dataProps.size());
 		
 		for (OWLDataProperty dataProp : dataProps) {
-			dataPropName = Basics.getDataPropName(dataProp);
+			dataPropName = getDataPropName(dataProp);
 			domainClasses = new HashSet<OWLClass>();
 			fun = dataProp.isFunctional(ontClosure);
 			
 			/*
 			 * Update progress printout
 			 */
-			prog++;
-			print("\rBuilding data property schema --- " + prog + 
-					" of " + numDataProps);
+			progress.step();
+			
+			/*
+			 * Gets all domains. Finds every class that is in the domain of each 
+			 * property and its super-properties.
+			 */
+			for (OWLDataProperty supProp : 
+					dataPropIndex.getAncestors(dataProp)) {
+				for (OWLClassExpression domainClassExp : 
+						supProp.getDomains(ont)) {
+					domainClasses.addAll(Utilities.extractClasses(
+							domainClassExp));
+				}
+			}
+			globalDomain = domainClasses.isEmpty();
 			
 			/*
 			 * Handles entries into the DataPropertyType table
 			 */
-			typeFieldsMap.put("name", dataPropName);
-			typeFieldsMap.put("isFunctional", String.valueOf(fun));
-			stmt.execute(Utilities.getInsertString("DataPropertyType",
-					typeFieldsMap));
+			if (compactGlobals) {
+				writeDictionaryRow(writer, "DataPropertyType", 
+						DATA_PROP_TYPE_COMPACT_FIELDS, dataProp, 
+						dataPropName, fun, globalDomain);
+			} else {
+				writeDictionaryRow(writer, "DataPropertyType", 
+						DATA_PROP_TYPE_FIELDS, dataProp, dataPropName, fun);
+			}
+			dataPropKey = dataPropKey(dataProp);
 
 			/*
 			 * Saves all declared super properties for later update execution.
 			 * Also finds implict super properties.
 			 */
-			relFieldsMap.put("subproperty", dataPropName);
-			relFieldsMap.put("isInferred", "false");
-			ancestorProps = Utilities.getSuperProps(dataProp, ontClosure);
+			ancestorProps = new HashSet<OWLDataProperty>(
+					dataPropIndex.getAncestors(dataProp));
 			ancestorProps.remove(dataProp);
 			for (OWLDataPropertyExpression superPropExp : 
 					dataProp.getSuperProperties(ontClosure)) {				
 				if (superPropExp.isAnonymous()) {
-					logError("Data property " + dataPropName + 
+					logError(Category.ANONYMOUS_PROPERTY, 
+							table("DataPropertyRelationship"), 
+							dataPropName, null, 
+							"Data property " + dataPropName + 
 							" has anonymous super property" + superPropExp +
 							". Cannot insert into DataPropertyRelationship " +
 							"table.");
 				} else {
 					ancestorProps.remove(superPropExp.asOWLDataProperty());
-					supPropName = Basics.getDataPropName(
-							superPropExp.asOWLDataProperty());
-					relFieldsMap.put("superproperty", supPropName);
-					declaredSupPropStrings.add(Utilities.getInsertString(
-							"DataPropertyRelationship", relFieldsMap));
+					declaredSupPropRows.add(Arrays.<Object>asList(dataPropKey, 
+							dataPropKey(superPropExp.asOWLDataProperty()), 
+							false));
 				}
 			}
 			
 			/*
 			 * Saves all implict super properties for later update execution
 			 */
-			relFieldsMap.put("isInferred", "true");
 			for (OWLDataProperty ancestorProp : ancestorProps) {
-				relFieldsMap.put("superproperty", Basics.getDataPropName(
-						ancestorProp));
-				declaredSupPropStrings.add(Utilities.getInsertString(
-						"DataPropertyRelationship", relFieldsMap));
-			}
-			
-			/*
-			 * Gets all domains. Finds every class that is in the domain of each 
-			 * property and its super-properties.
-			 */
-			for (OWLDataProperty supProp : Utilities.getSuperProps(dataProp, 
-					ontClosure)) {
-				for (OWLClassExpression domainClassExp : 
-						supProp.getDomains(ont)) {
-					domainClasses.addAll(Utilities.extractClasses(
-							domainClassExp));
-				}
+				declaredSupPropRows.add(Arrays.<Object>asList(dataPropKey, 
+						dataPropKey(ancestorProp), true));
 			}
 			
 			/*
 			 * Populates the DataPropertyDomain table. If the data property and 
 			 * its superproperties do not specify a domain or range, then it is 
-			 * assumed that the domain or range is global.
+			 * assumed that the domain or range is global. Global domains are 
+			 * either expanded to every class or, in compact mode, only flagged
+			 * in the DataPropertyType table.
 			 */
-			if (domainClasses.isEmpty()) {
-				domainClasses.addAll(ont.getClassesInSignature(true));
+			if (globalDomain) {
+				if (compactGlobals) {
+					globalDomainProps.add(dataProp);
+				} else {
+					domainClasses.addAll(ont.getClassesInSignature(true));
+				}
 			}
 			for (OWLClass domainClass : domainClasses) {
-				domainFieldsMap.put("property", dataPropName);
-				domainFieldsMap.put("domainClass", Basics.getClassName(
-						domainClass));
-				stmt.execute(Utilities.getInsertString("DataPropertyDomain", 
-						domainFieldsMap));
+				writer.write(table("DataPropertyDomain"), 
+						DATA_PROP_DOMAIN_FIELDS, dataPropKey, 
+						classKey(domainClass));
 			}
 			
 			/*
@@ -659,258 +1572,673 @@ public class TableBuilder {
 		/*
 		 * Initializing next progress printout
 		 */
-		println();
-		prog = 0;
-		numSupProps = declaredSupPropStrings.size();
-		print("Populating data property relationships --- 0 of " +
-				numSupProps);
+		progress.start("Populating data property relationships", 
+				declaredSupPropRows.size());
 		
 		/*
 		 * Executes the declared superproperty updates
 		 */
-		for (String declaredSupPropString : declaredSupPropStrings) {
-			stmt.execute(declaredSupPropString);
-			prog++;
-			print(
-					"\rPopulating data property relationships --- " + prog +
-					" of " + numSupProps);
+		for (List<Object> declaredSupPropRow : declaredSupPropRows) {
+			writer.write(table("DataPropertyRelationship"), PROP_REL_FIELDS, 
+					declaredSupPropRow.toArray());
+			progress.step();
 		}
-		println();
+		progress.finish();
 	}
 	
 	/**
 	 * Populates data for all named individuals and their data and object 
-	 * properties
+	 * properties. The Individual table is written first; then the 
+	 * individuals are split into chunks whose assertions are extracted in 
+	 * parallel, with a bounded number of chunks in flight. The extracted 
+	 * rows are written in chunk order, so the output does not depend on 
+	 * thread timing. If an individual source is set, the individuals are 
+	 * read from it instead.
 	 * @throws SQLException
 	 */
 	protected void handleInstances() throws SQLException {
-		String indName, rangeIndName, className, dataPropName, objPropName, 
-				rangeClassName;
-		OWLDataProperty dataProp;
-		OWLObjectProperty objProp;
-		OWLNamedIndividual namedInd, namedRangeInd;
-		OWLClass rangeClass;
-		int numInds, numObjPropInsts, prog;
-		
-		OWLClass owlClass = null;
-		OWLClassExpression rangeClassExp = null;
-		OWLClassExpression classExp = null;
-		HashMap<String, String> indFieldsMap =
-				new HashMap<String, String>();
-		HashMap<String, String> dataPropFieldsMap =
-				new HashMap<String, String>();
-		HashMap<String, String> objPropFieldsMap =
-				new HashMap<String, String>();
-		Map<OWLDataPropertyExpression, Set<OWLLiteral>> dataPropMap;
-		Map<OWLObjectPropertyExpression, Set<OWLIndividual>> objPropMap;
-		LinkedList<String> objPropInsertStrings = new LinkedList<String>();
-		Set<OWLNamedIndividual> inds = ont.getIndividualsInSignature(true);
+		int numInds, chunkSize, maxInFlight, next;
+		ExecutorService executor;
+		ArrayDeque<Future<RowBuffer>> futures = 
+				new ArrayDeque<Future<RowBuffer>>();
+		ArrayList<Future<Void>> typeFutures = new ArrayList<Future<Void>>();
+		final ArrayList<OWLNamedIndividual> inds = 
+				new ArrayList<OWLNamedIndividual>(
+						ont.getIndividualsInSignature(true));
+		
+		if (individualSource != null) {
+			handleSourceInstances();
+			return;
+		}
+		
+		if (surrogateKeys) {
+			for (OWLNamedIndividual i : inds) {
+				indIds.put(i, indIds.size() + 1);
+				getNamespaceKey(i, writer);
+			}
+		}
 		
 		/*
-		 * Initialize progress print to STDOUT
+		 * The OWLAPI builds its axiom indexes lazily on first access, so they
+		 * are built here before the worker threads read them concurrently.
 		 */
-		prog = 0;
-		numInds = inds.size();
-		print("Populating individuals and data " +
-				"property instances --- 0 of " + numInds);
+		if (!inds.isEmpty()) {
+			inds.get(0).getTypes(ont);
+			inds.get(0).getDataPropertyValues(ont);
+			inds.get(0).getObjectPropertyValues(ont);
+		}
 		
-	/*
-	 * Begin iterating through all individuals
-	 */
-		for (OWLIndividual ind : inds) {
+		numInds = inds.size();
+		chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, 
+				numInds / (numThreads * 4)));
+		maxInFlight = numThreads * 2;
+		executor = Executors.newFixedThreadPool(numThreads);
+		typeIndex = new IndividualTypeIndex(inds, ont, classIndex);
+		try {
 			/*
-			 * Check for anonymity
+			 * Resolve the class of every individual once, since the range 
+			 * checks of the extraction look up the classes of other 
+			 * individuals
 			 */
-			if (ind.isAnonymous()) {
-				logError(ind + " is anonymous. Cannot insert into Individual" +
-						" table.");
-				continue;
+			for (int start = 0; start < numInds; start += chunkSize) {
+				final List<OWLNamedIndividual> chunk = inds.subList(start, 
+						Math.min(start + chunkSize, numInds));
+				typeFutures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						typeIndex.resolve(chunk);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : typeFutures) {
+				getChunkResult(future);
+			}
+			
+			/*
+			 * Populate the Individual table first, so the object property 
+			 * instances of every chunk can be written as soon as the chunk
+			 * is extracted
+			 */
+			progress.start("Populating individuals", numInds);
+			for (OWLNamedIndividual namedInd : inds) {
+				writeIndividual(namedInd);
+				progress.step();
 			}
+			progress.finish();
 			
 			/*
-			 * Check if individual has either no class or more than one 
-			 * class. If so, skip this individual. If not, extract the class
+			 * Extract the rows of each chunk of individuals on the pool and 
+			 * write them in chunk order as the chunks complete. At most 
+			 * maxInFlight chunks are submitted or waiting to be written at 
+			 * once, so only their rows are held in memory.
 			 */
-			namedInd = ind.asOWLNamedIndividual();
+			progress.start("Populating data and object property instances",
+					numInds);
+			next = 0;
+			while (next < numInds || !futures.isEmpty()) {
+				while (next < numInds && futures.size() < maxInFlight) {
+					final List<OWLNamedIndividual> chunk = inds.subList(next, 
+							Math.min(next + chunkSize, numInds));
+					futures.add(executor.submit(new Callable<RowBuffer>() {
+						@Override
+						public RowBuffer call() throws SQLException {
+							RowBuffer rows = new RowBuffer();
+							for (OWLNamedIndividual namedInd : chunk) {
+								extractIndividual(namedInd, rows);
+								progress.step();
+							}
+							return rows;
+						}
+					}));
+					next += chunk.size();
+				}
+				getChunkResult(futures.poll()).writeTo(writer);
+			}
+			progress.finish();
+		} finally {
+			executor.shutdownNow();
+			typeIndex = null;
+		}
+	}
+	
+	/**
+	 * Populates the individuals and their data and object properties from 
+	 * the individual source in two passes. The first pass collects the 
+	 * class of every individual and populates the Individual table, the 
+	 * second populates the property instances as their assertions are read.
+	 * Only the class id and the number of records of each individual are 
+	 * kept between the passes, so memory still grows with the number of 
+	 * individuals but not with their assertions. The assertions of an 
+	 * individual described by several records are merged: those written 
+	 * from its earlier records are kept until its last record is read, so 
+	 * an assertion repeated across its records is written once.
+	 * @throws SQLException
+	 */
+	protected void handleSourceInstances() throws SQLException {
+		final OWLDataFactory factory = 
+				ont.getOWLOntologyManager().getOWLDataFactory();
+		final IndividualClassTable indClasses = new IndividualClassTable();
+		final HashMap<Integer, HashSet<String>> indFacts = 
+				new HashMap<Integer, HashSet<String>>();
+		String indName;
+		OWLClass owlClass;
+		OWLNamedIndividual namedInd;
+		int index, classId;
+		
+		/*
+		 * Collect the classes of every individual. The assertions about an 
+		 * individual may be spread over several records, and only the 
+		 * records that declare it make it an individual.
+		 */
+		readIndividuals(new IndividualRecord.Handler() {
+			@Override
+			public void handle(IndividualRecord record) {
+				int index;
+				OWLClass owlClass;
+				if (!record.isDeclaration()) {
+					indClasses.addUndeclaredRecord(record.getIRI());
+					return;
+				}
+				index = indClasses.addIndividual(record.getIRI());
+				for (String type : record.getTypes()) {
+					if (!type.equals(
+							RDFXMLIndividualSource.NAMED_INDIVIDUAL)) {
+						owlClass = factory.getOWLClass(IRI.create(type));
+						indClasses.addType(index, 
+								classIndex.getId(owlClass), type);
+					}
+				}
+			}
+		});
+		indClasses.finishRecords();
+		
+		/*
+		 * Populate Individual table
+		 */
+		progress.start("Populating individuals", indClasses.size());
+		for (Map.Entry<String, Integer> entry : 
+				indClasses.getIndividuals()) {
+			progress.step();
+			namedInd = factory.getOWLNamedIndividual(
+					IRI.create(entry.getKey()));
 			indName = Basics.getIndName(namedInd);
-			if (namedInd.getTypes(ont).size() == 0) {
-				logError(indName + " has no classes. Cannot insert into " +
+			index = entry.getValue();
+			classId = indClasses.getClassId(index);
+			if (classId == IndividualClassTable.NO_CLASS) {
+				logError(Category.NO_CLASS, table("Individual"), 
+						indName, null, 
+						indName + " has no classes. Cannot insert into " +
 						"Individual table.");
 				continue;
-			}
-			else if (namedInd.getTypes(ont).size() > 1) {
-				logError(indName + " has more than one class. " +
+			} else if (classId == IndividualClassTable.MULTIPLE_CLASSES) {
+				logError(Category.MULTIPLE_CLASSES, table("Individual"), 
+						indName, null, 
+						indName + " has more than one class. " +
 						"Cannot insert into Individual table.");
+				indClasses.setClassId(index, IndividualClassTable.NO_CLASS);
+				continue;
+			} else if (classId < 0) {
+				owlClass = factory.getOWLClass(
+						IRI.create(indClasses.getUnknownClass(classId)));
+				logError(Category.UNKNOWN_CLASS, table("Individual"), 
+						indName, null, 
+						indName + " has class " + 
+						getClassName(owlClass) + ", which is not in " +
+						"the ontology. Cannot insert into Individual table.");
+				indClasses.setClassId(index, IndividualClassTable.NO_CLASS);
+				continue;
+			}
+			owlClass = classIndex.getEntity(classId);
+			if (surrogateKeys) {
+				indIds.put(namedInd, indIds.size() + 1);
+			}
+			writeDictionaryRow(writer, "Individual", IND_FIELDS, namedInd, 
+					indName, classKey(owlClass));
+		}
+		progress.finish();
+		
+		/*
+		 * Populate DataPropertyInstance and ObjectPropertyInstance tables.
+		 * Every individual is written by now, so the object property 
+		 * instances can be written right away.
+		 */
+		progress.start("Populating data and object property instances", -1);
+		readIndividuals(new IndividualRecord.Handler() {
+			@Override
+			public void handle(IndividualRecord record) throws SQLException {
+				int index = indClasses.getIndex(record.getIRI());
+				int classId;
+				HashSet<String> facts;
+				if (index < 0) {
+					/* Not about an individual */
+					return;
+				}
+				classId = indClasses.getClassId(index);
+				if (classId < 0) {
+					/* Already reported while populating the individuals */
+					return;
+				}
+				if (indClasses.removeRecord(index) <= 0) {
+					/* The last record of the individual */
+					facts = indFacts.remove(index);
+					if (facts == null) {
+						facts = new HashSet<String>();
+					}
+				} else {
+					facts = indFacts.get(index);
+					if (facts == null) {
+						facts = new HashSet<String>();
+						indFacts.put(index, facts);
+					}
+				}
+				progress.step(writeRecordInstances(record, 
+						classIndex.getEntity(classId), facts, indClasses, 
+						factory));
+			}
+		});
+		progress.finish();
+	}
+	
+	/**
+	 * Reads every record of the individual source
+	 * @throws SQLException if the source can't be read or the handler fails
+	 */
+	private void readIndividuals(IndividualRecord.Handler handler) 
+			throws SQLException {
+		try {
+			individualSource.read(handler);
+		} catch (IOException ex) {
+			progress.finish();
+			throw new SQLException("Could not read individuals: " + 
+					ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Validates the data and object property assertions of the given 
+	 * record and writes the resulting rows. Assertions of properties that
+	 * are not data or object properties of the ontology, such as 
+	 * annotations, are ignored, and so are assertions that are already in 
+	 * the given set of facts.
+	 * @param record - the record of an individual that has been written
+	 * @param owlClass - the class of the individual
+	 * @param facts - the assertions read so far from the records of the 
+	 * individual, to which those of the record are added
+	 * @param indClasses - the classes of all individuals
+	 * @param factory - the data factory of the ontology
+	 * @return the number of rows written
+	 * @throws SQLException
+	 */
+	private int writeRecordInstances(IndividualRecord record, 
+			OWLClass owlClass, Set<String> facts, 
+			IndividualClassTable indClasses, OWLDataFactory factory) 
+			throws SQLException {
+		String indName, className, dataPropName, objPropName, rangeIRI, 
+				rangeIndName, rangeClassName;
+		String[] value;
+		OWLNamedIndividual namedInd, namedRangeInd;
+		OWLDataProperty dataProp;
+		OWLObjectProperty objProp;
+		OWLClass rangeClass;
+		OWLLiteral valueLit;
+		int numRows = 0, rangeIndex;
+		
+		namedInd = factory.getOWLNamedIndividual(IRI.create(record.getIRI()));
+		indName = Basics.getIndName(namedInd);
+		className = getClassName(owlClass);
+		
+		for (int i = 0; i < record.getNumDataValues(); i++) {
+			dataProp = factory.getOWLDataProperty(
+					IRI.create(record.getDataProperty(i)));
+			if (dataPropIndex.getId(dataProp) < 0) {
+				continue;
+			}
+			value = record.getDataValue(i);
+			if (!facts.add("data " + record.getDataProperty(i) + " " + 
+					value[0] + " " + value[1] + " " + value[2])) {
+				continue;
+			}
+			dataPropName = getDataPropName(dataProp);
+			if (!globalDomainProps.contains(dataProp) && 
+					!dataPropDomains.get(dataProp).contains(owlClass)) {
+				logError(Category.DOMAIN, table("DataPropertyInstance"), 
+						indName, dataPropName, 
+						indName + " of class " + className + 
+						" is not in the domain of data property " +
+						dataPropName + 
+						". Cannot insert into DataPropertyInstance table.");
+				continue;
+			}
+			if (value[1] != null) {
+				valueLit = factory.getOWLLiteral(value[0], 
+						factory.getOWLDatatype(IRI.create(value[1])));
+			} else {
+				valueLit = factory.getOWLLiteral(value[0], 
+						value[2] == null ? "" : value[2]);
+			}
+			writer.write(table("DataPropertyInstance"), 
+					DATA_PROP_INST_FIELDS, classKey(owlClass), 
+					indKey(namedInd), dataPropKey(dataProp), 
+					valueLit.toString());
+			numRows++;
+		}
+		
+		for (int i = 0; i < record.getNumObjectValues(); i++) {
+			objProp = factory.getOWLObjectProperty(
+					IRI.create(record.getObjectProperty(i)));
+			if (objPropIndex.getId(objProp) < 0) {
+				continue;
+			}
+			rangeIRI = record.getObjectValue(i);
+			if (rangeIRI != null && !facts.add("object " + 
+					record.getObjectProperty(i) + " " + rangeIRI)) {
+				continue;
+			}
+			objPropName = getObjPropName(objProp);
+			if (!globalDomainProps.contains(objProp) && 
+					!objPropDomains.get(objProp).contains(owlClass)) {
+				logError(Category.DOMAIN, table("ObjectPropertyInstance"), 
+						indName, objPropName, 
+						indName + " of class " + className + 
+						" is not in the domain of object property " +
+						objPropName + ". Cannot insert into the " +
+						"ObjectPropertyInstance table.");
+				continue;
+			}
+			if (rangeIRI == null) {
+				logError(Category.ANONYMOUS_INDIVIDUAL, 
+						table("ObjectPropertyInstance"), indName, objPropName, 
+						"An anonymous individual is mapped to " + indName + 
+						" by object property " + objPropName + ". Cannot " +
+						"insert into the ObjectPropertyInstance table.");
+				continue;
+			}
+			namedRangeInd = factory.getOWLNamedIndividual(
+					IRI.create(rangeIRI));
+			rangeIndName = Basics.getIndName(namedRangeInd);
+			rangeIndex = indClasses.getIndex(rangeIRI);
+			if (rangeIndex < 0 || indClasses.getClassId(rangeIndex) < 0) {
+				logError(Category.UNTYPED_RANGE, 
+						table("ObjectPropertyInstance"), indName, objPropName, 
+						rangeIndName + " does not have exactly one named " +
+						"class and is mapped to " + indName + " by object " +
+						"property " + objPropName + ". Cannot insert into " +
+						"ObjectPropertyInstance table");
 				continue;
-			} 
-			for (OWLClassExpression singleClassExp : 
-					namedInd.getTypes(ont)) {
-				classExp = singleClassExp;
-			}
-			if (classExp.isAnonymous()) {
-				logError(indName + " has anonymous class " + classExp +
-						". Cannot insert into Individual table.");
+			}
+			rangeClass = classIndex.getEntity(
+					indClasses.getClassId(rangeIndex));
+			rangeClassName = getClassName(rangeClass);
+			if (!globalRangeProps.contains(objProp) && 
+					!objPropRanges.get(objProp).contains(rangeClass)) {
+				logError(Category.RANGE, table("ObjectPropertyInstance"), 
+						indName, objPropName, 
+						rangeIndName + " of class " + rangeClassName + 
+						" is mapped to " + indName + " by " + 
+						objPropName + " but is not in the object " +
+						"property's range. Cannot insert into the " +
+						"ObjectPropertyInstance table.");
 				continue;
 			}
-			owlClass = classExp.asOWLClass();
-			className = Basics.getClassName(owlClass);
-			dataPropFieldsMap.put("domainClass", className);
-			objPropFieldsMap.put("domainClass", className);
+			writer.write(table("ObjectPropertyInstance"), 
+					OBJ_PROP_INST_FIELDS, classKey(owlClass), 
+					indKey(namedInd), objPropKey(objProp), 
+					classKey(rangeClass), indKey(namedRangeInd));
+			numRows++;
+		}
+		return numRows;
+	}
+	
+	/**
+	 * Waits for the given chunk of individuals to be processed and returns
+	 * the result, i.e. its rows, rethrowing any failure of the processing
+	 * @throws SQLException
+	 */
+	private <T> T getChunkResult(Future<T> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while extracting individuals",
+					ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof SQLException) {
+				throw (SQLException) ex.getCause();
+			} else if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			} else if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new SQLException("Could not extract individuals", 
+					ex.getCause());
+		}
+	}
+	
+	/**
+	 * Validates the class of a single named individual and writes its row 
+	 * of the Individual table, or reports why it can't be inserted
+	 * @param namedInd - the individual
+	 * @throws SQLException
+	 */
+	private void writeIndividual(OWLNamedIndividual namedInd) 
+			throws SQLException {
+		String indName;
+		int classId;
+		
+		/*
+		 * Check if individual has either no class or more than one 
+		 * class. If so, skip this individual. If not, extract the class
+		 */
+		indName = Basics.getIndName(namedInd);
+		classId = typeIndex.getClassId(namedInd);
+		if (classId == IndividualTypeIndex.NO_CLASS) {
+			logError(Category.NO_CLASS, table("Individual"), 
+					indName, null, 
+					indName + " has no classes. Cannot insert into " +
+					"Individual table.");
+			return;
+		}
+		else if (classId == IndividualTypeIndex.MULTIPLE_CLASSES) {
+			logError(Category.MULTIPLE_CLASSES, table("Individual"), 
+					indName, null, 
+					indName + " has more than one class. " +
+					"Cannot insert into Individual table.");
+			return;
+		} 
+		if (classId == IndividualTypeIndex.ANONYMOUS_CLASS) {
+			logError(Category.ANONYMOUS_CLASS, table("Individual"), 
+					indName, null, 
+					indName + " has anonymous class " + 
+					namedInd.getTypes(ont).iterator().next() +
+					". Cannot insert into Individual table.");
+			return;
+		}
+		writeDictionaryRow(writer, "Individual", IND_FIELDS, namedInd, 
+				indName, classKey(typeIndex.getOWLClass(classId)));
+	}
+	
+	/**
+	 * Validates the data and object property assertions of a single named 
+	 * individual and writes the resulting rows. Individuals without a 
+	 * single named class are skipped, as writeIndividual() reported them 
+	 * already. Only reads the ontology and the prebuilt domain and range 
+	 * maps, so it may run on several threads at once.
+	 * @param namedInd - the individual
+	 * @param rows - receives the DataPropertyInstance and 
+	 * ObjectPropertyInstance rows
+	 * @throws SQLException
+	 */
+	private void extractIndividual(OWLNamedIndividual namedInd, 
+			RowBuffer rows) throws SQLException {
+		String indName, rangeIndName, className, dataPropName, objPropName, 
+				rangeClassName;
+		OWLDataProperty dataProp;
+		OWLObjectProperty objProp;
+		OWLNamedIndividual namedRangeInd;
+		OWLClass owlClass, rangeClass;
+		int classId, rangeClassId;
+		Map<OWLDataPropertyExpression, Set<OWLLiteral>> dataPropMap;
+		Map<OWLObjectPropertyExpression, Set<OWLIndividual>> objPropMap;
+		
+		classId = typeIndex.getClassId(namedInd);
+		if (classId < 0) {
+			return;
+		}
+		indName = Basics.getIndName(namedInd);
+		owlClass = typeIndex.getOWLClass(classId);
+		className = getClassName(owlClass);
+		
+		/*
+		 * Populate DataPropertyInstance table
+		 */
+		dataPropMap = namedInd.getDataPropertyValues(ont);
+		for (OWLDataPropertyExpression dataPropExp: dataPropMap.keySet()) {
+			if (dataPropExp.isAnonymous()) {
+				logError(Category.ANONYMOUS_PROPERTY, 
+						table("DataPropertyInstance"), 
+						indName, dataPropExp.toString(), 
+						indName + " has anonymous data property " + 
+						dataPropExp.toString() + ". Cannot insert into " +
+						"the DataPropertyInstance table");
+				continue;
+			}
+			dataProp = dataPropExp.asOWLDataProperty();
+			dataPropName = getDataPropName(dataProp);
 			
 			/*
-			 * Populate Individual table
+			 * Check if this object is in the domain of the data 
+			 * property. If not, report it and skip the data property.
 			 */
-			indName = Basics.getIndName(ind.asOWLNamedIndividual());
-			indFieldsMap.put("name", indName);
-			indFieldsMap.put("class", className);
-			stmt.execute(Utilities.getInsertString("Individual", 
-					indFieldsMap));
+			if (!globalDomainProps.contains(dataProp) && 
+					!dataPropDomains.get(dataProp).contains(owlClass)) {
+				logError(Category.DOMAIN, table("DataPropertyInstance"), 
+						indName, dataPropName, 
+						indName + " of class " + className + 
+						" is not in the domain of data property " +
+						dataPropName + 
+						". Cannot insert into DataPropertyInstance table.");
+				continue;
+			}
+			
+			for (OWLLiteral valueLit : dataPropMap.get(dataPropExp)) {
+				rows.write(table("DataPropertyInstance"), 
+						DATA_PROP_INST_FIELDS, classKey(owlClass), 
+						indKey(namedInd), dataPropKey(dataProp), 
+						valueLit.toString());
+			}
+		}
+		
+		/*
+		 * Save all object property instances for later execution
+		 */
+		objPropMap = namedInd.getObjectPropertyValues(ont);
+		for (OWLObjectPropertyExpression objPropExp : objPropMap.keySet()) {
+			if (objPropExp.isAnonymous()) {
+				logError(Category.ANONYMOUS_PROPERTY, 
+						table("ObjectPropertyInstance"), 
+						indName, objPropExp.toString(), 
+						indName + " has anonymous object property " +
+						objPropExp + ". Cannot insert into the " +
+						"ObjectPropertyInstance table.");
+				continue;
+			}
+			objProp = objPropExp.asOWLObjectProperty();
+			objPropName = getObjPropName(objProp);
 			
 			/*
-			 * Populate DataPropertyInstance table
+			 * Check if this object is in the domain of the object 
+			 * property. If not, report it and skip the object property.
 			 */
-			dataPropFieldsMap.put("domainIndividual", indName);
-			dataPropMap = ind.getDataPropertyValues(ont);
-			for (OWLDataPropertyExpression dataPropExp: dataPropMap.keySet()) {
-				if (dataPropExp.isAnonymous()) {
-					logError(indName + " has anonymous data property " + 
-							dataPropExp.toString() + ". Cannot insert into " +
-							"the DataPropertyInstance table");
+			if (!globalDomainProps.contains(objProp) && 
+					!objPropDomains.get(objProp).contains(owlClass)) {
+				logError(Category.DOMAIN, table("ObjectPropertyInstance"), 
+						indName, objPropName, 
+						indName + " of class " + className + 
+						" is not in the domain of object property " +
+						objPropName + ". Cannot insert into the " +
+						"ObjectPropertyInstance table.");
+				continue;
+			}
+			
+			for (OWLIndividual rangeInd : objPropMap.get(objPropExp)) {
+				if (rangeInd.isAnonymous()) {
+					logError(Category.ANONYMOUS_INDIVIDUAL, 
+							table("ObjectPropertyInstance"), 
+							indName, objPropName, 
+							rangeInd + " is the anonymous individual " +
+							"mapped to " + indName + " by object property" +
+							objPropName + ". Cannot insert into the " +
+							"ObjectPropertyInstance table.");
 					continue;
 				}
-				dataProp = dataPropExp.asOWLDataProperty();
-				dataPropName = Basics.getDataPropName(dataProp);
-				dataPropFieldsMap.put("property", dataPropName);
+				namedRangeInd = rangeInd.asOWLNamedIndividual();
+				rangeIndName = Basics.getIndName(namedRangeInd);
 				
 				/*
-				 * Check if this object is in the domain of the data 
-				 * property. If not, report it and skip the data property.
+				 * Check if the range individual has exactly one class. If 
+				 * not, skip this object property. If so, extract its class.
 				 */
-				if (!dataPropDomains.get(dataProp).contains(owlClass)) {
-					logError(indName + " of class " + className + 
-							" is not in the domain of data property " +
-							dataPropName + 
-							". Cannot insert into DataPropertyInstance table.");
+				rangeClassId = typeIndex.getClassId(namedRangeInd);
+				if (rangeClassId == IndividualTypeIndex.NO_CLASS) {
+					logError(Category.UNTYPED_RANGE, 
+							table("ObjectPropertyInstance"), 
+							indName, objPropName, 
+							rangeIndName + " has no classes and is mapped " +
+							"to " + indName + " by object property " + 
+							objPropName + ". Cannot insert into " +
+							"ObjectPropertyInstance table");
 					continue;
 				}
-				
-				for (OWLLiteral valueLit : dataPropMap.get(dataPropExp)) {
-					dataPropFieldsMap.put("value",
-							Basics.format(valueLit.toString()));
-					stmt.execute(Utilities.getInsertString(
-							"DataPropertyInstance", dataPropFieldsMap));
+				if (rangeClassId == IndividualTypeIndex.MULTIPLE_CLASSES) {
+					logError(Category.UNTYPED_RANGE, 
+							table("ObjectPropertyInstance"), 
+							indName, objPropName, 
+							rangeIndName + " of class " + 
+							rangeInd.getTypes(ont) + 
+							" has more than one class and is mapped to " + 
+							indName + " by object property " + objPropName + 
+							". Cannot insert into ObjectPropertyInstance " 
+							+ " table");
+					continue;
 				}
-			}
-			
-			/*
-			 * Save all object property instances for later execution
-			 */
-			objPropFieldsMap.put("domainIndividual", indName);
-			objPropMap = ind.getObjectPropertyValues(ont);
-			for (OWLObjectPropertyExpression objPropExp : objPropMap.keySet()) {
-				if (objPropExp.isAnonymous()) {
-					logError(indName + " has anonymous object property " +
-							objPropExp + ". Cannot insert into the " +
-							"ObjectPropertyInstance table.");
+				if (rangeClassId == IndividualTypeIndex.ANONYMOUS_CLASS) {
+					logError(Category.UNTYPED_RANGE, 
+							table("ObjectPropertyInstance"), 
+							indName, objPropName, 
+							rangeIndName + " of class " + 
+							rangeInd.getTypes(ont).iterator().next() + 
+							" has an anonymous class and is mapped to " + 
+							indName + " by object property " + objPropName + 
+							". Cannot insert into ObjectPropertyInstance " 
+							+ " table");
 					continue;
 				}
-				objProp = objPropExp.asOWLObjectProperty();
-				objPropName = Basics.getObjPropName(objProp);
-				objPropFieldsMap.put("property", objPropName);
+				rangeClass = typeIndex.getOWLClass(rangeClassId);
+				rangeClassName = getClassName(rangeClass);
 				
 				/*
 				 * Check if this object is in the domain of the object 
 				 * property. If not, report it and skip the object property.
 				 */
-				if (!objPropDomains.get(objProp).contains(owlClass)) {
-					logError(indName + " of class " + className + 
-							" is not in the domain of object property " +
-							objPropName + ". Cannot insert into the " +
+				if (!globalRangeProps.contains(objProp) && 
+						!objPropRanges.get(objProp).contains(rangeClass)) {
+					logError(Category.RANGE, table("ObjectPropertyInstance"), 
+							indName, objPropName, 
+							rangeIndName + " of class " + rangeClassName + 
+							" is mapped to " + indName + " by " + 
+							objPropName + " but is not in the object " +
+							"property's range. Cannot insert into the " +
 							"ObjectPropertyInstance table.");
 					continue;
 				}
 				
-				for (OWLIndividual rangeInd : objPropMap.get(objPropExp)) {
-					if (rangeInd.isAnonymous()) {
-						logError(rangeInd + " is the anonymous individual " +
-								"mapped to " + indName + " by object property" +
-								objPropName + ". Cannot insert into the " +
-								"ObjectPropertyInstance table.");
-						continue;
-					}
-					namedRangeInd = rangeInd.asOWLNamedIndividual();
-					rangeIndName = Basics.getIndName(namedRangeInd);
-					objPropFieldsMap.put("rangeIndividual", rangeIndName);
-					
-					/*
-					 * Check if the range individual has more than one class. If so,
-					 * skip this object property. If not, extract its class.
-					 */
-					if (rangeInd.getTypes(ont).size() > 1) {
-						logError(rangeIndName + " of class " + 
-								rangeInd.getTypes(ont) + 
-								" has more than one class and is mapped to " + 
-								indName + " by object property " + objPropName + 
-								". Cannot insert into ObjectPropertyInstance " 
-								+ " table");
-						continue;
-					}
-					for (OWLClassExpression singleClassExp : 
-							rangeInd.getTypes(ont)) {
-						rangeClassExp = singleClassExp;
-					}
-					if (rangeClassExp.isAnonymous()) {
-						logError(rangeIndName + " of class " + rangeClassExp + 
-								" has an anonymous class and is mapped to " + 
-								indName + " by object property " + objPropName + 
-								". Cannot insert into ObjectPropertyInstance " 
-								+ " table");
-						continue;
-					}
-					rangeClass = rangeClassExp.asOWLClass();
-					rangeClassName = Basics.getClassName(rangeClass);
-					
-					/*
-					 * Check if this object is in the domain of the object 
-					 * property. If not, report it and skip the object property.
-					 */
-					if (!objPropRanges.get(objProp).contains(rangeClass)) {
-						logError(rangeIndName + " of class " + rangeClassName + 
-								" is mapped to " + indName + " by " + 
-								objPropName + " but is not in the object " +
-								"property's range. Cannot insert into the " +
-								"ObjectPropertyInstance table.");
-						continue;
-					}
-					
-					objPropFieldsMap.put("rangeClass", rangeClassName);
-					objPropInsertStrings.add(Utilities.getInsertString(
-							"ObjectPropertyInstance", objPropFieldsMap));
-				}
+				rows.write(table("ObjectPropertyInstance"), 
+						OBJ_PROP_INST_FIELDS, classKey(owlClass), 
+						indKey(namedInd), objPropKey(objProp), 
+						classKey(rangeClass), indKey(namedRangeInd));
 			}
-			/*
-			 * Update progress printout
-			 */
-			prog++;
-			print("\rPopulating individuals and data " +
-					"property instances --- " + prog + " of " + numInds);
-		}
-
-		/*
-		 * Initialize next progress printout
-		 */
-		println();
-		prog = 0;
-		numObjPropInsts = objPropInsertStrings.size();
-		print("Populating object property instances --- 0 of " +
-				numObjPropInsts);
-		for (String objPropInsertString : objPropInsertStrings) {
-			stmt.execute(objPropInsertString);
-			prog++;
-			print("\rPopulating object property instances --- " + 
-					prog + " of " + numObjPropInsts);
 		}
-		println();
 	}
 	
 	protected void handleAnnotationSchema() {
@@ -922,19 +2250,84 @@ public class TableBuilder {
 	 * @throws  
 	 */
 	protected void report() {
-		if (loggingEnabled) {
-			try {
-				errorLogger.close();
-			} catch (IOException e) {
-				numLogErrors++;
-			}
-		}
+		long numBuildErrors = rejections.getTotal();
+		long numRejections;
+		
 		println("Finished building database with " + numBuildErrors +
 				" skipped entries due to building errors");
+		for (Category category : Category.values()) {
+			numRejections = rejections.getCount(category);
+			if (numRejections > 0) {
+				println("  " + category.name() + ": " + numRejections);
+			}
+		}
+		if (metrics != null) {
+			metrics.setBuildErrors((int) numBuildErrors);
+		}
 		if (loggingEnabled) {
-			println("Logged " + (numBuildErrors - numLogErrors) +
-					" build errors to " + logPath + " with " + numLogErrors + 
-					" skipped log entries"); 
+			println("Logged " + rejections.getNumLogged() +
+					" build errors to " + logPath + " with " + 
+					rejections.getNumLogErrors() + " skipped log entries"); 
+		}
+	}
+	
+	/**
+	 * Reports the number of rows added, removed and unchanged per table by
+	 * the synchronization
+	 */
+	private void reportSync() {
+		int[] counts;
+		
+		for (Map.Entry<String, int[]> entry : 
+				syncWriter.getTableCounts().entrySet()) {
+			counts = entry.getValue();
+			println("Synchronized " + entry.getKey() + " --- " + counts[0] + 
+					" added, " + counts[1] + " removed, " + counts[2] + 
+					" unchanged");
+		}
+	}
+	
+	/**
+	 * Checks if the given phase was completed by the run a resumed build is
+	 * resuming
+	 */
+	private boolean isCompleted(String phase) {
+		return checkpoint != null && checkpoint.isCompleted(phase);
+	}
+	
+	/**
+	 * Starts timing the given phase of the build, if metrics are enabled,
+	 * and marks it for the flight recorder
+	 */
+	private void startPhase(String phase) {
+		if (metrics != null) {
+			metrics.startPhase(phase);
+		}
+		events.endPhase(phaseEvent);
+		phaseEvent = events.beginPhase(phase);
+	}
+	
+	/**
+	 * Writes the entries rejected in the given phase to the BuildRejection
+	 * table, if it is enabled. Then commits the rows written so far and 
+	 * records the phase as completed, if checkpoints are enabled.
+	 * @throws SQLException
+	 */
+	private void completePhase(String phase) throws SQLException {
+		rejections.writeRows(writer);
+		if (checkpointWriter != null && !isCompleted(phase)) {
+			checkpointWriter.checkpoint(phase);
+		}
+	}
+	
+	/**
+	 * Records the given step of the finalization as completed, if 
+	 * checkpoints are enabled
+	 * @throws SQLException
+	 */
+	private void completeStep(String step) throws SQLException {
+		if (checkpoint != null) {
+			checkpoint.save(step, Collections.<String, Long>emptyMap());
 		}
 	}
 	
@@ -947,12 +2340,50 @@ public class TableBuilder {
 		long startTimeMS, endTimeMS;
 		int totalTimeS;
 		startTimeMS = System.currentTimeMillis();
-		initializeTables();
-		handleClassSchema();
-		handleObjPropSchema();
-		handleDataPropSchema();
-		handleAnnotationSchema();
-		handleInstances();
+		try {
+			startPhase("initialize");
+			initializeTables();
+			completePhase("initialize");
+			startPhase("classes");
+			handleClassSchema();
+			completePhase("classes");
+			startPhase("objectProperties");
+			handleObjPropSchema();
+			completePhase("objectProperties");
+			startPhase("dataProperties");
+			handleDataPropSchema();
+			completePhase("dataProperties");
+			startPhase("annotations");
+			handleAnnotationSchema();
+			startPhase("instances");
+			handleInstances();
+			completePhase("instances");
+			startPhase("close");
+			writer.close();
+			if (syncWriter != null) {
+				reportSync();
+			}
+			if (constraintsDeferred && !syncing) {
+				if (!isCompleted("finalize")) {
+					startPhase("finalize");
+					finalizeTables();
+					completePhase("finalize");
+				}
+			} else if (!dumping) {
+				startPhase("verify");
+				for (TableSchema table : tableSchemas) {
+					verifyTable(table, !writer.checksForeignKeys());
+				}
+			}
+		} finally {
+			progress.close();
+			rejections.close();
+			events.endPhase(phaseEvent);
+			phaseEvent = null;
+		}
+		if (checkpoint != null) {
+			checkpoint.drop();
+		}
 		report();
 		endTimeMS = System.currentTimeMillis();
 		totalTimeS = (int) ((endTimeMS - startTimeMS) / 1000);
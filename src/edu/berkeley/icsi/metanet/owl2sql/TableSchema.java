@@ -0,0 +1,198 @@
+package edu.berkeley.icsi.metanet.owl2sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes a single table of the generated SQL schema: its columns, its 
+ * primary key and its foreign keys. The table can be created with all of 
+ * its keys at once or bare, with the keys added after the data is loaded.
+ */
+public class TableSchema {
+	private String name;
+	private ArrayList<String> columnDefs;
+	private String primaryKey;
+	private boolean primaryKeyRequired;
+	private ArrayList<String[]> foreignKeys;
+	private ArrayList<String> uniqueKeys;
+	private ArrayList<String[]> checks;
+	
+	/**
+	 * Initializes an empty table schema
+	 * @param name - the name of the table
+	 */
+	TableSchema(String name) {
+		this.name = name;
+		columnDefs = new ArrayList<String>();
+		foreignKeys = new ArrayList<String[]>();
+		uniqueKeys = new ArrayList<String>();
+		checks = new ArrayList<String[]>();
+		primaryKeyRequired = false;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Adds a column to the table
+	 * @param columnDef - the SQL column definition, i.e. 
+	 * "name VARCHAR(333) NOT NULL"
+	 */
+	protected void addColumn(String columnDef) {
+		columnDefs.add(columnDef);
+	}
+	
+	/**
+	 * Sets the primary key of the table
+	 * @param columns - comma-separated list of the key columns
+	 */
+	protected void setPrimaryKey(String columns) {
+		primaryKey = columns;
+	}
+	
+	/**
+	 * Sets a primary key that must exist when the table is created (i.e.
+	 * on an AUTO_INCREMENT column) and so is never deferred
+	 * @param columns - comma-separated list of the key columns
+	 */
+	protected void setRequiredPrimaryKey(String columns) {
+		primaryKey = columns;
+		primaryKeyRequired = true;
+	}
+	
+	/**
+	 * Adds a unique key to the table
+	 * @param columns - comma-separated list of the key columns
+	 */
+	protected void addUniqueKey(String columns) {
+		uniqueKeys.add(columns);
+	}
+	
+	/**
+	 * Adds a cascading foreign key to the table
+	 * @param columns - comma-separated list of the referencing columns
+	 * @param refTable - name of the referenced table
+	 * @param refColumns - comma-separated list of the referenced columns
+	 */
+	protected void addForeignKey(String columns, String refTable, 
+			String refColumns) {
+		foreignKeys.add(new String[] {columns, refTable, refColumns});
+	}
+	
+	/**
+	 * Returns the CREATE TABLE statement for this table
+	 * @param withKeys - if true, the primary and foreign keys are created
+	 * with the table. If false, only keys that cannot be deferred are.
+	 * @return the CREATE TABLE statement
+	 */
+	public String getCreateString(boolean withKeys) {
+		StringBuilder sql = new StringBuilder();
+		sql.append("CREATE TABLE ").append(name).append(" (");
+		for (int i = 0; i < columnDefs.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(columnDefs.get(i));
+		}
+		if (primaryKey != null && (withKeys || primaryKeyRequired)) {
+			sql.append(", PRIMARY KEY (").append(primaryKey).append(")");
+		}
+		if (withKeys) {
+			for (String uniqueKey : uniqueKeys) {
+				sql.append(", UNIQUE (").append(uniqueKey).append(")");
+			}
+			for (String[] foreignKey : foreignKeys) {
+				sql.append(", ").append(getForeignKeyClause(foreignKey));
+			}
+		}
+		return sql.append(")").toString();
+	}
+	
+	/**
+	 * Returns the ALTER TABLE statement adding the deferred primary and 
+	 * unique keys of this table, or null if there are no deferred keys
+	 */
+	public String getAddKeysString() {
+		StringBuilder sql = new StringBuilder("ALTER TABLE " + name);
+		boolean empty = true;
+		if (primaryKey != null && !primaryKeyRequired) {
+			sql.append(" ADD PRIMARY KEY (").append(primaryKey).append(")");
+			empty = false;
+		}
+		for (String uniqueKey : uniqueKeys) {
+			sql.append(empty ? " ADD " : ", ADD ");
+			sql.append("UNIQUE (").append(uniqueKey).append(")");
+			empty = false;
+		}
+		return empty ? null : sql.toString();
+	}
+	
+	/**
+	 * Returns the ALTER TABLE statement adding all foreign keys of this 
+	 * table, or null if the table has no foreign keys
+	 */
+	public String getAddForeignKeysString() {
+		StringBuilder sql;
+		if (foreignKeys.isEmpty()) {
+			return null;
+		}
+		sql = new StringBuilder("ALTER TABLE " + name);
+		for (int i = 0; i < foreignKeys.size(); i++) {
+			sql.append(i > 0 ? ", ADD " : " ADD ");
+			sql.append(getForeignKeyClause(foreignKeys.get(i)));
+		}
+		return sql.toString();
+	}
+	
+	/**
+	 * Adds an integrity check that cannot be expressed as a foreign key
+	 * @param countQuery - a query returning the number of offending rows
+	 * @param description - describes the offending rows, i.e. "rows of X 
+	 * reference properties outside their domain"
+	 */
+	protected void addIntegrityCheck(String countQuery, String description) {
+		checks.add(new String[] {countQuery, description});
+	}
+	
+	/**
+	 * Returns the integrity checks of this table as pairs of a query 
+	 * counting the offending rows and a description of those rows
+	 * @param withForeignKeys - if true, a check is included for each foreign
+	 * key, counting the rows that reference a row missing from the 
+	 * referenced table
+	 */
+	public List<String[]> getIntegrityChecks(boolean withForeignKeys) {
+		ArrayList<String[]> out = new ArrayList<String[]>();
+		String[] columns, refColumns;
+		StringBuilder sql;
+		
+		for (String[] foreignKey : withForeignKeys ? foreignKeys : 
+				new ArrayList<String[]>()) {
+			columns = foreignKey[0].split(",\\s*");
+			refColumns = foreignKey[2].split(",\\s*");
+			sql = new StringBuilder();
+			sql.append("SELECT COUNT(*) FROM ").append(name)
+					.append(" c LEFT JOIN ").append(foreignKey[1])
+					.append(" p ON ");
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					sql.append(" AND ");
+				}
+				sql.append("c.").append(columns[i]).append(" = p.")
+						.append(refColumns[i]);
+			}
+			sql.append(" WHERE p.").append(refColumns[0]).append(" IS NULL");
+			out.add(new String[] {sql.toString(), "rows of " + name + 
+					" reference rows missing from " + foreignKey[1]});
+		}
+		out.addAll(checks);
+		return out;
+	}
+	
+	private static String getForeignKeyClause(String[] foreignKey) {
+		return "FOREIGN KEY (" + foreignKey[0] + ") REFERENCES " + 
+				foreignKey[1] + "(" + foreignKey[2] + ") " +
+				"ON DELETE CASCADE ON UPDATE CASCADE";
+	}
+}
@@ -155,6 +155,93 @@ public class Utilities {
 				values + ")";
 	}
 
+	/**
+	 * Returns the beginning of a multi-row SQL INSERT statement for the given
+	 * table and fields, up to and including the VALUES keyword
+	 * @param tableName - name of the target table
+	 * @param fields - names of the fields, in the order of the row values
+	 * @return the INSERT statement without its value tuples
+	 */
+	public static String getMultiRowInsertHeader(String tableName, 
+			String[] fields) {
+		StringBuilder header = new StringBuilder();
+		header.append("INSERT INTO ").append(tableName).append(" (");
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				header.append(", ");
+			}
+			header.append(fields[i]);
+		}
+		return header.append(") VALUES ").toString();
+	}
+	
+	/**
+	 * Returns the given row values as a parenthesized SQL value tuple. 
+	 * Strings are escaped and quoted; Booleans and numbers are written as
+	 * literals and nulls as NULL.
+	 * @param values - the raw values of the row
+	 * @return the value tuple, i.e. "('value', true)"
+	 */
+	public static String getValuesTuple(Object[] values) {
+		StringBuilder tuple = new StringBuilder();
+		tuple.append('(');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				tuple.append(", ");
+			}
+			if (values[i] == null) {
+				tuple.append("NULL");
+			} else if (values[i] instanceof Boolean || 
+					values[i] instanceof Number) {
+				tuple.append(values[i]);
+			} else {
+				tuple.append('\'').append(Basics.format(values[i].toString()))
+						.append('\'');
+			}
+		}
+		return tuple.append(')').toString();
+	}
+	
+	/**
+	 * Returns the size of the given row values: the UTF-8 size of strings,
+	 * one byte for booleans, and the length of the text of anything else
+	 */
+	public static long getRowBytes(Object[] values) {
+		long numBytes = 0;
+		for (Object value : values) {
+			if (value instanceof String) {
+				numBytes += getUTF8Length((String) value);
+			} else if (value != null) {
+				numBytes += value instanceof Boolean ? 1 :
+						value.toString().length();
+			}
+		}
+		return numBytes;
+	}
+	
+	/**
+	 * Returns the number of bytes the given text takes up when encoded as
+	 * UTF-8
+	 */
+	public static int getUTF8Length(CharSequence text) {
+		int numBytes = 0;
+		char c;
+		for (int i = 0; i < text.length(); i++) {
+			c = text.charAt(i);
+			if (c < 0x80) {
+				numBytes += 1;
+			} else if (c < 0x800) {
+				numBytes += 2;
+			} else if (Character.isSurrogate(c)) {
+				// each half of a surrogate pair is half of a 4-byte sequence
+				numBytes += 2;
+			} else {
+				numBytes += 3;
+			}
+		}
+		return numBytes;
+	}
+
 	/**
 	 * Returns the of disjunct OWL classes in the given OWLClassExpression. 
 	 * Handles named OWL classes and disjunct anonymous classes but ignores